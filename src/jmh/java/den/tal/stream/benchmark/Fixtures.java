@@ -0,0 +1,75 @@
+package den.tal.stream.benchmark;
+
+import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadata;
+import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.MkvTrackMetadata;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Bundled H.264 MKV clips, shaped like GetMedia output. Regenerate them with {@code SyntheticMkv} from the tests.
+ */
+final class Fixtures {
+
+    /**
+     * 640x360, 4 fragments of 30 frames, a key frame at the start of each fragment.
+     */
+    static final String TRAFFIC = "/fixtures/traffic-640x360.mkv";
+
+    static final int TRAFFIC_FRAMES = 120;
+
+    private Fixtures() {
+    }
+
+    static byte[] load(String resource) throws IOException {
+        try (InputStream is = Fixtures.class.getResourceAsStream(resource)) {
+            if (null == is) {
+
+                throw new IOException("Fixture " + resource + " is not on the classpath!");
+            }
+
+            return is.readAllBytes();
+        }
+    }
+
+    /**
+     * Parses the clip once, copying the frames out of the reader buffers.
+     */
+    static List<DetachedFrame> frames(byte[] mkv) throws MkvElementVisitException {
+        final List<DetachedFrame> frames = new ArrayList<>();
+        StreamingMkvReader.createDefault(new InputStreamParserByteSource(new ByteArrayInputStream(mkv)))
+                .apply(FrameVisitor.create(new FrameVisitor.FrameProcessor() {
+                    @Override
+                    public void process(Frame frame, MkvTrackMetadata trackMetadata,
+                                        Optional<FragmentMetadata> fragmentMetadata) {
+
+                        final ByteBuffer source = frame.getFrameData().duplicate();
+                        final ByteBuffer copy = ByteBuffer.allocate(source.remaining());
+                        copy.put(source).flip();
+                        frames.add(new DetachedFrame(frame.toBuilder().frameData(copy).build(), trackMetadata));
+                    }
+                }));
+
+        return frames;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class DetachedFrame {
+
+        private final Frame frame;
+        private final MkvTrackMetadata trackMetadata;
+    }
+}
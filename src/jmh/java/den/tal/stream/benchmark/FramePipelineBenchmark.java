@@ -0,0 +1,107 @@
+package den.tal.stream.benchmark;
+
+import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import den.tal.stream.watch.WatcherLifecycle;
+import den.tal.stream.watch.dedup.DedupSettings;
+import den.tal.stream.watch.encode.EncodeSettings;
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import den.tal.stream.watch.metrics.FrameMetrics;
+import den.tal.stream.watch.pipeline.FramePipeline;
+import den.tal.stream.watch.pipeline.PipelineSettings;
+import den.tal.stream.watch.pipeline.StreamContext;
+import den.tal.stream.watch.processors.FilmFrameProcessor;
+import den.tal.stream.watch.sampling.NthFrameSampler;
+import den.tal.stream.watch.upload.S3Uploader;
+import den.tal.stream.watch.upload.UploadSettings;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FilmFrameProcessor#process} end to end: parse, sample every 5th frame, decode, encode and PUT to an
+ * in-memory S3 stub. An invocation reads the whole clip and waits until its frames are stored.
+ * One operation is one stored frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FramePipelineBenchmark {
+
+    private static final int NTH_FRAME = 5;
+    private static final int STORED_FRAMES = Fixtures.TRAFFIC_FRAMES / NTH_FRAME;
+
+    private final Semaphore stored = new Semaphore(0);
+    private final WatcherLifecycle lifecycle = new WatcherLifecycle();
+    private byte[] mkv;
+    private FrameMetrics metrics;
+    private S3Uploader uploader;
+    private FramePipeline pipeline;
+
+    @Setup
+    public void setUp() throws IOException, FilmWatcherInitException {
+        mkv = Fixtures.load(Fixtures.TRAFFIC);
+
+        final var pipelineSettings = new PipelineSettings();
+        ReflectionTestUtils.setField(pipelineSettings, "backpressure", "block");
+        ReflectionTestUtils.setField(pipelineSettings, "decodeThreads", 1);
+        ReflectionTestUtils.setField(pipelineSettings, "decodeQueue", 16);
+        ReflectionTestUtils.setField(pipelineSettings, "encodeThreads", 2);
+        ReflectionTestUtils.setField(pipelineSettings, "encodeQueue", 16);
+        ReflectionTestUtils.setField(pipelineSettings, "uploadThreads", 1);
+        ReflectionTestUtils.setField(pipelineSettings, "uploadQueue", 64);
+        ReflectionTestUtils.setField(pipelineSettings, "drainTimeoutSeconds", 10);
+
+        final var encodeSettings = new EncodeSettings();
+        ReflectionTestUtils.setField(encodeSettings, "quality", 0.85f);
+        ReflectionTestUtils.setField(encodeSettings, "bufferPoolSize", 64);
+
+        metrics = new FrameMetrics(new SimpleMeterRegistry());
+        final var uploadSettings = new UploadSettings();
+        ReflectionTestUtils.setField(uploadSettings, "maxInFlight", 8);
+
+        uploader = new S3Uploader(new AbstractAmazonS3() {
+            @Override
+            public PutObjectResult putObject(PutObjectRequest request) {
+                stored.release();
+
+                return new PutObjectResult();
+            }
+        }, "benchmark", uploadSettings, metrics);
+        pipeline = new FramePipeline(pipelineSettings, new DedupSettings(), encodeSettings, uploader, metrics);
+        lifecycle.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        pipeline.shutdown();
+        uploader.shutdown(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STORED_FRAMES)
+    public void processClip() throws MkvElementVisitException, InterruptedException {
+        final var processor = new FilmFrameProcessor(new StreamContext("benchmark"), new NthFrameSampler(NTH_FRAME),
+                lifecycle, pipeline, metrics.forStream("benchmark"));
+
+        StreamingMkvReader.createDefault(new InputStreamParserByteSource(new ByteArrayInputStream(mkv)))
+                .apply(FrameVisitor.create(processor, Optional.of(new FragmentMetadataVisitor.BasicMkvTagProcessor())));
+
+        stored.acquire(STORED_FRAMES);
+    }
+}
@@ -0,0 +1,41 @@
+package den.tal.stream.benchmark;
+
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.utilities.H264FrameDecoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link H264FrameDecoder#decodeH264Frame} over the whole clip, in stream order as the decode stage sees it.
+ * One operation is one frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class H264DecodeBenchmark {
+
+    private List<Fixtures.DetachedFrame> frames;
+    private H264FrameDecoder decoder;
+
+    @Setup
+    public void setUp() throws IOException, MkvElementVisitException {
+        frames = Fixtures.frames(Fixtures.load(Fixtures.TRAFFIC));
+        decoder = new H264FrameDecoder();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Fixtures.TRAFFIC_FRAMES)
+    public void decodeClip(Blackhole blackhole) {
+        for (Fixtures.DetachedFrame frame : frames) {
+            frame.getFrame().getFrameData().rewind();
+            blackhole.consume(decoder.decodeH264Frame(frame.getFrame(), frame.getTrackMetadata()));
+        }
+    }
+}
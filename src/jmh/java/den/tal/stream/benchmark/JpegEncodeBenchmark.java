@@ -0,0 +1,66 @@
+package den.tal.stream.benchmark;
+
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.utilities.H264FrameDecoder;
+import den.tal.stream.watch.encode.EncodeSettings;
+import den.tal.stream.watch.encode.JpegBuffer;
+import den.tal.stream.watch.encode.JpegBufferPool;
+import den.tal.stream.watch.encode.JpegEncoder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JPEG encoding of a decoded frame: the pooled encoder of the encode stage against the former
+ * {@code ImageIO.write} path with its stream copies.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JpegEncodeBenchmark {
+
+    private BufferedImage image;
+    private JpegBufferPool pool;
+    private JpegEncoder encoder;
+
+    @Setup
+    public void setUp() throws IOException, MkvElementVisitException {
+        final Fixtures.DetachedFrame frame = Fixtures.frames(Fixtures.load(Fixtures.TRAFFIC)).get(0);
+        image = new H264FrameDecoder().decodeH264Frame(frame.getFrame(), frame.getTrackMetadata());
+
+        final var settings = new EncodeSettings();
+        ReflectionTestUtils.setField(settings, "quality", 0.85f);
+        pool = new JpegBufferPool(4);
+        encoder = new JpegEncoder(settings, pool);
+    }
+
+    @Benchmark
+    public int pooledEncoder() throws IOException {
+        final JpegBuffer buffer = encoder.encode(image);
+        final int length = buffer.getLength();
+        pool.release(buffer);
+
+        return length;
+    }
+
+    @Benchmark
+    public int imageIoWrite() throws IOException {
+        try (var os = new ByteArrayOutputStream()) {
+            ImageIO.write(image, "jpeg", os);
+            try (InputStream is = new ByteArrayInputStream(os.toByteArray())) {
+
+                return is.available();
+            }
+        }
+    }
+}
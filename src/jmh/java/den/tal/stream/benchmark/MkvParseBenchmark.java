@@ -0,0 +1,79 @@
+package den.tal.stream.benchmark;
+
+import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
+import com.amazonaws.kinesisvideo.parser.ebml.ParserByteSource;
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
+import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadata;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.MkvTrackMetadata;
+import den.tal.stream.watch.source.MappedFileByteSource;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MKV parsing through StreamingMkvReader and the composite visitor, from a stream and from a mapped file.
+ * One operation is one frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MkvParseBenchmark {
+
+    private byte[] mkv;
+    private Path file;
+    private FileChannel channel;
+
+    @Setup
+    public void setUp() throws IOException {
+        mkv = Fixtures.load(Fixtures.TRAFFIC);
+        file = Files.createTempFile("benchmark", ".mkv");
+        Files.write(file, mkv);
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        channel.close();
+        Files.delete(file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Fixtures.TRAFFIC_FRAMES)
+    public void inputStream(Blackhole blackhole) throws MkvElementVisitException {
+        parse(new InputStreamParserByteSource(new ByteArrayInputStream(mkv)), blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Fixtures.TRAFFIC_FRAMES)
+    public void mappedFile(Blackhole blackhole) throws MkvElementVisitException, IOException {
+        parse(new MappedFileByteSource(channel), blackhole);
+    }
+
+    private static void parse(ParserByteSource source, Blackhole blackhole) throws MkvElementVisitException {
+        StreamingMkvReader.createDefault(source).apply(new CompositeMkvElementVisitor(FragmentMetadataVisitor.create(),
+                FrameVisitor.create(new FrameVisitor.FrameProcessor() {
+                    @Override
+                    public void process(Frame frame, MkvTrackMetadata trackMetadata,
+                                        Optional<FragmentMetadata> fragmentMetadata) {
+
+                        blackhole.consume(frame);
+                    }
+                })));
+    }
+}
@@ -1,9 +1,16 @@
 package den.tal.stream;
 
 import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.util.List;
+
 @Component
 public class AppConfig {
 
@@ -19,6 +26,13 @@ public class AppConfig {
     @Value("${kinesis.video.stream.name}")
     private String videoStreamName;
 
+    /**
+     * Streams consumed by this process, from {@code kinesis.video.streams} as a YAML list or a comma separated
+     * string. Defaults to the single {@code kinesis.video.stream.name}.
+     */
+    @Getter
+    private List<String> videoStreamNames;
+
     /**
      * Use VPC endpoint to avoid traffic over internet.
      */
@@ -32,4 +46,23 @@ public class AppConfig {
     @Getter
     @Value("${s3.service.endpoint:#{null}}")
     private String s3ServiceEndpoint;
+
+    /**
+     * Local S3 stand-ins usually don't resolve virtual-hosted bucket names.
+     */
+    @Getter
+    @Value("${s3.service.path_style_access:false}")
+    private boolean s3PathStyleAccess;
+
+    @Autowired
+    private Environment environment;
+
+    /**
+     * Bound like configuration properties: a placeholder can't see indexed entries such as {@code streams[0]}.
+     */
+    @PostConstruct
+    private void bindVideoStreamNames() {
+        videoStreamNames = Binder.get(environment).bind("kinesis.video.streams", Bindable.listOf(String.class))
+                .orElseGet(() -> List.of(videoStreamName));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,138 @@
+package den.tal.stream;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.kinesisvideo.AmazonKinesisVideo;
+import com.amazonaws.services.kinesisvideo.AmazonKinesisVideoArchivedMedia;
+import com.amazonaws.services.kinesisvideo.AmazonKinesisVideoArchivedMediaClientBuilder;
+import com.amazonaws.services.kinesisvideo.AmazonKinesisVideoMedia;
+import com.amazonaws.services.kinesisvideo.AmazonKinesisVideoMediaClientBuilder;
+import com.amazonaws.services.kinesisvideo.model.APIName;
+import com.amazonaws.services.kinesisvideo.model.GetDataEndpointRequest;
+import com.amazonaws.services.kinesisvideo.model.ResourceNotFoundException;
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * GetMedia and archived media clients for any number of streams. Every stream may be served by its own data
+ * endpoint; streams sharing an endpoint share a client. GetMedia endpoints may be looked up ahead with
+ * {@link #prefetch}.
+ */
+@Slf4j
+public class KinesisVideoMediaClients {
+
+    private final AmazonKinesisVideo kinesisVideo;
+    private final AWSCredentialsProvider credentialsProvider;
+    private final String region;
+    private final Map<String, AmazonKinesisVideoMedia> clientsByEndpoint = new ConcurrentHashMap<>();
+    private final Map<String, AmazonKinesisVideoArchivedMedia> archivedClientsByEndpoint = new ConcurrentHashMap<>();
+
+    /**
+     * Clients looked up ahead, each used by the first {@link #forStream} of its stream.
+     */
+    private final Map<String, CompletableFuture<AmazonKinesisVideoMedia>> prefetched = new ConcurrentHashMap<>();
+
+    public KinesisVideoMediaClients(AmazonKinesisVideo kinesisVideo, AWSCredentialsProvider credentialsProvider,
+                                    String region) {
+
+        this.kinesisVideo = kinesisVideo;
+        this.credentialsProvider = credentialsProvider;
+        this.region = region;
+    }
+
+    /**
+     * Looks up the endpoints of the streams and builds their clients in parallel on the executor.
+     * A failed lookup is left to {@link #forStream}.
+     */
+    public CompletableFuture<Void> prefetch(Collection<String> streamNames, Executor executor) {
+
+        return CompletableFuture.allOf(streamNames.stream()
+                .map(streamName -> prefetched.computeIfAbsent(streamName, name -> lookUpAsync(name, executor)))
+                .map(future -> future.exceptionally(ex -> null))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Waits for a prefetched client of the stream if there is one; every further call looks the endpoint up
+     * again, as it may have moved.
+     *
+     * @throws FilmWatcherInitException if the stream does not exist or has no endpoint; retrying won't help
+     */
+    public AmazonKinesisVideoMedia forStream(String streamName) throws FilmWatcherInitException {
+        final CompletableFuture<AmazonKinesisVideoMedia> pending = prefetched.remove(streamName);
+        if (null != pending) {
+            try {
+
+                return pending.join();
+            } catch (CompletionException ex) {
+                log.debug("Prefetch of the endpoint of stream {} failed. Look it up again.", streamName, ex);
+            }
+        }
+
+        return lookUp(streamName);
+    }
+
+    private CompletableFuture<AmazonKinesisVideoMedia> lookUpAsync(String streamName, Executor executor) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+
+                return lookUp(streamName);
+            } catch (FilmWatcherInitException ex) {
+
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    /**
+     * Client of ListFragments or GetMediaForFragmentList of a stream, each looked up under its own API name.
+     *
+     * @throws FilmWatcherInitException if the stream does not exist or has no endpoint; retrying won't help
+     */
+    public AmazonKinesisVideoArchivedMedia archivedForStream(String streamName, APIName api)
+            throws FilmWatcherInitException {
+
+        return archivedClientsByEndpoint.computeIfAbsent(endpointOf(streamName, api),
+                key -> AmazonKinesisVideoArchivedMediaClientBuilder.standard()
+                        .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(key, region))
+                        .withCredentials(credentialsProvider)
+                        .build());
+    }
+
+    private AmazonKinesisVideoMedia lookUp(String streamName) throws FilmWatcherInitException {
+
+        return clientsByEndpoint.computeIfAbsent(endpointOf(streamName, APIName.GET_MEDIA),
+                key -> AmazonKinesisVideoMediaClientBuilder.standard()
+                        .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(key, region))
+                        .withCredentials(credentialsProvider)
+                        .build());
+    }
+
+    private String endpointOf(String streamName, APIName api) throws FilmWatcherInitException {
+        String endpoint;
+        try {
+            endpoint = kinesisVideo.getDataEndpoint(new GetDataEndpointRequest()
+                    .withAPIName(api).withStreamName(streamName))
+                        .getDataEndpoint();
+        } catch (ResourceNotFoundException rnfex) {
+
+            throw new FilmWatcherInitException(rnfex);
+        }
+
+        log.debug("Kinesis Video Endpoint of {} of stream {}: {}", api, streamName, endpoint);
+        if (null == endpoint) {
+
+            throw new FilmWatcherInitException("Kinesis Video Endpoint is required!");
+        }
+
+        return endpoint;
+    }
+}
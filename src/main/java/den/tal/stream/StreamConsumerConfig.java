@@ -1,5 +1,6 @@
 package den.tal.stream;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.EC2ContainerCredentialsProviderWrapper;
 import com.amazonaws.auth.profile.internal.securitytoken.RoleInfo;
@@ -7,20 +8,28 @@ import com.amazonaws.auth.profile.internal.securitytoken.STSProfileCredentialsSe
 import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.services.kinesisvideo.AmazonKinesisVideo;
 import com.amazonaws.services.kinesisvideo.AmazonKinesisVideoClientBuilder;
-import com.amazonaws.services.kinesisvideo.AmazonKinesisVideoMedia;
-import com.amazonaws.services.kinesisvideo.AmazonKinesisVideoMediaClientBuilder;
-import com.amazonaws.services.kinesisvideo.model.APIName;
-import com.amazonaws.services.kinesisvideo.model.GetDataEndpointRequest;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import den.tal.stream.watch.checkpoint.CheckpointStore;
+import den.tal.stream.watch.checkpoint.FileCheckpointStore;
+import den.tal.stream.watch.exceptions.CheckpointException;
 import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import den.tal.stream.watch.exceptions.LeaseException;
+import den.tal.stream.watch.lease.FileLeaseStore;
+import den.tal.stream.watch.lease.LeaseStore;
+import den.tal.stream.watch.upload.UploadSettings;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
+import java.nio.file.Paths;
+
 
 @Slf4j
 @Configuration
@@ -55,6 +64,7 @@ public class StreamConsumerConfig {
     }
 
     @ConditionalOnProperty(prefix = "s3.service", value = "endpoint")
+    @Bean
     public AwsClientBuilder.EndpointConfiguration s3EndpointConfiguration() {
 
         return new AwsClientBuilder.EndpointConfiguration(appConfig.getS3ServiceEndpoint(), appConfig.getRegion());
@@ -82,26 +92,64 @@ public class StreamConsumerConfig {
     }
 
     @Bean
-    public AmazonKinesisVideoMedia kinesisVideoMedia(AWSCredentialsProvider awsCredentialsProvider,
-                                                     AmazonKinesisVideo kinesisVideo) throws FilmWatcherInitException {
-
-        String endpoint = kinesisVideo.getDataEndpoint(new GetDataEndpointRequest()
-                .withAPIName(APIName.GET_MEDIA).withStreamName(appConfig.getVideoStreamName()))
-                    .getDataEndpoint();
+    public KinesisVideoMediaClients kinesisVideoMediaClients(AWSCredentialsProvider awsCredentialsProvider,
+                                                             AmazonKinesisVideo kinesisVideo) {
 
-        log.debug("Kinesis Video Endpoint: {}", endpoint);
-        if (null == endpoint) {
+        return new KinesisVideoMediaClients(kinesisVideo, awsCredentialsProvider, appConfig.getRegion());
+    }
 
-            throw new FilmWatcherInitException("Kinesis Video Endpoint is required!");
+    @Bean
+    public AmazonS3 amazonS3(AWSCredentialsProvider awsCredentialsProvider,
+                             @Qualifier("s3EndpointConfiguration")
+                             @Autowired(required = false)
+                                     AwsClientBuilder.EndpointConfiguration s3EndpointConfiguration,
+                             UploadSettings uploadSettings)
+                                        throws FilmWatcherInitException {
+
+        try {
+            var s3ClientBuilder = AmazonS3ClientBuilder.standard();
+
+            if (null != s3EndpointConfiguration) {
+                log.info("Use pre-defined S3 endpoint: {}", s3EndpointConfiguration.getServiceEndpoint());
+                s3ClientBuilder = s3ClientBuilder.withEndpointConfiguration(s3EndpointConfiguration)
+                        .withPathStyleAccessEnabled(appConfig.isS3PathStyleAccess());
+            } else {
+                log.info("Use default S3 endpoint.");
+                s3ClientBuilder = s3ClientBuilder.withRegion(appConfig.getRegion());
+            }
+            // S3Uploader retries throttling and 5xx itself; SDK retries underneath would multiply the attempts.
+            // Uploads on virtual threads may outnumber the default connection pool.
+            s3ClientBuilder = s3ClientBuilder.withCredentials(awsCredentialsProvider)
+                    .withClientConfiguration(new ClientConfiguration().withMaxErrorRetry(0)
+                            .withMaxConnections(Math.max(ClientConfiguration.DEFAULT_MAX_CONNECTIONS,
+                                    uploadSettings.getMaxInFlight())));
+
+            return s3ClientBuilder.build();
+
+        } catch (Exception ex) {
+            log.error("S3 client can not be created!", ex);
+
+            throw new FilmWatcherInitException(ex);
         }
+    }
 
-        var amazonKinesisVideoMediaClientBuilder =
-                AmazonKinesisVideoMediaClientBuilder.standard();
+    @ConditionalOnProperty(prefix = "film.watcher.checkpoint", value = "store", havingValue = "file",
+            matchIfMissing = true)
+    @Bean
+    public CheckpointStore fileCheckpointStore(@Value("${film.watcher.checkpoint.dir:checkpoints}") String directory)
+            throws CheckpointException {
 
-        amazonKinesisVideoMediaClientBuilder.withEndpointConfiguration(
-                new AwsClientBuilder.EndpointConfiguration(endpoint, appConfig.getRegion()))
-                    .withCredentials(awsCredentialsProvider);
+        return new FileCheckpointStore(Paths.get(directory));
+    }
+
+    /**
+     * Instances sharing the lease directory split the streams between them.
+     */
+    @ConditionalOnProperty(prefix = "film.watcher.lease", value = "store", havingValue = "file")
+    @Bean
+    public LeaseStore fileLeaseStore(@Value("${film.watcher.lease.dir:leases}") String directory)
+            throws LeaseException {
 
-        return amazonKinesisVideoMediaClientBuilder.build();
+        return new FileLeaseStore(Paths.get(directory));
     }
 }
@@ -11,7 +11,7 @@ import java.util.Iterator;
 @Slf4j
 public class StreamConsumerStart {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
         var applicationContext = SpringApplication.run(StreamConsumerStart.class, args);
 
         if (log.isDebugEnabled()) {
@@ -21,6 +21,12 @@ public class StreamConsumerStart {
                 log.debug("Bean: {}", namesIter.next());
             }
         }
-        applicationContext.getBean(FilmWatcher.class).beginWatchFilm();
+        final var filmWatcher = applicationContext.getBean(FilmWatcher.class);
+        filmWatcher.beginWatchFilm();
+
+        // Closing the context drains the watcher; live streams only end with a signal, which closes it as well.
+        final int status = filmWatcher.awaitFinished();
+        log.info("No source left to watch. Exit with status {}.", status);
+        System.exit(SpringApplication.exit(applicationContext, () -> status));
     }
 }
@@ -1,167 +1,613 @@
 package den.tal.stream.watch;
 
-import com.amazonaws.auth.AWSCredentialsProvider;
-import com.amazonaws.client.builder.AwsClientBuilder;
-import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
-import com.amazonaws.kinesisvideo.parser.examples.KinesisVideoFrameViewer;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
-import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
 import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
 import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
 import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
-import com.amazonaws.kinesisvideo.parser.utilities.H264FrameRenderer;
-import com.amazonaws.regions.Regions;
-import com.amazonaws.services.kinesisvideo.AmazonKinesisVideoMedia;
-import com.amazonaws.services.kinesisvideo.model.GetMediaRequest;
-import com.amazonaws.services.kinesisvideo.model.GetMediaResult;
-import com.amazonaws.services.kinesisvideo.model.StartSelector;
-import com.amazonaws.services.kinesisvideo.model.StartSelectorType;
+import com.amazonaws.services.s3.AmazonS3;
+import den.tal.stream.AppConfig;
+import den.tal.stream.KinesisVideoMediaClients;
+import den.tal.stream.watch.checkpoint.Checkpoint;
+import den.tal.stream.watch.checkpoint.CheckpointStore;
+import den.tal.stream.watch.dedup.DedupSettings;
+import den.tal.stream.watch.encode.EncodeSettings;
 import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import den.tal.stream.watch.lease.LeaseCoordinator;
+import den.tal.stream.watch.lease.LeaseSettings;
+import den.tal.stream.watch.lease.LeaseStore;
+import den.tal.stream.watch.metrics.FrameMetrics;
+import den.tal.stream.watch.metrics.StreamMetrics;
+import den.tal.stream.watch.pipeline.DecodedFrame;
+import den.tal.stream.watch.pipeline.ExecutionMode;
+import den.tal.stream.watch.pipeline.FramePipeline;
+import den.tal.stream.watch.pipeline.PipelineSettings;
+import den.tal.stream.watch.pipeline.StreamContext;
+import den.tal.stream.watch.preview.PreviewChannel;
+import den.tal.stream.watch.preview.PreviewServer;
+import den.tal.stream.watch.preview.PreviewSettings;
 import den.tal.stream.watch.processors.FilmFrameProcessor;
+import den.tal.stream.watch.sampling.AdaptiveRateController;
+import den.tal.stream.watch.sampling.AdaptiveSampler;
+import den.tal.stream.watch.sampling.AdaptiveSamplingSettings;
+import den.tal.stream.watch.sampling.FrameSampler;
+import den.tal.stream.watch.sampling.SamplingMode;
+import den.tal.stream.watch.sampling.SharpestFrameWindow;
+import den.tal.stream.watch.source.BackfillSettings;
+import den.tal.stream.watch.source.BackfillSource;
+import den.tal.stream.watch.source.FrameSource;
+import den.tal.stream.watch.source.MkvDirectorySource;
+import den.tal.stream.watch.source.SourceType;
+import den.tal.stream.watch.spool.FrameSpool;
+import den.tal.stream.watch.spool.SpoolDrainer;
+import den.tal.stream.watch.spool.SpoolSettings;
+import den.tal.stream.watch.startup.StartupSettings;
+import den.tal.stream.watch.startup.StartupWarmUp;
+import den.tal.stream.watch.upload.S3Uploader;
+import den.tal.stream.watch.upload.UploadSettings;
+import den.tal.stream.watch.visitors.CheckpointVisitor;
+import den.tal.stream.watch.visitors.CompositeFrameProcessor;
+import den.tal.stream.watch.visitors.FragmentEndVisitor;
+import den.tal.stream.watch.visitors.LagVisitor;
 import den.tal.stream.watch.visitors.LogFrameProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
-
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Watches every configured stream, or a directory of MKV files, on its own reader thread. All sources feed
+ * one shared {@link FramePipeline}. A failing stream is reconnected or retired on its own. Reading starts with
+ * {@link #beginWatchFilm()}, can be paused and resumed over JMX, and ends with a drain of the pipeline when
+ * no source is left or the application context closes.
+ */
 @Slf4j
 @Component
+@ManagedResource(objectName = "traffic-guard:name=FilmWatcher", description = "Frame watcher lifecycle")
 public class FilmWatcher {
 
-    @Value("${kinesis.video.stream.name}")
-    private String videoStreamName;
-
-    @Value("${aws.region}")
-    private String region;
-
     @Value("${film.watcher.save_nth_frame}")
     private int watchAnyNthFrame;
 
+    /**
+     * nth-frame, keyframes-only or interval.
+     */
+    @Value("${film.watcher.sampling.mode:nth-frame}")
+    private String samplingMode;
+
+    @Value("${film.watcher.sampling.interval_ms:1000}")
+    private long samplingIntervalMillis;
+
+    /**
+     * Window of the sharpest mode in frames, used when window_ms is 0.
+     */
+    @Value("${film.watcher.sampling.window_frames:10}")
+    private long sharpestWindowFrames;
+
+    @Value("${film.watcher.sampling.window_ms:0}")
+    private long sharpestWindowMillis;
+
+    /**
+     * kinesis or files.
+     */
+    @Value("${film.watcher.source.type:kinesis}")
+    private String sourceType;
+
+    /**
+     * Directory of MKV files read by the files source.
+     */
+    @Value("${film.watcher.source.dir:archive}")
+    private String sourceDir;
+
+    @Value("${film.watcher.source.parallelism:2}")
+    private int sourceParallelism;
+
     @Value("${film.watcher.wait.retry.read}")
     private int waitAndRetryInSeconds;
 
     @Value("${film.watcher.bucket_name}")
     private String bucketName;
 
-    @Value("${film.watcher.folder}")
-    private String folder;
+    @Value("${film.watcher.checkpoint.every_n_fragments:10}")
+    private int checkpointEveryNFragments;
+
+    /**
+     * Frames logged at debug level, one in every N; 0 logs only fragments and tracks.
+     */
+    @Value("${film.watcher.log.frame_every:100}")
+    private int logEveryNthFrame;
+
+    @Autowired
+    private AppConfig appConfig;
+
+    @Autowired
+    private AmazonS3 s3;
+
+    @Autowired
+    private PipelineSettings pipelineSettings;
+
+    @Autowired
+    private UploadSettings uploadSettings;
+
+    @Autowired
+    private DedupSettings dedupSettings;
+
+    @Autowired
+    private EncodeSettings encodeSettings;
 
-    @Value("${film.watcher.monitor.render}")
-    private boolean renderStream;
+    @Autowired
+    private AdaptiveSamplingSettings adaptiveSettings;
 
-    @Value("${film.watcher.monitor.width}")
-    private int monitorWidth;
+    @Autowired
+    private SpoolSettings spoolSettings;
 
-    @Value("${film.watcher.monitor.height}")
-    private int monitorHeight;
+    @Autowired
+    private PreviewSettings previewSettings;
 
     @Autowired
-    private AWSCredentialsProvider credentialsProvider;
+    private ReconnectSettings reconnectSettings;
 
-    final private ExecutorService executorService = Executors.newSingleThreadExecutor();
+    @Autowired
+    private StartupSettings startupSettings;
 
-    private CompositeMkvElementVisitor compositeVisitor;
+    @Autowired
+    private BackfillSettings backfillSettings;
 
     @Autowired
-    private AmazonKinesisVideoMedia amazonKinesisVideoMedia;
+    private MeterRegistry meterRegistry;
+
+    private FrameMetrics metrics;
+
+    private S3Uploader uploader;
+
+    private FramePipeline pipeline;
+
+    /**
+     * Both null when the spool is off.
+     */
+    private FrameSpool spool;
+    private SpoolDrainer spoolDrainer;
 
-    private StartSelector startSelector;
+    /**
+     * Null when the preview is off.
+     */
+    private PreviewServer previewServer;
 
-    final private ReentrantLock lock = new ReentrantLock();
+    /**
+     * Null when the warm-up is off.
+     */
+    private StartupWarmUp warmUp;
 
-    @Qualifier("s3EndpointConfiguration")
+    private ExecutorService executorService;
+
+    @Autowired
+    private KinesisVideoMediaClients mediaClients;
+
+    /**
+     * Absent when checkpoints are switched off; every connection then starts from NOW.
+     */
+    @Autowired(required = false)
+    private CheckpointStore checkpointStore;
+
+    /**
+     * Present when instances share the streams; each then reads only the streams it holds a lease for.
+     */
     @Autowired(required = false)
-    private AwsClientBuilder.EndpointConfiguration s3EndpointConfiguration;
+    private LeaseStore leaseStore;
+
+    @Autowired
+    private LeaseSettings leaseSettings;
+
+    private LeaseCoordinator leaseCoordinator;
 
+    private final List<FrameSource> sources = new ArrayList<>();
+
+    private final WatcherLifecycle lifecycle = new WatcherLifecycle();
+
+    private final AtomicInteger activeSources = new AtomicInteger();
+    private final AtomicInteger failedSources = new AtomicInteger();
+
+    /**
+     * Released once no source is left or the watcher is stopped.
+     */
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private SamplingMode mode;
 
     @PostConstruct
     private void initWatcher() throws FilmWatcherInitException {
-        lock.lock();
-        FilmFrameProcessor frameToS3Persister = new FilmFrameProcessor(watchAnyNthFrame, bucketName, folder,
-                Regions.fromName(region), credentialsProvider, lock, s3EndpointConfiguration);
+        final SourceType type = SourceType.fromProperty(sourceType);
+        if (startupSettings.isWarmUp()) {
+            warmUp = new StartupWarmUp(SourceType.KINESIS == type ? mediaClients : null,
+                    appConfig.getVideoStreamNames(), s3, bucketName, encodeSettings);
+        }
+        metrics = new FrameMetrics(meterRegistry);
+        final ExecutionMode execution = pipelineSettings.getExecutionMode();
+        log.info("Stream readers and S3 uploads run on {} threads.", execution.toProperty());
+        uploader = new S3Uploader(s3, bucketName, uploadSettings, metrics,
+                execution.newExecutor("s3-upload-", uploadSettings.getMaxInFlight(), false));
+        if (spoolSettings.isEnabled()) {
+            try {
+                spool = FrameSpool.open(spoolSettings);
+            } catch (IOException ioex) {
+
+                throw new FilmWatcherInitException(ioex);
+            }
+            metrics.bindSpool(spool);
+            spoolDrainer = new SpoolDrainer(spool, uploader, spoolSettings.getRetryMillis(), metrics);
+            spoolDrainer.start();
+        }
+        pipeline = new FramePipeline(pipelineSettings, dedupSettings, encodeSettings, uploadSettings, uploader, spool,
+                metrics);
+        if (previewSettings.isEnabled()) {
+            final var preview = new PreviewChannel(previewSettings.getFps());
+            try {
+                previewServer = new PreviewServer(preview, previewSettings.getPort(), previewSettings.getViewers());
+            } catch (IOException ioex) {
+
+                throw new FilmWatcherInitException(ioex);
+            }
+            pipeline.setPreview(preview);
+            previewServer.start();
+        }
+        mode = SamplingMode.fromProperty(samplingMode);
+        if (adaptiveSettings.isEnabled()) {
+            if (SamplingMode.KEYFRAMES_ONLY == mode) {
+                log.warn("Adaptive sampling has no interval to adjust in the keyframes-only mode. Ignore it.");
+            } else {
+                adaptiveSettings.check(configuredInterval());
+            }
+        }
+
+        int readers = 0;
+        if (SourceType.FILES == type) {
+            // Files of a directory are counted together, not one meter per file.
+            final StreamMetrics directoryMetrics = metrics.forStream(sourceDir);
+            sources.add(new MkvDirectorySource(Path.of(sourceDir), sourceParallelism,
+                    fileName -> {
+                        final StreamContext stream = newStreamContext(fileName);
+
+                        return new CompositeMkvElementVisitor(createVisitorChain(stream, directoryMetrics),
+                                FragmentEndVisitor.create(stream.getFragments()));
+                    }, pipeline::finish));
+        } else {
+            final List<String> videoStreamNames = appConfig.getVideoStreamNames();
+            if (videoStreamNames.isEmpty()) {
 
-        FrameVisitor frameVisitor = FrameVisitor.create(frameToS3Persister, Optional.of(
-                new FragmentMetadataVisitor.BasicMkvTagProcessor()));
+                throw new FilmWatcherInitException("At least one Kinesis Video stream is required!");
+            }
+            if (SourceType.BACKFILL == type) {
+                // A one-off job over the past: leases and checkpoints of the live readers are left alone.
+                for (String videoStreamName : videoStreamNames) {
+                    final StreamMetrics streamMetrics = metrics.forStream(videoStreamName);
+                    sources.add(new BackfillSource(videoStreamName, mediaClients, backfillSettings,
+                            lane -> {
+                                final StreamContext stream = pipeline.attach(new StreamContext(videoStreamName, lane,
+                                        newSharpestWindow()));
+
+                                return new CompositeMkvElementVisitor(createVisitorChain(stream, streamMetrics),
+                                        FragmentEndVisitor.create(stream.getFragments()));
+                            }, pipeline::finish));
+                }
+            } else if (null == leaseStore) {
+                for (String videoStreamName : videoStreamNames) {
+                    sources.add(createStreamWatcher(newStreamContext(videoStreamName), null));
+                }
+            } else {
+                leaseCoordinator = new LeaseCoordinator(leaseStore, leaseSettings.getOwner(), videoStreamNames,
+                        leaseSettings.getDurationMillis(), new LeasedStreams());
+                readers = videoStreamNames.size();
+            }
+        }
 
-        var logFrame = new LogFrameProcessor();
-        if (renderStream) {
-            log.debug("Render stream...");
-            final var frameRenderer = H264FrameRenderer.create(new KinesisVideoFrameViewer(monitorWidth,
-                    monitorHeight));
+        activeSources.set(sources.size());
+        // A reader stuck on a silent connection must not keep the JVM alive.
+        executorService = execution.newExecutor("stream-reader-", Math.max(readers, sources.size()), true);
 
-            compositeVisitor = new CompositeMkvElementVisitor(FrameVisitor.create(logFrame), frameVisitor,
-                    FrameVisitor.create(frameRenderer));
+        for (FrameSource source : sources) {
+            executorService.submit(() -> run(source));
+        }
+    }
 
+    /**
+     * @param resumeFrom checkpoint handed over with a lease, null to resume from the stored one
+     */
+    private StreamWatcher createStreamWatcher(StreamContext stream, Checkpoint resumeFrom) {
+        final String videoStreamName = stream.getStreamName();
+        final StreamMetrics streamMetrics = metrics.forStream(videoStreamName);
+        CompositeMkvElementVisitor compositeVisitor = new CompositeMkvElementVisitor(
+                createVisitorChain(stream, streamMetrics), LagVisitor.create(streamMetrics));
+
+        CheckpointVisitor checkpointVisitor = null;
+        if (null != checkpointStore) {
+            checkpointVisitor = CheckpointVisitor.create(videoStreamName, stream.getFragments(), checkpointStore,
+                    checkpointEveryNFragments);
+            if (null != resumeFrom) {
+                checkpointVisitor.resumeFrom(resumeFrom);
+            }
+            compositeVisitor = new CompositeMkvElementVisitor(compositeVisitor, checkpointVisitor);
         } else {
-            compositeVisitor = new CompositeMkvElementVisitor(FrameVisitor.create(logFrame), frameVisitor);
+            compositeVisitor = new CompositeMkvElementVisitor(compositeVisitor,
+                    FragmentEndVisitor.create(stream.getFragments()));
+        }
+
+        return new StreamWatcher(videoStreamName, mediaClients, compositeVisitor, checkpointVisitor,
+                reconnectSettings);
+    }
+
+    /**
+     * Builds the visitor chain of one stream. Sampling and decoder state are never shared between streams.
+     * One frame visitor feeds all frame processors, so fragment metadata and tags are parsed once per stream.
+     */
+    private CompositeMkvElementVisitor createVisitorChain(StreamContext stream, StreamMetrics streamMetrics) {
+        final FrameSampler sampler = createSampler(stream, streamMetrics);
+        FilmFrameProcessor frameToS3Persister = new FilmFrameProcessor(stream, sampler, lifecycle, pipeline,
+                streamMetrics);
+
+        var logFrame = new LogFrameProcessor(stream.getStreamName(), logEveryNthFrame);
+
+        return FrameVisitor.create(new CompositeFrameProcessor(logFrame, frameToS3Persister),
+                Optional.of(new FragmentMetadataVisitor.BasicMkvTagProcessor()));
+    }
+
+    /**
+     * The configured sampler, or one whose interval follows the lag and queue fill of the stream.
+     */
+    private FrameSampler createSampler(StreamContext stream, StreamMetrics streamMetrics) {
+        if (!adaptiveSettings.isEnabled() || SamplingMode.KEYFRAMES_ONLY == mode) {
+
+            return mode.createSampler(watchAnyNthFrame, samplingIntervalMillis);
         }
+        final String lane = stream.getLaneName();
+
+        return new AdaptiveSampler(new AdaptiveRateController(lane, configuredInterval(), adaptiveSettings),
+                SamplingMode.INTERVAL == mode, streamMetrics::getLagMillis, () -> pipeline.getOccupancy(lane));
+    }
 
-        startSelector = new StartSelector().withStartSelectorType(StartSelectorType.NOW);
-        executorService.submit(this::run);
+    /**
+     * Frames in the nth-frame and sharpest modes, milliseconds in the interval mode.
+     */
+    private long configuredInterval() {
+
+        return SamplingMode.INTERVAL == mode ? samplingIntervalMillis : watchAnyNthFrame;
+    }
+
+    private StreamContext newStreamContext(String streamName) {
+
+        return pipeline.attach(new StreamContext(streamName, newSharpestWindow()));
     }
 
+    private SharpestFrameWindow<DecodedFrame> newSharpestWindow() {
+
+        return SamplingMode.SHARPEST == mode
+                ? new SharpestFrameWindow<>(sharpestWindowFrames, sharpestWindowMillis)
+                : null;
+    }
+
+    /**
+     * Stops the readers and drains the pipeline and the uploads within the drain timeout, then saves checkpoints.
+     * Runs once; a concurrent caller waits for it.
+     */
     @PreDestroy
     private void destroyWatcher() {
-        endWatchFilm();
-        executorService.shutdown();
+        final long drainNanos = TimeUnit.SECONDS.toNanos(pipelineSettings.getDrainTimeoutSeconds());
+        try {
+            if (!lifecycle.drain()) {
+                lifecycle.awaitStopped(drainNanos, TimeUnit.NANOSECONDS);
+
+                return;
+            }
+            final long deadline = System.nanoTime() + drainNanos;
+            // A heartbeat must not start readers on the executor shut down next; leases are released after the drain.
+            if (null != leaseCoordinator && !leaseCoordinator.stopHeartbeats(drainNanos, TimeUnit.NANOSECONDS)) {
+                log.warn("Lease heartbeat has not finished in time.");
+            }
+            // Wakes readers waiting to reconnect; the others stop at their next frame.
+            executorService.shutdownNow();
+            // The warm-up uses the clients shut down next.
+            if (null != warmUp && !warmUp.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                log.warn("Warm-up has not finished in time.");
+            }
+            if (null != previewServer) {
+                previewServer.stop();
+            }
+            pipeline.shutdown(deadline);
+            // Spooled frames wait for the next start; uploads failing meanwhile are still spooled.
+            if (null != spoolDrainer && !spoolDrainer.stop(Math.max(0, deadline - System.nanoTime()),
+                    TimeUnit.NANOSECONDS)) {
+                log.warn("Spool drainer has not stopped in time.");
+            }
+            if (!uploader.shutdown(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                log.warn("Uploads have not finished in {} seconds.", pipelineSettings.getDrainTimeoutSeconds());
+            }
+        } catch (InterruptedException iex) {
+            log.warn("Interrupted while draining.", iex);
+            Thread.currentThread().interrupt();
+        }
+        if (null != spool) {
+            try {
+                spool.close();
+            } catch (IOException ioex) {
+                log.error("Could not sync the spool.", ioex);
+            }
+        }
+        // Only committed fragments are saved: frames not drained in time are read again on start.
+        sources.forEach(FrameSource::flushCheckpoint);
+        if (null != leaseCoordinator) {
+            try {
+                leaseCoordinator.stop(drainNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException iex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lifecycle.stopped();
+        finished.countDown();
     }
 
-    private void run() {
-        int status = 0;
+    /**
+     * Reconnects a live source after read and service errors. A source that can't be read at all is retired.
+     */
+    private void run(FrameSource source) {
+        final String name = source.getName();
         try {
-            final long millis = TimeUnit.SECONDS.toMillis(waitAndRetryInSeconds);
-            while (true) {
-                log.debug("Get media from stream {}.", videoStreamName);
-                GetMediaResult result = amazonKinesisVideoMedia.getMedia(new GetMediaRequest()
-                        .withStreamName(videoStreamName).withStartSelector(startSelector));
-
-                StreamingMkvReader streamingMkvReader = StreamingMkvReader.createDefault(
-                        new InputStreamParserByteSource(result.getPayload()));
-
-                if (streamingMkvReader.mightHaveNext()) {
-                    streamingMkvReader.apply(compositeVisitor);
-                } else {
-                    try {
-                        log.debug("Nothing to read from stream {}. Sleep for {} seconds.", videoStreamName,
-                                waitAndRetryInSeconds);
-
-                        Thread.currentThread().sleep(millis);
-                    } catch (InterruptedException iex) {
-                        log.warn("", iex);
+            while (lifecycle.awaitRunning()) {
+                try {
+                    source.watch();
+                    if (!source.isLive() || Thread.currentThread().isInterrupted()) {
+
+                        break;
                     }
-                }
-            }
-        } catch (MkvElementVisitException meve) {
-            status = 1;
-            log.error("Visitor exception {} for stream {}.", meve, videoStreamName);
-        } catch (RuntimeException ret) {
-            log.error("Can't get media from stream {}.", videoStreamName);
-            log.error("", ret);
+                } catch (MkvElementVisitException | RuntimeException ex) {
+                    if (Thread.currentThread().isInterrupted() || !lifecycle.awaitRunning()) {
 
-            throw ret;
+                        break;
+                    }
+                    log.error("Can't get media from {}. Reconnect in {} seconds.", name, waitAndRetryInSeconds, ex);
 
+                    TimeUnit.SECONDS.sleep(waitAndRetryInSeconds);
+                }
+            }
+        } catch (FilmWatcherInitException ex) {
+            failedSources.incrementAndGet();
+            log.error("{} can't be watched. Retire its watcher.", name, ex);
+        } catch (InterruptedException iex) {
+            log.debug("Watcher of {} interrupted.", name);
+            Thread.currentThread().interrupt();
         } finally {
-            log.info("Finishing getting media from stream {}.", videoStreamName);
-            System.exit(status);
+            log.info("Finishing getting media from {}.", name);
+            // Leased streams come and go; the watcher runs until it is stopped.
+            if (null == leaseCoordinator && 0 == activeSources.decrementAndGet()) {
+                log.info("No source left to watch.");
+                finished.countDown();
+            }
         }
     }
 
+    /**
+     * Lets the readers hand frames over.
+     */
     public void beginWatchFilm() {
         log.trace("Begin watching film...");
-        lock.unlock();
+        lifecycle.start();
+        if (null != leaseCoordinator) {
+            leaseCoordinator.start(leaseSettings.getHeartbeatMillis());
+        }
+    }
+
+    /**
+     * Blocks until no source is left or the watcher is stopped.
+     *
+     * @return exit status: 1 if a source had to be retired, 0 otherwise
+     */
+    public int awaitFinished() throws InterruptedException {
+        finished.await();
+
+        return failedSources.get() > 0 ? 1 : 0;
+    }
+
+    /**
+     * Readers stop at their next frame and keep their connections; a connection dropped meanwhile is
+     * reopened from the last fragment read.
+     */
+    @ManagedOperation(description = "Stop handing frames over until resumed")
+    public boolean pause() {
+
+        return lifecycle.pause();
+    }
+
+    @ManagedOperation(description = "Hand frames over again")
+    public boolean resume() {
+
+        return lifecycle.resume();
+    }
+
+    @ManagedAttribute(description = "STARTING, RUNNING, PAUSED, DRAINING or STOPPED")
+    public String getState() {
+
+        return lifecycle.getState().name();
     }
 
-    public void endWatchFilm() {
-        log.trace("End watching film...");
-        lock.lock();
+    /**
+     * Starts and stops the reader of every stream this instance holds a lease for.
+     */
+    private class LeasedStreams implements LeaseCoordinator.Listener {
+
+        /**
+         * Kept after release, so the checkpoint of a stopped reader can still be handed over.
+         */
+        private final Map<String, StreamContext> streams = new ConcurrentHashMap<>();
+        private final Map<String, LeasedReader> readers = new ConcurrentHashMap<>();
+
+        @Override
+        public void acquired(String streamName, Checkpoint checkpoint) {
+            final StreamContext stream = newStreamContext(streamName);
+            final StreamWatcher watcher = createStreamWatcher(stream, checkpoint);
+            final var stopped = new CountDownLatch(1);
+            streams.put(streamName, stream);
+            readers.put(streamName, new LeasedReader(watcher, stopped, executorService.submit(() -> {
+                try {
+                    run(watcher);
+                } finally {
+                    stopped.countDown();
+                }
+            })));
+        }
+
+        @Override
+        public void released(String streamName) {
+            final LeasedReader reader = readers.remove(streamName);
+            if (null == reader) {
+
+                return;
+            }
+            reader.future.cancel(true);
+            try {
+                if (!reader.stopped.await(pipelineSettings.getDrainTimeoutSeconds(), TimeUnit.SECONDS)) {
+                    log.warn("Reader of {} has not stopped in time.", streamName);
+                }
+            } catch (InterruptedException iex) {
+                Thread.currentThread().interrupt();
+            }
+            pipeline.finish(streamName);
+            reader.watcher.flushCheckpoint();
+        }
+
+        @Override
+        public Checkpoint checkpoint(String streamName) {
+            final StreamContext stream = streams.get(streamName);
+
+            return null == stream ? null : stream.getFragments().getCommitted().orElse(null);
+        }
+    }
+
+    private static class LeasedReader {
+
+        final StreamWatcher watcher;
+        final CountDownLatch stopped;
+        final Future<?> future;
+
+        LeasedReader(StreamWatcher watcher, CountDownLatch stopped, Future<?> future) {
+            this.watcher = watcher;
+            this.stopped = stopped;
+            this.future = future;
+        }
     }
 }
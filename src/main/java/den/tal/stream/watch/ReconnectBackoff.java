@@ -0,0 +1,35 @@
+package den.tal.stream.watch;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter between GetMedia sessions, so readers of many streams don't reconnect in
+ * step. Used by one reader thread.
+ */
+public class ReconnectBackoff {
+
+    private final long baseMillis;
+    private final long maxMillis;
+    private int attempt;
+
+    public ReconnectBackoff(long baseMillis, long maxMillis) {
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * @return a random pause up to {@code base * 2^attempt}, capped by the maximum
+     */
+    public long next() {
+        final long ceiling = Math.min(maxMillis, baseMillis << Math.min(attempt++, 20));
+
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * A session delivered media; the next failure starts from the base again.
+     */
+    public void reset() {
+        attempt = 0;
+    }
+}
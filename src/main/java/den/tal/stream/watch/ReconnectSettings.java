@@ -0,0 +1,28 @@
+package den.tal.stream.watch;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * How a stream reader opens the next GetMedia session.
+ */
+@Getter
+@Component
+public class ReconnectSettings {
+
+    /**
+     * Ceiling of the first pause after an empty or failed session; it doubles with every further one.
+     */
+    @Value("${film.watcher.reconnect.backoff.base_ms:250}")
+    private long baseBackoffMillis;
+
+    @Value("${film.watcher.reconnect.backoff.max_ms:30000}")
+    private long maxBackoffMillis;
+
+    /**
+     * Open the next session as soon as the current one sends its continuation token, before it closes.
+     */
+    @Value("${film.watcher.reconnect.prefetch:false}")
+    private boolean prefetch;
+}
@@ -0,0 +1,245 @@
+package den.tal.stream.watch;
+
+import com.amazonaws.internal.SdkFilterInputStream;
+import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
+import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.amazonaws.services.kinesisvideo.AmazonKinesisVideoMedia;
+import com.amazonaws.services.kinesisvideo.model.GetMediaRequest;
+import com.amazonaws.services.kinesisvideo.model.GetMediaResult;
+import com.amazonaws.services.kinesisvideo.model.StartSelector;
+import com.amazonaws.services.kinesisvideo.model.StartSelectorType;
+import den.tal.stream.KinesisVideoMediaClients;
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import den.tal.stream.watch.source.FrameSource;
+import den.tal.stream.watch.visitors.CheckpointVisitor;
+import den.tal.stream.watch.visitors.ContinuationVisitor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads one Kinesis Video stream through its own GetMedia connection and visitor chain. A session that ends
+ * after delivering media is followed by the next one at once; empty and failed sessions back off with jitter.
+ * With prefetch on, the next session is opened as soon as the current one sends its continuation token.
+ */
+@Slf4j
+public class StreamWatcher implements FrameSource {
+
+    @Getter
+    private final String videoStreamName;
+
+    private final KinesisVideoMediaClients mediaClients;
+    private final CompositeMkvElementVisitor compositeVisitor;
+    private final CheckpointVisitor checkpointVisitor;
+    private final ReconnectBackoff backoff;
+
+    /**
+     * Null unless prefetch is on. Its only thread ends when idle.
+     */
+    private final ExecutorService prefetcher;
+
+    private AmazonKinesisVideoMedia media;
+
+    /**
+     * Continuation token of the last session, used when checkpoints are off.
+     */
+    private String continuationToken;
+
+    private CompletableFuture<GetMediaResult> prefetched;
+    private String prefetchedToken;
+
+    /**
+     * @param checkpointVisitor part of the composite visitor or null if checkpoints are off
+     */
+    public StreamWatcher(String videoStreamName, KinesisVideoMediaClients mediaClients,
+                         CompositeMkvElementVisitor compositeVisitor, CheckpointVisitor checkpointVisitor,
+                         ReconnectSettings reconnectSettings) {
+
+        this.videoStreamName = videoStreamName;
+        this.mediaClients = mediaClients;
+        this.compositeVisitor = new CompositeMkvElementVisitor(compositeVisitor,
+                ContinuationVisitor.create(this::sessionEnding));
+
+        this.checkpointVisitor = checkpointVisitor;
+        this.backoff = new ReconnectBackoff(reconnectSettings.getBaseBackoffMillis(),
+                reconnectSettings.getMaxBackoffMillis());
+
+        this.prefetcher = reconnectSettings.isPrefetch()
+                ? new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    final var thread = new Thread(runnable, "get-media-prefetch-" + videoStreamName);
+                    thread.setDaemon(true);
+
+                    return thread;
+                })
+                : null;
+    }
+
+    @Override
+    public String getName() {
+
+        return videoStreamName;
+    }
+
+    @Override
+    public boolean isLive() {
+
+        return true;
+    }
+
+    /**
+     * Reads sessions until the visitor chain fails or the thread is interrupted.
+     */
+    @Override
+    public void watch() throws FilmWatcherInitException, MkvElementVisitException {
+        media = mediaClients.forStream(videoStreamName);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                read();
+            }
+        } finally {
+            discardPrefetched();
+        }
+    }
+
+    @Override
+    public void flushCheckpoint() {
+        if (null != checkpointVisitor) {
+            checkpointVisitor.flush();
+        }
+    }
+
+    private void read() throws MkvElementVisitException {
+        InputStream payload = null;
+        boolean consumed = false;
+        try {
+            payload = nextSession().getPayload();
+            final StreamingMkvReader streamingMkvReader = StreamingMkvReader.createDefault(
+                    new InputStreamParserByteSource(payload));
+
+            if (streamingMkvReader.mightHaveNext()) {
+                streamingMkvReader.apply(compositeVisitor);
+                consumed = true;
+                backoff.reset();
+                log.debug("Session of stream {} ended. Reconnect at once.", videoStreamName);
+            } else {
+                consumed = true;
+                pause(null);
+            }
+        } catch (RuntimeException ex) {
+            pause(ex);
+        } finally {
+            release(payload, consumed);
+        }
+    }
+
+    /**
+     * The prefetched session if it starts where the last one ended, a new one otherwise.
+     */
+    private GetMediaResult nextSession() {
+        final CompletableFuture<GetMediaResult> next = prefetched;
+        if (null != next && null != prefetchedToken && prefetchedToken.equals(continuationToken)) {
+            prefetched = null;
+            log.debug("Take the prefetched session of stream {}.", videoStreamName);
+
+            return next.join();
+        }
+        discardPrefetched();
+
+        return getMedia(nextStartSelector());
+    }
+
+    private StartSelector nextStartSelector() {
+        if (null != checkpointVisitor) {
+
+            return checkpointVisitor.nextStartSelector();
+        }
+
+        return null == continuationToken ? new StartSelector().withStartSelectorType(StartSelectorType.NOW)
+                : continuationSelector(continuationToken);
+    }
+
+    private GetMediaResult getMedia(StartSelector startSelector) {
+        log.debug("Get media from stream {} starting at {}.", videoStreamName, startSelector);
+
+        return media.getMedia(new GetMediaRequest().withStreamName(videoStreamName)
+                .withStartSelector(startSelector));
+    }
+
+    /**
+     * Called on the reader thread when a fragment brings a new continuation token.
+     */
+    private void sessionEnding(String token) {
+        continuationToken = token;
+        if (null == prefetcher) {
+
+            return;
+        }
+        discardPrefetched();
+        final StartSelector startSelector = continuationSelector(token);
+        prefetchedToken = token;
+        prefetched = CompletableFuture.supplyAsync(() -> getMedia(startSelector), prefetcher);
+    }
+
+    private void discardPrefetched() {
+        if (null != prefetched) {
+            prefetched.whenComplete((result, ex) -> {
+                if (null != result) {
+                    release(result.getPayload(), false);
+                }
+            });
+            prefetched = null;
+            prefetchedToken = null;
+        }
+    }
+
+    /**
+     * @param ex failure of the session, null if it was empty
+     */
+    private void pause(RuntimeException ex) {
+        final long millis = backoff.next();
+        if (null == ex) {
+            log.debug("Nothing to read from stream {}. Reconnect in {} ms.", videoStreamName, millis);
+        } else {
+            log.warn("Session of stream {} failed. Reconnect in {} ms.", videoStreamName, millis, ex);
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static StartSelector continuationSelector(String token) {
+
+        return new StartSelector().withStartSelectorType(StartSelectorType.CONTINUATION_TOKEN)
+                .withContinuationToken(token);
+    }
+
+    /**
+     * Closing a payload that was not read to its end would drain a live session first, so it is aborted.
+     */
+    private static void release(InputStream payload, boolean consumed) {
+        if (null == payload) {
+
+            return;
+        }
+        try {
+            if (!consumed && payload instanceof SdkFilterInputStream) {
+                ((SdkFilterInputStream) payload).abort();
+            } else {
+                payload.close();
+            }
+        } catch (IOException ioex) {
+            log.debug("Could not close a GetMedia payload.", ioex);
+        }
+    }
+}
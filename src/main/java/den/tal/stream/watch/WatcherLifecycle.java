@@ -0,0 +1,137 @@
+package den.tal.stream.watch;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@code STARTING -> RUNNING <-> PAUSED -> DRAINING -> STOPPED}, moved by compare-and-set. Reader threads check it
+ * on every frame with one volatile read and block only while the watcher is starting or paused. Any thread may
+ * move it; nothing is held across threads.
+ */
+@Slf4j
+public class WatcherLifecycle {
+
+    public enum State {
+
+        STARTING,
+        RUNNING,
+        PAUSED,
+
+        /**
+         * Readers stop, frames already in the pipeline are finished.
+         */
+        DRAINING,
+
+        STOPPED
+    }
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.STARTING);
+
+    /**
+     * Only for waiting; transitions never take it.
+     */
+    private final Object monitor = new Object();
+
+    public State getState() {
+
+        return state.get();
+    }
+
+    public boolean start() {
+
+        return move(State.STARTING, State.RUNNING);
+    }
+
+    public boolean pause() {
+
+        return move(State.RUNNING, State.PAUSED);
+    }
+
+    public boolean resume() {
+
+        return move(State.PAUSED, State.RUNNING);
+    }
+
+    /**
+     * @return true for the one caller that moved the watcher to DRAINING; it must call {@link #stopped()}
+     */
+    public boolean drain() {
+        State current;
+        do {
+            current = state.get();
+            if (State.DRAINING == current || State.STOPPED == current) {
+
+                return false;
+            }
+        } while (!state.compareAndSet(current, State.DRAINING));
+        log.info("Watcher {} -> {}", current, State.DRAINING);
+        signal();
+
+        return true;
+    }
+
+    public void stopped() {
+        log.info("Watcher {} -> {}", state.getAndSet(State.STOPPED), State.STOPPED);
+        signal();
+    }
+
+    /**
+     * Called for every frame.
+     *
+     * @return false once the watcher is draining or stopped; the frame must not be handed over
+     */
+    public boolean awaitRunning() throws InterruptedException {
+        State current = state.get();
+        if (State.RUNNING == current) {
+
+            return true;
+        }
+        synchronized (monitor) {
+            while (State.STARTING == (current = state.get()) || State.PAUSED == current) {
+                monitor.wait();
+            }
+        }
+
+        return State.RUNNING == current;
+    }
+
+    /**
+     * @return false if the watcher has not stopped in time
+     */
+    public boolean awaitStopped(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (monitor) {
+            long left;
+            while (State.STOPPED != state.get()) {
+                left = deadline - System.nanoTime();
+                if (left <= 0) {
+
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(monitor, left);
+            }
+        }
+
+        return true;
+    }
+
+    private boolean move(State from, State to) {
+        if (state.compareAndSet(from, to)) {
+            log.info("Watcher {} -> {}", from, to);
+            signal();
+
+            return true;
+        }
+        log.warn("Watcher is {}, can't move from {} to {}.", state.get(), from, to);
+
+        return false;
+    }
+
+    private void signal() {
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package den.tal.stream.watch.checkpoint;
+
+import com.amazonaws.services.kinesisvideo.model.StartSelector;
+import com.amazonaws.services.kinesisvideo.model.StartSelectorType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Position right after a fragment.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class Checkpoint {
+
+    private final String fragmentNumber;
+
+    /**
+     * Continuation token sent by GetMedia, may be null.
+     */
+    private final String continuationToken;
+
+    /**
+     * Prefers the continuation token, which points right after the last fragment. Falls back to the fragment
+     * number, which re-reads the last fragment.
+     */
+    public StartSelector toStartSelector() {
+        if (null != continuationToken) {
+
+            return new StartSelector().withStartSelectorType(StartSelectorType.CONTINUATION_TOKEN)
+                    .withContinuationToken(continuationToken);
+        }
+
+        return new StartSelector().withStartSelectorType(StartSelectorType.FRAGMENT_NUMBER)
+                .withAfterFragmentNumber(fragmentNumber);
+    }
+}
@@ -0,0 +1,15 @@
+package den.tal.stream.watch.checkpoint;
+
+import den.tal.stream.watch.exceptions.CheckpointException;
+
+import java.util.Optional;
+
+/**
+ * Keeps the resume position of each stream between reconnects and restarts.
+ */
+public interface CheckpointStore {
+
+    Optional<Checkpoint> load(String streamName) throws CheckpointException;
+
+    void save(String streamName, Checkpoint checkpoint) throws CheckpointException;
+}
@@ -0,0 +1,84 @@
+package den.tal.stream.watch.checkpoint;
+
+import den.tal.stream.watch.exceptions.CheckpointException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Stores one properties file per stream. Files are replaced atomically, so a crash never leaves a torn checkpoint.
+ */
+@Slf4j
+public class FileCheckpointStore implements CheckpointStore {
+
+    private static final String FRAGMENT_NUMBER = "fragment_number";
+    private static final String CONTINUATION_TOKEN = "continuation_token";
+
+    private final Path directory;
+
+    public FileCheckpointStore(Path directory) throws CheckpointException {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ioex) {
+
+            throw new CheckpointException(ioex);
+        }
+        log.info("Checkpoints are stored in {}", directory.toAbsolutePath());
+    }
+
+    @Override
+    public Optional<Checkpoint> load(String streamName) throws CheckpointException {
+        Path file = fileOf(streamName);
+        if (!Files.exists(file)) {
+
+            return Optional.empty();
+        }
+        var properties = new Properties();
+        try (InputStream is = Files.newInputStream(file)) {
+            properties.load(is);
+        } catch (IOException ioex) {
+
+            throw new CheckpointException(ioex);
+        }
+        String fragmentNumber = properties.getProperty(FRAGMENT_NUMBER);
+        if (null == fragmentNumber) {
+
+            return Optional.empty();
+        }
+
+        return Optional.of(new Checkpoint(fragmentNumber, properties.getProperty(CONTINUATION_TOKEN)));
+    }
+
+    @Override
+    public void save(String streamName, Checkpoint checkpoint) throws CheckpointException {
+        var properties = new Properties();
+        properties.setProperty(FRAGMENT_NUMBER, checkpoint.getFragmentNumber());
+        if (null != checkpoint.getContinuationToken()) {
+            properties.setProperty(CONTINUATION_TOKEN, checkpoint.getContinuationToken());
+        }
+        Path file = fileOf(streamName);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp)) {
+                properties.store(os, streamName);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ioex) {
+
+            throw new CheckpointException(ioex);
+        }
+    }
+
+    private Path fileOf(String streamName) {
+
+        return directory.resolve(streamName.replaceAll("[^A-Za-z0-9._-]", "_") + ".checkpoint");
+    }
+}
@@ -0,0 +1,121 @@
+package den.tal.stream.watch.checkpoint;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+
+/**
+ * Follows the sampled frames of one stream through the pipeline, fragment by fragment.
+ * A fragment is committed once it has been read to its end and every frame taken from it is uploaded
+ * or dropped. Fragments commit in stream order, so the committed checkpoint never skips a frame in flight.
+ * Frames may add lines to the index of their fragment, which is handed to the {@link IndexListener} on commit.
+ */
+public class FragmentTracker {
+
+    /**
+     * Called under the tracker's lock, from reader or pipeline threads; must not block.
+     */
+    @FunctionalInterface
+    public interface IndexListener {
+
+        void committed(String indexKey, String lines);
+    }
+
+    /**
+     * Frames of one fragment that are still in the pipeline.
+     */
+    public class Fragment {
+
+        private int pending;
+        private Checkpoint checkpoint;
+        private String indexKey;
+        private StringBuilder index;
+
+        private Fragment() {
+        }
+
+        /**
+         * Adds a line to the index of the fragment. Call before {@link #done()}.
+         *
+         * @param indexKey where the index of the fragment goes, the same for all its frames
+         */
+        public void indexed(String indexKey, String line) {
+            synchronized (FragmentTracker.this) {
+                if (null == index) {
+                    this.indexKey = indexKey;
+                    index = new StringBuilder();
+                }
+                index.append(line);
+            }
+        }
+
+        /**
+         * The frame is uploaded, failed for good or dropped on purpose. Called from pipeline threads.
+         */
+        public void done() {
+            synchronized (FragmentTracker.this) {
+                --pending;
+                advance();
+            }
+        }
+    }
+
+    private final Deque<Fragment> read = new ArrayDeque<>();
+    private IndexListener indexListener;
+    private Fragment open;
+    private Checkpoint committed;
+    private long committedCount;
+
+    /**
+     * Called on the reader thread before a sampled frame enters the pipeline.
+     *
+     * @return the fragment the frame belongs to; its {@link Fragment#done()} must be called exactly once
+     */
+    public synchronized Fragment frameSubmitted() {
+        if (null == open) {
+            open = new Fragment();
+        }
+        ++open.pending;
+
+        return open;
+    }
+
+    /**
+     * Called on the reader thread when a fragment has been read to its end.
+     */
+    public synchronized void fragmentRead(Checkpoint checkpoint) {
+        final Fragment fragment = null == open ? new Fragment() : open;
+        open = null;
+        fragment.checkpoint = checkpoint;
+        read.add(fragment);
+        advance();
+    }
+
+    public synchronized void setIndexListener(IndexListener indexListener) {
+        this.indexListener = indexListener;
+    }
+
+    public synchronized Optional<Checkpoint> getCommitted() {
+
+        return Optional.ofNullable(committed);
+    }
+
+    /**
+     * Fragments committed since the start, lets callers save every N fragments.
+     */
+    public synchronized long getCommittedCount() {
+
+        return committedCount;
+    }
+
+    private void advance() {
+        while (!read.isEmpty() && read.peek().pending <= 0) {
+            final Fragment fragment = read.poll();
+            committed = fragment.checkpoint;
+            ++committedCount;
+            if (null != indexListener && null != fragment.index) {
+                indexListener.committed(fragment.indexKey, fragment.index.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package den.tal.stream.watch.dedup;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Component
+public class DedupSettings {
+
+    @Value("${film.watcher.dedup.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * Frames within this Hamming distance (out of 64 bits) of the last uploaded frame are dropped.
+     */
+    @Value("${film.watcher.dedup.max_distance:5}")
+    private int maxDistance;
+
+    /**
+     * How often the kept and dropped counts are logged.
+     */
+    @Value("${film.watcher.dedup.report_interval_seconds:60}")
+    private int reportIntervalSeconds;
+}
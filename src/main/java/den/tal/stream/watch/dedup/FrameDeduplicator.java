@@ -0,0 +1,71 @@
+package den.tal.stream.watch.dedup;
+
+import den.tal.stream.watch.pipeline.StreamContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drops decoded frames that look almost the same as the last frame uploaded for their stream,
+ * e.g. while the car is parked or stuck in traffic. Frames still on their way to S3 are not compared against,
+ * so a frame that fails to upload never suppresses the ones after it.
+ */
+@Slf4j
+public class FrameDeduplicator {
+
+    private final int maxDistance;
+    private final long reportIntervalNanos;
+    private final AtomicLong kept = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong nextReport;
+
+    public FrameDeduplicator(DedupSettings settings) {
+        this.maxDistance = settings.getMaxDistance();
+        this.reportIntervalNanos = TimeUnit.SECONDS.toNanos(settings.getReportIntervalSeconds());
+        this.nextReport = new AtomicLong(System.nanoTime() + reportIntervalNanos);
+    }
+
+    /**
+     * @param hash {@link PerceptualHash#dHash} of the decoded frame
+     */
+    public boolean isDuplicate(StreamContext stream, long hash) {
+        final Long lastUploadedHash = stream.getLastUploadedHash();
+        boolean duplicate = false;
+        if (null != lastUploadedHash) {
+            int distance = PerceptualHash.distance(hash, lastUploadedHash);
+            if (distance <= maxDistance) {
+                log.trace("Frame of stream {} is {} bit(s) away from the last uploaded one. Drop it.",
+                        stream.getStreamName(), distance);
+                duplicate = true;
+            }
+        }
+        (duplicate ? dropped : kept).incrementAndGet();
+        reportIfDue();
+
+        return duplicate;
+    }
+
+    /**
+     * Logs the counts since the start, at most once per report interval.
+     */
+    public void reportIfDue() {
+        final long now = System.nanoTime();
+        final long due = nextReport.get();
+        if (now - due >= 0 && nextReport.compareAndSet(due, now + reportIntervalNanos)) {
+            report();
+        }
+    }
+
+    /**
+     * Frames dropped as duplicates since the start.
+     */
+    public long getDropped() {
+
+        return dropped.get();
+    }
+
+    public void report() {
+        log.info("Deduplication: {} frame(s) kept, {} dropped.", kept.get(), dropped.get());
+    }
+}
@@ -0,0 +1,65 @@
+package den.tal.stream.watch.dedup;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Difference hash (dHash): the image is reduced to a 9x8 grid of average luma values, and every bit tells
+ * whether a cell is brighter than its right neighbour. Similar images differ in a few bits only.
+ */
+public final class PerceptualHash {
+
+    private static final int COLUMNS = 9;
+    private static final int ROWS = 8;
+
+    /**
+     * Pixels sampled per cell side. Averaging a sparse grid is enough for a 64 bit hash.
+     */
+    private static final int SAMPLES_PER_CELL = 4;
+
+    private PerceptualHash() {
+    }
+
+    public static long dHash(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] luma = new int[COLUMNS * ROWS];
+
+        for (int row = 0; row < ROWS; row++) {
+            final int top = row * height / ROWS;
+            final int bottom = Math.max(top + 1, (row + 1) * height / ROWS);
+            final int stepY = Math.max(1, (bottom - top) / SAMPLES_PER_CELL);
+            for (int column = 0; column < COLUMNS; column++) {
+                final int left = column * width / COLUMNS;
+                final int right = Math.max(left + 1, (column + 1) * width / COLUMNS);
+                final int stepX = Math.max(1, (right - left) / SAMPLES_PER_CELL);
+                int sum = 0;
+                int count = 0;
+                for (int y = top; y < bottom; y += stepY) {
+                    for (int x = left; x < right; x += stepX) {
+                        final int rgb = image.getRGB(x, y);
+                        sum += (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+                        count++;
+                    }
+                }
+                luma[row * COLUMNS + column] = sum / count;
+            }
+        }
+
+        long hash = 0;
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS - 1; column++) {
+                hash <<= 1;
+                if (luma[row * COLUMNS + column] > luma[row * COLUMNS + column + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+
+        return hash;
+    }
+
+    public static int distance(long hash1, long hash2) {
+
+        return Long.bitCount(hash1 ^ hash2);
+    }
+}
@@ -0,0 +1,43 @@
+package den.tal.stream.watch.encode;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Component
+public class EncodeSettings {
+
+    /**
+     * JPEG quality from 0 to 1.
+     */
+    @Value("${film.watcher.encode.quality:0.85}")
+    private float quality;
+
+    /**
+     * Frames wider than this are scaled down keeping the aspect ratio; 0 keeps the size.
+     */
+    @Value("${film.watcher.encode.max_width:0}")
+    private int maxWidth;
+
+    /**
+     * Region of the frame to keep, applied before scaling. Zero width or height keeps the whole frame.
+     */
+    @Value("${film.watcher.encode.crop.x:0}")
+    private int cropX;
+
+    @Value("${film.watcher.encode.crop.y:0}")
+    private int cropY;
+
+    @Value("${film.watcher.encode.crop.width:0}")
+    private int cropWidth;
+
+    @Value("${film.watcher.encode.crop.height:0}")
+    private int cropHeight;
+
+    /**
+     * Encoded frame buffers kept for reuse. Buffers beyond this are left to the GC once uploaded.
+     */
+    @Value("${film.watcher.encode.buffer_pool_size:64}")
+    private int bufferPoolSize;
+}
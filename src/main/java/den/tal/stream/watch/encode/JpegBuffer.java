@@ -0,0 +1,92 @@
+package den.tal.stream.watch.encode;
+
+import javax.imageio.stream.ImageOutputStreamImpl;
+import java.util.Arrays;
+
+/**
+ * Growable in-memory image stream. The encoder writes into it directly and the uploader reads
+ * {@link #getData()} up to {@link #getLength()}, so the JPEG bytes are never copied. Taken from and given back
+ * to a {@link JpegBufferPool}.
+ */
+public class JpegBuffer extends ImageOutputStreamImpl {
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private byte[] data = new byte[INITIAL_CAPACITY];
+    private int length;
+
+    /**
+     * Backing array; only the first {@link #getLength()} bytes are valid.
+     */
+    public byte[] getData() {
+
+        return data;
+    }
+
+    public int getLength() {
+
+        return length;
+    }
+
+    @Override
+    public long length() {
+
+        return length;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(streamPos + 1);
+        data[(int) streamPos++] = (byte) b;
+        length = Math.max(length, (int) streamPos);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(streamPos + len);
+        System.arraycopy(b, off, data, (int) streamPos, len);
+        streamPos += len;
+        length = Math.max(length, (int) streamPos);
+    }
+
+    @Override
+    public int read() {
+        bitOffset = 0;
+        if (streamPos >= length) {
+
+            return -1;
+        }
+
+        return data[(int) streamPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        bitOffset = 0;
+        if (streamPos >= length) {
+
+            return -1;
+        }
+        final int n = Math.min(len, length - (int) streamPos);
+        System.arraycopy(data, (int) streamPos, b, off, n);
+        streamPos += n;
+
+        return n;
+    }
+
+    /**
+     * Empties the buffer for the next frame and keeps its capacity.
+     */
+    void clear() {
+        length = 0;
+        streamPos = 0;
+        flushedPos = 0;
+        bitOffset = 0;
+    }
+
+    private void ensureCapacity(long capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, (int) Math.max(capacity, 2L * data.length));
+        }
+    }
+}
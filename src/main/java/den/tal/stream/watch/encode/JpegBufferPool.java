@@ -0,0 +1,30 @@
+package den.tal.stream.watch.encode;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of {@link JpegBuffer}s shared by the encode workers and the uploader.
+ */
+public class JpegBufferPool {
+
+    private final BlockingQueue<JpegBuffer> free;
+
+    public JpegBufferPool(int size) {
+        free = new ArrayBlockingQueue<>(Math.max(1, size));
+    }
+
+    public JpegBuffer acquire() {
+        final JpegBuffer buffer = free.poll();
+
+        return null == buffer ? new JpegBuffer() : buffer;
+    }
+
+    /**
+     * Gives the buffer back once nobody reads it anymore. Extra buffers are dropped when the pool is full.
+     */
+    public void release(JpegBuffer buffer) {
+        buffer.clear();
+        free.offer(buffer);
+    }
+}
@@ -0,0 +1,97 @@
+package den.tal.stream.watch.encode;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * JPEG encoder of one encode worker. The image writer, its parameters and the scaled frame are created once
+ * and reused; output goes to pooled buffers. Not thread-safe.
+ */
+@Slf4j
+public class JpegEncoder {
+
+    private final EncodeSettings settings;
+    private final JpegBufferPool pool;
+    private final ImageWriter writer;
+    private final ImageWriteParam param;
+    private BufferedImage scaled;
+
+    public JpegEncoder(EncodeSettings settings, JpegBufferPool pool) {
+        this.settings = settings;
+        this.pool = pool;
+        final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+
+            throw new IllegalStateException("No JPEG image writer available!");
+        }
+        writer = writers.next();
+        log.debug("Use JPEG writer {}", writer.getClass().getName());
+        param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(settings.getQuality());
+    }
+
+    /**
+     * @return buffer holding the JPEG; give it back to the pool after the upload
+     */
+    public JpegBuffer encode(BufferedImage image) throws IOException {
+        final JpegBuffer buffer = pool.acquire();
+        try {
+            writer.setOutput(buffer);
+            writer.write(null, new IIOImage(resize(crop(image)), null, null), param);
+            buffer.flush();
+
+            return buffer;
+
+        } catch (IOException | RuntimeException ex) {
+            pool.release(buffer);
+
+            throw ex;
+
+        } finally {
+            writer.setOutput(null);
+        }
+    }
+
+    private BufferedImage crop(BufferedImage image) {
+        if (settings.getCropWidth() <= 0 || settings.getCropHeight() <= 0) {
+
+            return image;
+        }
+        final int x = Math.min(settings.getCropX(), image.getWidth() - 1);
+        final int y = Math.min(settings.getCropY(), image.getHeight() - 1);
+
+        return image.getSubimage(x, y, Math.min(settings.getCropWidth(), image.getWidth() - x),
+                Math.min(settings.getCropHeight(), image.getHeight() - y));
+    }
+
+    private BufferedImage resize(BufferedImage image) {
+        if (settings.getMaxWidth() <= 0 || image.getWidth() <= settings.getMaxWidth()) {
+
+            return image;
+        }
+        final int width = settings.getMaxWidth();
+        final int height = Math.max(1, image.getHeight() * width / image.getWidth());
+        if (null == scaled || scaled.getWidth() != width || scaled.getHeight() != height) {
+            scaled = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        }
+        final Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return scaled;
+    }
+}
@@ -0,0 +1,12 @@
+package den.tal.stream.watch.exceptions;
+
+public class CheckpointException extends WatchException {
+
+    public CheckpointException(String msg) {
+        super(msg);
+    }
+
+    public CheckpointException(Throwable ex) {
+        super(ex);
+    }
+}
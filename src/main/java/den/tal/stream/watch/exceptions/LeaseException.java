@@ -0,0 +1,12 @@
+package den.tal.stream.watch.exceptions;
+
+public class LeaseException extends WatchException {
+
+    public LeaseException(String msg) {
+        super(msg);
+    }
+
+    public LeaseException(Throwable ex) {
+        super(ex);
+    }
+}
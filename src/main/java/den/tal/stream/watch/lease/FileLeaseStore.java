@@ -0,0 +1,129 @@
+package den.tal.stream.watch.lease;
+
+import den.tal.stream.watch.checkpoint.Checkpoint;
+import den.tal.stream.watch.exceptions.LeaseException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One properties file per stream in a directory shared by the instances, for local runs and tests. A write holds
+ * an exclusive lock on the stream's lock file, compares versions and replaces the file atomically, so readers
+ * never see a torn lease.
+ */
+@Slf4j
+public class FileLeaseStore implements LeaseStore {
+
+    private static final String OWNER = "owner";
+    private static final String EXPIRES_AT = "expires_at";
+    private static final String VERSION = "version";
+    private static final String PENDING_OWNER = "pending_owner";
+    private static final String FRAGMENT_NUMBER = "fragment_number";
+    private static final String CONTINUATION_TOKEN = "continuation_token";
+
+    /**
+     * File locks are held by the whole JVM, so instances in one JVM also take a monitor per lock file.
+     */
+    private static final Map<Path, Object> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path directory;
+
+    public FileLeaseStore(Path directory) throws LeaseException {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ioex) {
+
+            throw new LeaseException(ioex);
+        }
+        log.info("Leases are stored in {}", directory.toAbsolutePath());
+    }
+
+    @Override
+    public Lease read(String streamName) throws LeaseException {
+        final Path file = fileOf(streamName, ".lease");
+        if (!Files.exists(file)) {
+
+            return Lease.free(streamName);
+        }
+        final var properties = new Properties();
+        try (InputStream is = Files.newInputStream(file)) {
+            properties.load(is);
+        } catch (IOException ioex) {
+
+            throw new LeaseException(ioex);
+        }
+        final String fragmentNumber = properties.getProperty(FRAGMENT_NUMBER);
+
+        return new Lease(streamName, properties.getProperty(OWNER),
+                Long.parseLong(properties.getProperty(EXPIRES_AT, "0")),
+                Long.parseLong(properties.getProperty(VERSION, "0")),
+                properties.getProperty(PENDING_OWNER),
+                null == fragmentNumber ? null
+                        : new Checkpoint(fragmentNumber, properties.getProperty(CONTINUATION_TOKEN)));
+    }
+
+    @Override
+    public boolean write(Lease lease) throws LeaseException {
+        final Path lockFile = fileOf(lease.getStreamName(), ".lock").toAbsolutePath().normalize();
+        synchronized (LOCAL_LOCKS.computeIfAbsent(lockFile, path -> new Object())) {
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+
+                if (read(lease.getStreamName()).getVersion() != lease.getVersion() - 1) {
+
+                    return false;
+                }
+                store(lease);
+
+                return true;
+
+            } catch (IOException ioex) {
+
+                throw new LeaseException(ioex);
+            }
+        }
+    }
+
+    private void store(Lease lease) throws IOException {
+        final var properties = new Properties();
+        properties.setProperty(VERSION, Long.toString(lease.getVersion()));
+        properties.setProperty(EXPIRES_AT, Long.toString(lease.getExpiresAtMillis()));
+        if (null != lease.getOwner()) {
+            properties.setProperty(OWNER, lease.getOwner());
+        }
+        if (null != lease.getPendingOwner()) {
+            properties.setProperty(PENDING_OWNER, lease.getPendingOwner());
+        }
+        final Checkpoint checkpoint = lease.getCheckpoint();
+        if (null != checkpoint) {
+            properties.setProperty(FRAGMENT_NUMBER, checkpoint.getFragmentNumber());
+            if (null != checkpoint.getContinuationToken()) {
+                properties.setProperty(CONTINUATION_TOKEN, checkpoint.getContinuationToken());
+            }
+        }
+        final Path file = fileOf(lease.getStreamName(), ".lease");
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tmp)) {
+            properties.store(os, lease.getStreamName());
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path fileOf(String streamName, String suffix) {
+
+        return directory.resolve(streamName.replaceAll("[^A-Za-z0-9._-]", "_") + suffix);
+    }
+}
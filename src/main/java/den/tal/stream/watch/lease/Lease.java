@@ -0,0 +1,60 @@
+package den.tal.stream.watch.lease;
+
+import den.tal.stream.watch.checkpoint.Checkpoint;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Right of one consumer instance to read a stream until the lease expires.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class Lease {
+
+    private final String streamName;
+
+    /**
+     * Null when released.
+     */
+    private final String owner;
+
+    /**
+     * Wall clock millis; anyone may take the lease afterwards.
+     */
+    private final long expiresAtMillis;
+
+    /**
+     * Incremented by every write, 0 for a lease never written.
+     */
+    private final long version;
+
+    /**
+     * Instance that asked the owner to hand the lease over, null if none.
+     */
+    private final String pendingOwner;
+
+    /**
+     * Last committed position of the stream, handed over to the next owner. Null if unknown.
+     */
+    private final Checkpoint checkpoint;
+
+    public static Lease free(String streamName) {
+
+        return new Lease(streamName, null, 0, 0, null, null);
+    }
+
+    public boolean isFree(long nowMillis) {
+
+        return null == owner || expiresAtMillis <= nowMillis;
+    }
+
+    /**
+     * The next version of the lease, to be written with {@link LeaseStore#write}.
+     */
+    public Lease next(String owner, long expiresAtMillis, String pendingOwner, Checkpoint checkpoint) {
+
+        return new Lease(streamName, owner, expiresAtMillis, version + 1, pendingOwner, checkpoint);
+    }
+}
@@ -0,0 +1,285 @@
+package den.tal.stream.watch.lease;
+
+import den.tal.stream.watch.checkpoint.Checkpoint;
+import den.tal.stream.watch.exceptions.LeaseException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Splits the streams between the consumer instances sharing a {@link LeaseStore}. Every heartbeat the coordinator
+ * renews its leases, takes free and expired ones up to its fair share, and asks the most loaded instance to hand
+ * one lease over when it holds at least two more than this one. The owner hands over on its next heartbeat:
+ * it stops the reader and writes the committed checkpoint into the lease, and the new owner resumes from there.
+ * Leases of a dead instance expire and are taken the same way. Wall clocks of the instances must roughly agree.
+ */
+@Slf4j
+public class LeaseCoordinator {
+
+    /**
+     * Called on the coordinator thread.
+     */
+    public interface Listener {
+
+        /**
+         * Starts reading the stream.
+         *
+         * @param checkpoint handed over by the previous owner, null if unknown
+         */
+        void acquired(String streamName, Checkpoint checkpoint);
+
+        /**
+         * Stops reading the stream and returns once its reader has stopped.
+         */
+        void released(String streamName);
+
+        /**
+         * @return the last committed position of the stream, null if unknown
+         */
+        Checkpoint checkpoint(String streamName);
+    }
+
+    private final LeaseStore store;
+    private final String owner;
+    private final List<String> streams;
+    private final long leaseMillis;
+    private final Listener listener;
+    private final LongSupplier clock;
+
+    /**
+     * Streams read by this instance and the expiry of their leases.
+     */
+    private final Map<String, Long> held = new LinkedHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    public LeaseCoordinator(LeaseStore store, String owner, List<String> streams, long leaseMillis,
+                            Listener listener) {
+
+        this(store, owner, streams, leaseMillis, listener, System::currentTimeMillis);
+    }
+
+    LeaseCoordinator(LeaseStore store, String owner, List<String> streams, long leaseMillis, Listener listener,
+                     LongSupplier clock) {
+
+        this.store = store;
+        this.owner = owner;
+        this.streams = List.copyOf(streams);
+        this.leaseMillis = leaseMillis;
+        this.listener = listener;
+        this.clock = clock;
+    }
+
+    public synchronized void start(long heartbeatMillis) {
+        log.info("Instance {} shares {} stream(s), lease {} ms, heartbeat {} ms.", owner, streams.size(),
+                leaseMillis, heartbeatMillis);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "lease-coordinator");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits for a running heartbeat and stops the next ones, so no reader is started or stopped from then on.
+     *
+     * @return false if a heartbeat was still running at the timeout
+     */
+    public boolean stopHeartbeats(long timeout, TimeUnit unit) throws InterruptedException {
+        if (null == scheduler) {
+
+            return true;
+        }
+        scheduler.shutdown();
+
+        return scheduler.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Stops the heartbeats and releases every lease with its committed checkpoint, so other instances take
+     * the streams at once. Readers must be stopped before.
+     */
+    public void stop(long timeout, TimeUnit unit) throws InterruptedException {
+        stopHeartbeats(timeout, unit);
+        synchronized (this) {
+            for (String streamName : new ArrayList<>(held.keySet())) {
+                listener.released(streamName);
+                try {
+                    final Lease lease = store.read(streamName);
+                    if (owner.equals(lease.getOwner())
+                            && store.write(lease.next(null, 0, null, checkpointOf(lease)))) {
+
+                        log.info("Lease of {} released.", streamName);
+                    }
+                } catch (LeaseException lex) {
+                    log.error("Could not release the lease of {}. It expires on its own.", streamName, lex);
+                }
+            }
+            held.clear();
+        }
+    }
+
+    public synchronized Set<String> getHeld() {
+
+        return new TreeSet<>(held.keySet());
+    }
+
+    private void heartbeat() {
+        try {
+            tick();
+        } catch (LeaseException lex) {
+            log.error("Lease store unavailable.", lex);
+            dropExpired();
+        } catch (RuntimeException rex) {
+            log.error("Lease heartbeat failed.", rex);
+        }
+    }
+
+    /**
+     * One heartbeat: renew or hand over the own leases, then take a fair share.
+     */
+    synchronized void tick() throws LeaseException {
+        final long now = clock.getAsLong();
+        final Map<String, Lease> leases = new LinkedHashMap<>();
+        for (String streamName : streams) {
+            leases.put(streamName, store.read(streamName));
+        }
+
+        for (String streamName : new ArrayList<>(held.keySet())) {
+            final Lease lease = leases.get(streamName);
+            if (!owner.equals(lease.getOwner())) {
+                lost(streamName, lease.getOwner());
+            } else if (null != lease.getPendingOwner()) {
+                handOver(lease, now);
+            } else {
+                final Lease renewed = lease.next(owner, now + leaseMillis, null, checkpointOf(lease));
+                if (store.write(renewed)) {
+                    held.put(streamName, renewed.getExpiresAtMillis());
+                    leases.put(streamName, renewed);
+                } else {
+                    lost(streamName, store.read(streamName).getOwner());
+                }
+            }
+        }
+
+        final Map<String, Integer> load = new HashMap<>();
+        load.put(owner, held.size());
+        for (Lease lease : leases.values()) {
+            if (!lease.isFree(now) && !owner.equals(lease.getOwner())) {
+                load.merge(lease.getOwner(), 1, Integer::sum);
+            }
+        }
+        final int fairShare = (streams.size() + load.size() - 1) / load.size();
+
+        for (Lease lease : leases.values()) {
+            final String streamName = lease.getStreamName();
+            if (held.containsKey(streamName)) {
+                continue;
+            }
+            // Handed over to this instance, or left by its previous run.
+            final boolean handedOver = owner.equals(lease.getOwner()) && !lease.isFree(now);
+            if (handedOver || (lease.isFree(now) && held.size() < fairShare)) {
+                acquire(lease, now);
+            }
+        }
+
+        if (held.size() < fairShare) {
+            requestHandover(leases.values(), load, now);
+        }
+    }
+
+    private void acquire(Lease lease, long now) throws LeaseException {
+        final Lease acquired = lease.next(owner, now + leaseMillis, null, lease.getCheckpoint());
+        if (!store.write(acquired)) {
+
+            return;
+        }
+        held.put(lease.getStreamName(), acquired.getExpiresAtMillis());
+        log.info("Lease of {} acquired from {}, resume from {}.", lease.getStreamName(),
+                null == lease.getOwner() ? "nobody" : lease.getOwner(), lease.getCheckpoint());
+        listener.acquired(lease.getStreamName(), lease.getCheckpoint());
+    }
+
+    private void handOver(Lease lease, long now) throws LeaseException {
+        final String streamName = lease.getStreamName();
+        held.remove(streamName);
+        listener.released(streamName);
+        final Checkpoint checkpoint = checkpointOf(lease);
+        if (store.write(lease.next(lease.getPendingOwner(), now + leaseMillis, null, checkpoint))) {
+            log.info("Lease of {} handed over to {} at {}.", streamName, lease.getPendingOwner(), checkpoint);
+        } else {
+            log.warn("Lease of {} changed during the handover to {}.", streamName, lease.getPendingOwner());
+        }
+    }
+
+    /**
+     * Asks the most loaded instance for one lease, once it holds at least two more than this one.
+     */
+    private void requestHandover(Iterable<Lease> leases, Map<String, Integer> load, long now)
+            throws LeaseException {
+
+        String busiest = null;
+        for (Map.Entry<String, Integer> entry : load.entrySet()) {
+            if (!owner.equals(entry.getKey()) && (null == busiest || entry.getValue() > load.get(busiest))) {
+                busiest = entry.getKey();
+            }
+        }
+        if (null == busiest || load.get(busiest) - held.size() < 2) {
+
+            return;
+        }
+        for (Lease lease : leases) {
+            if (busiest.equals(lease.getOwner()) && !lease.isFree(now)) {
+                if (owner.equals(lease.getPendingOwner())) {
+
+                    return;
+                }
+                if (null == lease.getPendingOwner()) {
+                    if (store.write(lease.next(lease.getOwner(), lease.getExpiresAtMillis(), owner,
+                            lease.getCheckpoint()))) {
+
+                        log.info("Asked {} to hand the lease of {} over.", busiest, lease.getStreamName());
+                    }
+
+                    return;
+                }
+            }
+        }
+    }
+
+    private void lost(String streamName, String newOwner) {
+        held.remove(streamName);
+        log.warn("Lease of {} was taken by {}. Stop reading it.", streamName, newOwner);
+        listener.released(streamName);
+    }
+
+    /**
+     * Without the store, leases can't be renewed; readers stop once theirs have expired.
+     */
+    private synchronized void dropExpired() {
+        final long now = clock.getAsLong();
+        for (Map.Entry<String, Long> entry : new ArrayList<>(held.entrySet())) {
+            if (entry.getValue() <= now) {
+                lost(entry.getKey(), "nobody (expired)");
+            }
+        }
+    }
+
+    private Checkpoint checkpointOf(Lease lease) {
+        final Checkpoint committed = listener.checkpoint(lease.getStreamName());
+
+        return null == committed ? lease.getCheckpoint() : committed;
+    }
+}
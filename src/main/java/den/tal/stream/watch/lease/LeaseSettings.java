@@ -0,0 +1,32 @@
+package den.tal.stream.watch.lease;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+
+@Getter
+@Component
+public class LeaseSettings {
+
+    /**
+     * Unique name of this instance; process id and host name when empty.
+     */
+    @Value("${film.watcher.lease.owner:}")
+    private String owner;
+
+    /**
+     * Time after the last heartbeat at which other instances may take a lease.
+     */
+    @Value("${film.watcher.lease.duration_ms:30000}")
+    private long durationMillis;
+
+    @Value("${film.watcher.lease.heartbeat_ms:10000}")
+    private long heartbeatMillis;
+
+    public String getOwner() {
+
+        return owner.isBlank() ? ManagementFactory.getRuntimeMXBean().getName() : owner;
+    }
+}
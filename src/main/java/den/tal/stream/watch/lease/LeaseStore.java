@@ -0,0 +1,22 @@
+package den.tal.stream.watch.lease;
+
+import den.tal.stream.watch.exceptions.LeaseException;
+
+/**
+ * Shared by all consumer instances. Writes are conditional on the version, so two instances never both win
+ * the same lease.
+ */
+public interface LeaseStore {
+
+    /**
+     * @return the stored lease, or a free one of version 0
+     */
+    Lease read(String streamName) throws LeaseException;
+
+    /**
+     * Stores the lease if the stored one is still the version before it.
+     *
+     * @return false if another instance wrote the lease first
+     */
+    boolean write(Lease lease) throws LeaseException;
+}
@@ -0,0 +1,189 @@
+package den.tal.stream.watch.metrics;
+
+import den.tal.stream.watch.dedup.FrameDeduplicator;
+import den.tal.stream.watch.pipeline.GopDecoder;
+import den.tal.stream.watch.pipeline.PipelineStage;
+import den.tal.stream.watch.spool.FrameSpool;
+import den.tal.stream.watch.upload.S3Uploader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the frame path under {@code film.watcher.*}, exported by Actuator and JMX. Meters are registered up front;
+ * the hot path only increments counters and records timers, and queue depths are read when the registry is polled.
+ * <ul>
+ *     <li>{@code frames.read}, {@code frames.sampled} per stream</li>
+ *     <li>{@code frames.decoded}, {@code frames.encoded}, {@code frames.uploaded}</li>
+ *     <li>{@code frames.dropped} by stage and reason: backpressure, error, duplicate, window or full spool</li>
+ *     <li>{@code frames.spooled}, {@code frames.replayed} and {@code spool.bytes} of the disk spool</li>
+ *     <li>{@code stage.latency} of decode, encode and every S3 PUT attempt</li>
+ *     <li>{@code stage.queue}, {@code gop.in_flight}, {@code upload.in_flight}</li>
+ *     <li>{@code stream.lag} in milliseconds behind now</li>
+ *     <li>{@code startup.first_upload}, milliseconds from the start of the JVM to the first uploaded frame</li>
+ * </ul>
+ */
+@Slf4j
+public class FrameMetrics {
+
+    private static final String PREFIX = "film.watcher.";
+    private static final String DROPPED = PREFIX + "frames.dropped";
+    private static final String LATENCY = PREFIX + "stage.latency";
+
+    private final MeterRegistry registry;
+    private final Map<String, StreamMetrics> streams = new ConcurrentHashMap<>();
+
+    private final Counter decoded;
+    private final Counter encoded;
+    private final Counter uploaded;
+    private final Counter uploadFailed;
+    private final Counter droppedByWindow;
+    private final Counter spooled;
+    private final Counter replayed;
+    private final Counter spoolFull;
+    private final Timer decodeLatency;
+    private final Timer encodeLatency;
+    private final Timer putLatency;
+
+    /**
+     * NaN until a frame is uploaded.
+     */
+    private volatile double firstUploadMillis = Double.NaN;
+
+    public FrameMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        decoded = Counter.builder(PREFIX + "frames.decoded").register(registry);
+        encoded = Counter.builder(PREFIX + "frames.encoded").register(registry);
+        uploaded = Counter.builder(PREFIX + "frames.uploaded").register(registry);
+        uploadFailed = Counter.builder(DROPPED).tag("stage", "s3").tag("reason", "error").register(registry);
+        droppedByWindow = Counter.builder(DROPPED).tag("stage", "decode").tag("reason", "window").register(registry);
+        spooled = Counter.builder(PREFIX + "frames.spooled").register(registry);
+        replayed = Counter.builder(PREFIX + "frames.replayed").register(registry);
+        spoolFull = Counter.builder(DROPPED).tag("stage", "spool").tag("reason", "full").register(registry);
+        decodeLatency = latency("decode");
+        encodeLatency = latency("encode");
+        putLatency = latency("s3");
+        Gauge.builder(PREFIX + "startup.first_upload", this, metrics -> metrics.firstUploadMillis)
+                .baseUnit("milliseconds").register(registry);
+    }
+
+    /**
+     * Meters of one stream, shared by every reader of the same name.
+     */
+    public StreamMetrics forStream(String streamName) {
+
+        return streams.computeIfAbsent(streamName, name -> new StreamMetrics(registry, PREFIX, name));
+    }
+
+    /**
+     * Queue depth, backpressure drops and worker failures of a stage.
+     */
+    public void bindStage(PipelineStage<?> stage) {
+        Gauge.builder(PREFIX + "stage.queue", stage, PipelineStage::getQueueDepth)
+                .tag("stage", stage.getName()).register(registry);
+
+        FunctionCounter.builder(DROPPED, stage, PipelineStage::getDropped)
+                .tag("stage", stage.getName()).tag("reason", "backpressure").register(registry);
+
+        FunctionCounter.builder(DROPPED, stage, PipelineStage::getFailed)
+                .tag("stage", stage.getName()).tag("reason", "error").register(registry);
+    }
+
+    public void bindGopDecoder(GopDecoder decoder) {
+        Gauge.builder(PREFIX + "gop.in_flight", decoder, GopDecoder::getInFlight).register(registry);
+        FunctionCounter.builder(DROPPED, decoder, GopDecoder::getFailed)
+                .tag("stage", "gop").tag("reason", "error").register(registry);
+    }
+
+    public void bindDeduplicator(FrameDeduplicator deduplicator) {
+        FunctionCounter.builder(DROPPED, deduplicator, FrameDeduplicator::getDropped)
+                .tag("stage", "decode").tag("reason", "duplicate").register(registry);
+    }
+
+    public void bindUploader(S3Uploader uploader) {
+        Gauge.builder(PREFIX + "upload.in_flight", uploader, S3Uploader::getInFlight).register(registry);
+    }
+
+    public void bindSpool(FrameSpool spool) {
+        Gauge.builder(PREFIX + "spool.bytes", spool, FrameSpool::getBytes).baseUnit("bytes").register(registry);
+    }
+
+    public void decoded(long startNanos) {
+        decodeLatency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        decoded.increment();
+    }
+
+    public void encoded(long startNanos) {
+        encodeLatency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        encoded.increment();
+    }
+
+    /**
+     * One PUT attempt, successful or not.
+     */
+    public void put(long startNanos) {
+        putLatency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void uploaded() {
+        uploaded.increment();
+        if (Double.isNaN(firstUploadMillis)) {
+            firstUploaded();
+        }
+    }
+
+    /**
+     * Frames lost because S3 failed to store their object and the spool could not take it either.
+     */
+    public void uploadFailed(int frames) {
+        uploadFailed.increment(frames);
+    }
+
+    /**
+     * A candidate lost to a sharper frame of its window.
+     */
+    public void droppedByWindow() {
+        droppedByWindow.increment();
+    }
+
+    public void spooled() {
+        spooled.increment();
+    }
+
+    /**
+     * A spooled frame reached S3.
+     */
+    public void replayed() {
+        replayed.increment();
+    }
+
+    /**
+     * A frame that could not be uploaded did not fit the disk budget of the spool.
+     */
+    public void spoolFull() {
+        spoolFull.increment();
+    }
+
+    private synchronized void firstUploaded() {
+        if (Double.isNaN(firstUploadMillis)) {
+            firstUploadMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+            log.info("First frame uploaded {} ms after the start of the JVM.", (long) firstUploadMillis);
+        }
+    }
+
+    private Timer latency(String stage) {
+
+        return Timer.builder(LATENCY).tag("stage", stage)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,51 @@
+package den.tal.stream.watch.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meters of one stream: frames read and sampled on its reader thread, and how far it is behind the live edge.
+ */
+public class StreamMetrics {
+
+    private final Counter read;
+    private final Counter sampled;
+
+    /**
+     * Negative until GetMedia reports it; files never do.
+     */
+    private final AtomicLong lagMillis = new AtomicLong(-1);
+
+    StreamMetrics(MeterRegistry registry, String prefix, String streamName) {
+        read = Counter.builder(prefix + "frames.read").tag("stream", streamName).register(registry);
+        sampled = Counter.builder(prefix + "frames.sampled").tag("stream", streamName).register(registry);
+        Gauge.builder(prefix + "stream.lag", lagMillis, lag -> lag.get() < 0 ? Double.NaN : lag.get())
+                .tag("stream", streamName).baseUnit("milliseconds").register(registry);
+    }
+
+    public void frameRead() {
+        read.increment();
+    }
+
+    public void frameSampled() {
+        sampled.increment();
+    }
+
+    /**
+     * Last reported lag, negative if unknown.
+     */
+    public long getLagMillis() {
+
+        return lagMillis.get();
+    }
+
+    /**
+     * @param millisBehindNow {@code AWS_KINESISVIDEO_MILLIS_BEHIND_NOW} of the last fragment
+     */
+    public void lag(long millisBehindNow) {
+        lagMillis.set(millisBehindNow);
+    }
+}
@@ -0,0 +1,48 @@
+package den.tal.stream.watch.pipeline;
+
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * What a stage does with a new item when its queue is full.
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Wait until the queue has free space.
+     */
+    BLOCK,
+
+    /**
+     * Evict the oldest queued item to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Reject the new item and keep the queue as is.
+     */
+    DROP_NEWEST;
+
+    /**
+     * Parses property values like {@code block}, {@code drop-oldest} or {@code DROP_NEWEST}.
+     */
+    public static BackpressurePolicy fromProperty(String value) throws FilmWatcherInitException {
+        try {
+
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+
+        } catch (IllegalArgumentException ex) {
+
+            throw new FilmWatcherInitException(String.format(
+                    "Unknown film.watcher.pipeline.backpressure '%s'. Use one of: %s", value,
+                    Arrays.stream(values()).map(BackpressurePolicy::toProperty).collect(Collectors.joining(", "))));
+        }
+    }
+
+    public String toProperty() {
+
+        return name().toLowerCase().replace('_', '-');
+    }
+}
@@ -0,0 +1,19 @@
+package den.tal.stream.watch.pipeline;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.awt.image.BufferedImage;
+
+@Getter
+@AllArgsConstructor
+public class DecodedFrame {
+
+    private final FrameTask task;
+    private final BufferedImage image;
+
+    /**
+     * Perceptual hash of the image, null when deduplication is off.
+     */
+    private final Long hash;
+}
@@ -0,0 +1,21 @@
+package den.tal.stream.watch.pipeline;
+
+import den.tal.stream.watch.encode.JpegBuffer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class EncodedFrame {
+
+    private final FrameTask task;
+    /**
+     * Pooled; goes back to the pool once the upload is over.
+     */
+    private final JpegBuffer jpeg;
+
+    /**
+     * Perceptual hash of the image, null when deduplication is off.
+     */
+    private final Long hash;
+}
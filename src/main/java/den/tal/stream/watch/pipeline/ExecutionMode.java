@@ -0,0 +1,89 @@
+package den.tal.stream.watch.pipeline;
+
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Threads of the blocking I/O: GetMedia readers and S3 PUTs. Decode and encode are CPU bound and always run on
+ * the bounded platform pools of their stages.
+ */
+public enum ExecutionMode {
+
+    /**
+     * A platform thread per stream reader and per upload in flight.
+     */
+    PLATFORM,
+
+    /**
+     * A virtual thread per stream reader and per upload, Java 21 or later. The thread count no longer grows
+     * with streams and {@code max_in_flight}.
+     */
+    VIRTUAL;
+
+    public static ExecutionMode fromProperty(String value) throws FilmWatcherInitException {
+        try {
+
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+
+        } catch (IllegalArgumentException ex) {
+
+            throw new FilmWatcherInitException(String.format(
+                    "Unknown film.watcher.pipeline.execution '%s'. Use one of: %s", value,
+                    Arrays.stream(values()).map(ExecutionMode::toProperty).collect(Collectors.joining(", "))));
+        }
+    }
+
+    public String toProperty() {
+
+        return name().toLowerCase().replace('_', '-');
+    }
+
+    /**
+     * @param platformThreads size of the pool in the platform mode
+     * @param daemon          whether platform threads may be abandoned on exit; virtual threads always are
+     * @return a fixed pool of threads named {@code prefix1, prefix2...}, or a new virtual thread per task
+     */
+    public ExecutorService newExecutor(String prefix, int platformThreads, boolean daemon)
+            throws FilmWatcherInitException {
+
+        if (VIRTUAL == this) {
+
+            return newVirtualThreadPerTaskExecutor(prefix);
+        }
+        final var counter = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(platformThreads, runnable -> {
+            final var thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(daemon);
+
+            return thread;
+        });
+    }
+
+    /**
+     * Looked up reflectively, so the same build runs on Java 11 in the platform mode.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor(String prefix) throws FilmWatcherInitException {
+        try {
+            final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            final var factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+
+        } catch (ReflectiveOperationException ex) {
+
+            throw new FilmWatcherInitException(String.format(
+                    "film.watcher.pipeline.execution 'virtual' needs Java 21 or later, this is Java %s.",
+                    Runtime.version().feature()));
+        }
+    }
+}
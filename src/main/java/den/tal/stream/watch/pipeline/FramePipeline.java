@@ -0,0 +1,581 @@
+package den.tal.stream.watch.pipeline;
+
+import den.tal.stream.watch.dedup.DedupSettings;
+import den.tal.stream.watch.dedup.FrameDeduplicator;
+import den.tal.stream.watch.dedup.PerceptualHash;
+import den.tal.stream.watch.encode.EncodeSettings;
+import den.tal.stream.watch.encode.JpegBufferPool;
+import den.tal.stream.watch.encode.JpegEncoder;
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import den.tal.stream.watch.metrics.FrameMetrics;
+import den.tal.stream.watch.preview.PreviewChannel;
+import den.tal.stream.watch.sampling.SharpestFrameWindow;
+import den.tal.stream.watch.spool.FrameSpool;
+import den.tal.stream.watch.upload.FramePacker;
+import den.tal.stream.watch.upload.S3Uploader;
+import den.tal.stream.watch.upload.UploadRequest;
+import den.tal.stream.watch.upload.UploadSettings;
+import lombok.extern.slf4j.Slf4j;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Decode, encode and upload stages behind the MKV readers. Reader threads only hand sampled frames over,
+ * so a slow decoder or S3 never stalls GetMedia reads. The stages are shared by all streams.
+ * Object keys are derived from the frame, {@code <root>/yyyy/MM/dd/HH/<stream>/<fragment>/<timecode>.jpg}
+ * partitioned by the producer time of the fragment in UTC, so a retried or re-read frame overwrites its object.
+ */
+@Slf4j
+public class FramePipeline {
+
+    public static final String FRAGMENT_INDEX_HEADER = "key\toffset\tlength\ttimecode_ms\tframe\tlocation\n";
+
+    private static final DateTimeFormatter PARTITION = DateTimeFormatter.ofPattern("yyyy/MM/dd/HH")
+            .withZone(ZoneOffset.UTC);
+
+    private final PipelineStage<FrameTask> decodeStage;
+    private final PipelineStage<DecodedFrame> encodeStage;
+    private final PipelineStage<EncodedFrame> uploadStage;
+    private final int drainTimeoutSeconds;
+
+    /**
+     * Null unless GOPs are decoded in parallel; the decode stage then only hands frames over to it.
+     */
+    private final GopDecoder gopDecoder;
+
+    /**
+     * Null when deduplication is off.
+     */
+    private final FrameDeduplicator deduplicator;
+
+    /**
+     * Null when the spool is off; frames S3 didn't take are then lost.
+     */
+    private final FrameSpool spool;
+
+    /**
+     * Null unless frames are packed; each frame is then put as an object of its own.
+     */
+    private final FramePacker<EncodedFrame> packer;
+
+    /**
+     * Null unless fragment indexes are written. Index PUTs are started from here, as fragments commit on threads
+     * that must not block on the uploader.
+     */
+    private final ExecutorService indexWriter;
+
+    /**
+     * Null unless the preview is served.
+     */
+    private volatile PreviewChannel preview;
+
+    /**
+     * Streams in the sharpest mode by lane, until their window is flushed.
+     */
+    private final Map<String, StreamContext> windowed = new ConcurrentHashMap<>();
+
+    private final JpegBufferPool bufferPool;
+    private final FrameMetrics metrics;
+    private final S3Uploader uploader;
+    private final String keyRoot;
+
+    public FramePipeline(PipelineSettings settings, DedupSettings dedupSettings, EncodeSettings encodeSettings,
+                         S3Uploader uploader, FrameMetrics metrics) throws FilmWatcherInitException {
+
+        this(settings, dedupSettings, encodeSettings, uploader, null, metrics);
+    }
+
+    /**
+     * @param spool takes the frames dropped by the upload stage, failed by S3, or put while S3 is failing
+     */
+    public FramePipeline(PipelineSettings settings, DedupSettings dedupSettings, EncodeSettings encodeSettings,
+                         S3Uploader uploader, FrameSpool spool, FrameMetrics metrics)
+            throws FilmWatcherInitException {
+
+        this(settings, dedupSettings, encodeSettings, new UploadSettings(), uploader, spool, metrics);
+    }
+
+    /**
+     * @param uploadSettings turn packing on; the uploader has its own settings
+     */
+    public FramePipeline(PipelineSettings settings, DedupSettings dedupSettings, EncodeSettings encodeSettings,
+                         UploadSettings uploadSettings, S3Uploader uploader, FrameSpool spool,
+                         FrameMetrics metrics) throws FilmWatcherInitException {
+
+        final var policy = settings.getBackpressurePolicy();
+        keyRoot = uploadSettings.getKeyRoot();
+        this.uploader = uploader;
+        drainTimeoutSeconds = settings.getDrainTimeoutSeconds();
+        this.spool = spool;
+        this.metrics = metrics;
+        deduplicator = dedupSettings.isEnabled() ? new FrameDeduplicator(dedupSettings) : null;
+        if (null != deduplicator) {
+            metrics.bindDeduplicator(deduplicator);
+        }
+        bufferPool = new JpegBufferPool(encodeSettings.getBufferPoolSize());
+        indexWriter = uploadSettings.isFragmentIndex() ? Executors.newSingleThreadExecutor(runnable -> {
+            final var thread = new Thread(runnable, "fragment-index");
+            thread.setDaemon(true);
+
+            return thread;
+        }) : null;
+        packer = uploadSettings.isPacking() ? new FramePacker<>(uploadSettings.getPackMaxBytes(),
+                uploadSettings.getPackMaxMillis(), pack -> uploadPack(uploader, pack)) : null;
+
+        uploadStage = new PipelineStage<>("upload", settings.getUploadQueue(), settings.getUploadThreads(), false,
+                policy, () -> encoded -> upload(uploader, encoded), this::spillOrDiscard);
+
+        encodeStage = new PipelineStage<>("encode", settings.getEncodeQueue(), settings.getEncodeThreads(), false,
+                policy, () -> {
+                    final var encoder = new JpegEncoder(encodeSettings, bufferPool);
+
+                    return decoded -> encode(encoder, decoded);
+                }, decoded -> done(decoded.getTask()));
+
+        gopDecoder = settings.isGopDecoding() ? new GopDecoder(settings.getGopThreads(), settings.getGopInFlight(),
+                this::filter, metrics::decoded, FramePipeline::done) : null;
+
+        if (null != gopDecoder) {
+            metrics.bindGopDecoder(gopDecoder);
+        }
+        decodeStage = new PipelineStage<>("decode", settings.getDecodeQueue(), settings.getDecodeThreads(), true,
+                policy, () -> null == gopDecoder ? this::decode : gopDecoder::add, FramePipeline::done);
+
+        for (PipelineStage<?> stage : new PipelineStage<?>[] {decodeStage, encodeStage, uploadStage}) {
+            metrics.bindStage(stage);
+        }
+    }
+
+    /**
+     * Called on the MKV reader thread.
+     *
+     * @return false if the frame was dropped by backpressure
+     */
+    public boolean submit(FrameTask task) throws InterruptedException {
+
+        return decodeStage.submit(laneOf(task), task);
+    }
+
+    /**
+     * Readers then hand over every frame, as the GOP decoder needs the frames sampled ones refer to.
+     */
+    public boolean isDecodingGops() {
+
+        return null != gopDecoder;
+    }
+
+    /**
+     * Writes the index of every fragment of the stream once it commits, if fragment indexes are on. The sharpest
+     * window of the stream is flushed by {@link #finish} or at shutdown.
+     *
+     * @return the stream
+     */
+    public StreamContext attach(StreamContext stream) {
+        if (null != indexWriter) {
+            stream.getFragments().setIndexListener(this::writeIndex);
+        }
+        if (null != stream.getSharpestWindow()) {
+            windowed.put(stream.getLaneName(), stream);
+        }
+
+        return stream;
+    }
+
+    /**
+     * Called on the reader thread once the stream attached last on the lane has no more frames, as at the end of
+     * a file. The candidate its sharpest window still holds is passed on after the frames already handed over.
+     */
+    public void finish(String laneName) {
+        final StreamContext stream = windowed.get(laneName);
+        if (null == stream) {
+
+            return;
+        }
+        try {
+            decodeStage.put(laneName, FrameTask.endOf(stream));
+        } catch (InterruptedException iex) {
+            // The window is flushed at shutdown instead.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Offers every encoded frame to the preview before its upload.
+     */
+    public void setPreview(PreviewChannel preview) {
+        this.preview = preview;
+    }
+
+    /**
+     * Fill of the fullest queue of the lane, from 0 to 1.
+     */
+    public double getOccupancy(String laneName) {
+
+        return Math.max(decodeStage.getOccupancy(laneName), Math.max(encodeStage.getOccupancy(laneName),
+                uploadStage.getOccupancy(laneName)));
+    }
+
+    /**
+     * Stops the stages one after another, so frames already in flight reach S3, within the drain timeout.
+     */
+    public void shutdown() {
+        shutdown(System.nanoTime() + TimeUnit.SECONDS.toNanos(drainTimeoutSeconds));
+    }
+
+    /**
+     * Stops the stages one after another; all of them share the deadline.
+     *
+     * @param deadlineNanos {@link System#nanoTime()} by which the stages must be drained
+     */
+    public void shutdown(long deadlineNanos) {
+        for (PipelineStage<?> stage : new PipelineStage<?>[] {decodeStage, encodeStage, uploadStage}) {
+            stage.shutdown();
+            try {
+                boolean drained = stage.awaitTermination(Math.max(0, deadlineNanos - System.nanoTime()),
+                        TimeUnit.NANOSECONDS);
+
+                if (!drained) {
+                    log.warn("Stage {} has not drained in time. {} item(s) left.", stage.getName(),
+                            stage.getQueueDepth());
+                }
+                if (decodeStage == stage && null != gopDecoder && !gopDecoder.shutdown(
+                        Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+
+                    log.warn("GOP decoder has not drained in time. {} GOP(s) left.", gopDecoder.getInFlight());
+                    drained = false;
+                }
+                // Windows are only flushed once no decoder touches them any more.
+                if (decodeStage == stage && drained) {
+                    flushWindows();
+                }
+            } catch (InterruptedException iex) {
+                log.warn("Interrupted while draining stage {}.", stage.getName());
+                Thread.currentThread().interrupt();
+
+                break;
+            }
+        }
+        if (null != packer) {
+            try {
+                packer.close();
+            } catch (InterruptedException iex) {
+                log.warn("Interrupted while flushing packs.");
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (null != indexWriter) {
+            try {
+                // Fragments commit as the last PUTs of their frames finish.
+                if (!uploader.awaitIdle(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    log.warn("Uploads have not finished in time. Indexes of their fragments are not written.");
+                }
+                indexWriter.shutdown();
+                if (!indexWriter.awaitTermination(Math.max(0, deadlineNanos - System.nanoTime()),
+                        TimeUnit.NANOSECONDS)) {
+
+                    log.warn("Fragment indexes have not been handed to the uploader in time.");
+                }
+            } catch (InterruptedException iex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (null != deduplicator) {
+            deduplicator.report();
+        }
+    }
+
+    private static String laneOf(FrameTask task) {
+
+        return task.getStream().getLaneName();
+    }
+
+    /**
+     * The frame left the pipeline, uploaded or not.
+     */
+    private static void done(FrameTask task) {
+        if (task.isSampled()) {
+            task.getFragment().done();
+        }
+    }
+
+    private void decode(FrameTask task) throws InterruptedException {
+        if (task.isEndOfStream()) {
+            filter(new DecodedFrame(task, null, null));
+
+            return;
+        }
+        final long start = System.nanoTime();
+        final BufferedImage image = task.getStream().getDecoder().decodeH264Frame(task.getFrame(),
+                task.getTrackMetadata());
+
+        metrics.decoded(start);
+        filter(new DecodedFrame(task, image, null));
+    }
+
+    /**
+     * Lets the sharpest-frame window and the deduplicator filter a decoded frame before encoding.
+     * Called for the frames of a stream one at a time, in order; an end-of-stream marker flushes the window.
+     */
+    private void filter(DecodedFrame decoded) throws InterruptedException {
+        final FrameTask task = decoded.getTask();
+        final SharpestFrameWindow<DecodedFrame> window = task.getStream().getSharpestWindow();
+        if (task.isEndOfStream()) {
+            windowed.remove(laneOf(task), task.getStream());
+            if (null != window) {
+                deduplicate(window.flush());
+            }
+
+            return;
+        }
+        if (null != window) {
+            decoded = window.offer(decoded, task.getFrameNumber(), task.getTimecodeMillis(),
+                    window.getScorer().score(decoded.getImage()), loser -> {
+                        metrics.droppedByWindow();
+                        done(loser.getTask());
+                    });
+        }
+        deduplicate(decoded);
+    }
+
+    /**
+     * Passes the frame on to the encode stage unless it looks like the last upload of its stream.
+     *
+     * @param decoded null for nothing
+     */
+    private void deduplicate(DecodedFrame decoded) throws InterruptedException {
+        if (null == decoded) {
+
+            return;
+        }
+        final FrameTask task = decoded.getTask();
+        if (null != deduplicator) {
+            final long hash = PerceptualHash.dHash(decoded.getImage());
+            if (deduplicator.isDuplicate(task.getStream(), hash)) {
+                done(decoded.getTask());
+
+                return;
+            }
+            decoded = new DecodedFrame(decoded.getTask(), decoded.getImage(), hash);
+        }
+        encodeStage.submit(laneOf(task), decoded);
+    }
+
+    /**
+     * Passes on the candidates the sharpest windows still hold. Call once the decode stage has drained.
+     */
+    private void flushWindows() throws InterruptedException {
+        for (StreamContext stream : windowed.values()) {
+            deduplicate(stream.getSharpestWindow().flush());
+        }
+        windowed.clear();
+    }
+
+    private void encode(JpegEncoder encoder, DecodedFrame decoded) throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        final EncodedFrame encoded = new EncodedFrame(decoded.getTask(), encoder.encode(decoded.getImage()),
+                decoded.getHash());
+
+        metrics.encoded(start);
+        final PreviewChannel preview = this.preview;
+        if (null != preview) {
+            preview.offer(laneOf(decoded.getTask()), encoded.getJpeg().getData(), encoded.getJpeg().getLength(),
+                    decoded.getTask().getTimecodeMillis());
+        }
+        uploadStage.submit(laneOf(decoded.getTask()), encoded);
+    }
+
+    private void discard(EncodedFrame encoded) {
+        bufferPool.release(encoded.getJpeg());
+        done(encoded.getTask());
+    }
+
+    /**
+     * A frame dropped by the upload stage goes to the spool if there is room.
+     */
+    private void spillOrDiscard(EncodedFrame encoded) {
+        spill(toRequest(encoded));
+        discard(encoded);
+    }
+
+    /**
+     * Blocks only while the uploader is at its in-flight limit; the PUT itself runs on the uploader pool.
+     * With packing on, the frame is copied into the pack of its stream instead.
+     */
+    private void upload(S3Uploader uploader, EncodedFrame encoded) throws InterruptedException {
+
+        final FrameTask task = encoded.getTask();
+        if (null != packer) {
+            packer.add(task.getStream().getStreamName(), encoded.getJpeg().getData(), encoded.getJpeg().getLength(),
+                    task.getTimecodeMillis(), task.getFrameNumber(), task.getLocation(), encoded);
+
+            // The pack holds a copy; the frame is done once the pack is stored.
+            bufferPool.release(encoded.getJpeg());
+
+            return;
+        }
+        log.debug("Save frame #{} of stream {}", task.getFrameNumber(), task.getStream().getStreamName());
+        final UploadRequest request = toRequest(encoded);
+        put(uploader, request, 1, stored -> {
+            if (stored) {
+                uploaded(encoded);
+                indexed(task, request.getKey(), 0, request.getLength());
+            }
+            discard(encoded);
+        });
+    }
+
+    /**
+     * Puts the pack and its index. The frames of the pack are done once both are stored, spooled or lost.
+     */
+    private void uploadPack(S3Uploader uploader, FramePacker.Pack<EncodedFrame> pack) throws InterruptedException {
+        final FrameTask first = pack.getFrames().get(0).getTask();
+        final String key = prefixOf(first) + "/" + first.getTimecodeMillis() + ".pack";
+        final String indexKey = key + ".idx";
+        final List<UploadRequest> requests = List.of(pack.toRequest(key, indexKey),
+                pack.toIndexRequest(indexKey, key));
+
+        log.debug("Save {} frame(s) of stream {} as {}", pack.getFrames().size(), pack.getStreamName(), key);
+        final var pending = new AtomicInteger(requests.size());
+        final var allStored = new AtomicBoolean(true);
+        for (UploadRequest request : requests) {
+            put(uploader, request, pack.getFrames().size(), stored -> {
+                if (!stored) {
+                    allStored.set(false);
+                }
+                if (0 == pending.decrementAndGet()) {
+                    for (int i = 0; i < pack.getFrames().size(); i++) {
+                        final EncodedFrame encoded = pack.getFrames().get(i);
+                        if (allStored.get()) {
+                            uploaded(encoded);
+                            indexed(encoded.getTask(), key, pack.getOffset(i), pack.getLength(i));
+                        }
+                        done(encoded.getTask());
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Puts the object, or spools it while S3 is failing or once its PUT failed for good.
+     *
+     * @param frames   frames lost with the object if it can't be spooled either
+     * @param finished told whether S3 took the object; the request buffer may be reused from then on
+     */
+    private void put(S3Uploader uploader, UploadRequest request, int frames, Consumer<Boolean> finished)
+            throws InterruptedException {
+
+        if (uploader.isFailing() && spill(request)) {
+            finished.accept(false);
+
+            return;
+        }
+        uploader.upload(request).whenComplete((result, ex) -> {
+            if (null != ex && !spill(request)) {
+                metrics.uploadFailed(frames);
+                log.error("Could not save {} to S3!", request.getKey(), ex);
+            }
+            finished.accept(null == ex);
+        });
+    }
+
+    private void uploaded(EncodedFrame encoded) {
+        metrics.uploaded();
+        if (null != encoded.getHash()) {
+            final FrameTask task = encoded.getTask();
+            task.getStream().uploaded(task.getFrameNumber(), encoded.getHash());
+        }
+    }
+
+    /**
+     * Adds the stored frame to the index of its fragment.
+     */
+    private void indexed(FrameTask task, String key, int offset, int length) {
+        if (null != indexWriter) {
+            task.getFragment().indexed(prefixOf(task) + "/index.tsv", key + '\t' + offset + '\t' + length + '\t'
+                    + task.getTimecodeMillis() + '\t' + task.getFrameNumber() + '\t'
+                    + FramePacker.indexField(task.getLocation()) + '\n');
+        }
+    }
+
+    /**
+     * Called when a fragment commits, under the lock of its tracker.
+     */
+    private void writeIndex(String indexKey, String lines) {
+        final byte[] index = (FRAGMENT_INDEX_HEADER + lines).getBytes(StandardCharsets.UTF_8);
+        try {
+            indexWriter.execute(() -> {
+                try {
+                    put(uploader, new UploadRequest(indexKey, index, index.length, FramePacker.INDEX_CONTENT_TYPE,
+                            Map.of()), 0, stored -> { });
+                } catch (InterruptedException iex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        } catch (RejectedExecutionException rex) {
+            log.warn("Pipeline is shut down. Index {} is not written.", indexKey);
+        }
+    }
+
+    /**
+     * {@code <root>/yyyy/MM/dd/HH/<stream>/<fragment>} of the fragment the frame was read from.
+     */
+    private String prefixOf(FrameTask task) {
+
+        return keyRoot + "/" + PARTITION.format(Instant.ofEpochMilli(task.getProducerTimestampMillis())) + "/"
+                + task.getStream().getStreamName() + "/"
+                + (null == task.getFragmentNumber() ? "untagged" : task.getFragmentNumber());
+    }
+
+    /**
+     * The request still refers to the pooled buffer of the frame.
+     */
+    private UploadRequest toRequest(EncodedFrame encoded) {
+        final FrameTask task = encoded.getTask();
+        Map<String, String> userMetadata = null == task.getLocation() ? Map.of()
+                : Map.of("location", task.getLocation());
+
+        return new UploadRequest(prefixOf(task) + "/" + task.getTimecodeMillis() + ".jpg",
+                encoded.getJpeg().getData(), encoded.getJpeg().getLength(), "image/jpeg", userMetadata);
+    }
+
+    /**
+     * Copies the frame to the spool, so the caller may release its buffer.
+     *
+     * @return false if there is no spool or the frame didn't fit
+     */
+    private boolean spill(UploadRequest request) {
+        if (null == spool) {
+
+            return false;
+        }
+        try {
+            if (spool.append(request)) {
+                metrics.spooled();
+
+                return true;
+            }
+            metrics.spoolFull();
+            log.warn("Spool is full or closed. Drop {}.", request.getKey());
+        } catch (IOException ioex) {
+            log.error("Could not spool {}.", request.getKey(), ioex);
+        }
+
+        return false;
+    }
+}
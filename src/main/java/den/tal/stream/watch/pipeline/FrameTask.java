@@ -0,0 +1,100 @@
+package den.tal.stream.watch.pipeline;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.amazonaws.kinesisvideo.parser.utilities.MkvTrackMetadata;
+import den.tal.stream.watch.checkpoint.FragmentTracker;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A sampled frame detached from the MKV reader, ready to be decoded on another thread. The {@link GopDecoder} also
+ * gets the frames in between, which are decoded as references only.
+ */
+@Getter
+@AllArgsConstructor
+public class FrameTask {
+
+    private final StreamContext stream;
+    private final long frameNumber;
+
+    /**
+     * Absolute stream time of the frame.
+     */
+    private final long timecodeMillis;
+
+    /**
+     * Null in an end-of-stream marker.
+     */
+    private final Frame frame;
+    private final MkvTrackMetadata trackMetadata;
+
+    /**
+     * Value of the LOCATION fragment tag or null.
+     */
+    private final String location;
+
+    /**
+     * Number of the fragment the frame was read from, null if the media has no fragment tags.
+     */
+    private final String fragmentNumber;
+
+    /**
+     * Producer time of the fragment, or the frame timecode if the media has no fragment tags.
+     */
+    private final long producerTimestampMillis;
+
+    /**
+     * Told when the frame leaves the pipeline, so the fragment can be committed. Null in a reference frame and
+     * in an end-of-stream marker.
+     */
+    private final FragmentTracker.Fragment fragment;
+
+    /**
+     * The reader reuses frame buffers, so the payload must be copied before it leaves the reader thread.
+     */
+    public static FrameTask detach(StreamContext stream, long frameNumber, long timecodeMillis, Frame frame,
+                                   MkvTrackMetadata trackMetadata, String location, String fragmentNumber,
+                                   long producerTimestampMillis, FragmentTracker.Fragment fragment) {
+
+        return new FrameTask(stream, frameNumber, timecodeMillis, copyOf(frame), trackMetadata, location,
+                fragmentNumber, producerTimestampMillis, fragment);
+    }
+
+    /**
+     * A frame that is not sampled, detached so that the sampled frames after it in its GOP decode right.
+     */
+    public static FrameTask reference(StreamContext stream, long frameNumber, long timecodeMillis, Frame frame,
+                                      MkvTrackMetadata trackMetadata) {
+
+        return new FrameTask(stream, frameNumber, timecodeMillis, copyOf(frame), trackMetadata, null, null,
+                timecodeMillis, null);
+    }
+
+    /**
+     * Follows the last frame of a stream through its lane, so state kept for the stream can be passed on in order.
+     */
+    public static FrameTask endOf(StreamContext stream) {
+
+        return new FrameTask(stream, Long.MAX_VALUE, Long.MAX_VALUE, null, null, null, null, 0, null);
+    }
+
+    public boolean isEndOfStream() {
+
+        return null == frame;
+    }
+
+    public boolean isSampled() {
+
+        return null != fragment;
+    }
+
+    private static Frame copyOf(Frame frame) {
+        ByteBuffer source = frame.getFrameData().duplicate();
+        ByteBuffer copy = ByteBuffer.allocate(source.remaining());
+        copy.put(source).flip();
+
+        return frame.toBuilder().frameData(copy).build();
+    }
+}
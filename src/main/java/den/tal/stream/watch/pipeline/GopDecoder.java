@@ -0,0 +1,243 @@
+package den.tal.stream.watch.pipeline;
+
+import com.amazonaws.kinesisvideo.parser.utilities.H264FrameDecoder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Decodes the frames of a stream GOP by GOP on a fork-join pool. A GOP runs from one key frame to the next and
+ * doesn't depend on the others, so the GOPs of one stream are decoded on all workers at once; every worker has
+ * its own decoder. GOPs are passed on in the order they were sealed, each sorted by timecode, so the stages behind
+ * still see the frames of a stream in stream order. A GOP is sealed by the next key frame, an end-of-stream marker
+ * or {@link #shutdown}. Readers hand over every frame, since P-frames refer to the frames before them, but only
+ * sampled frames are passed on.
+ */
+@Slf4j
+public class GopDecoder {
+
+    /**
+     * Gets the decoded frames of a stream one at a time, in order.
+     */
+    @FunctionalInterface
+    public interface Sink {
+
+        void accept(DecodedFrame decoded) throws InterruptedException;
+    }
+
+    private static class DecoderThread extends ForkJoinWorkerThread {
+
+        private final H264FrameDecoder decoder = new H264FrameDecoder();
+
+        DecoderThread(ForkJoinPool pool) {
+            super(pool);
+            setName("stage-decode-gop-" + getPoolIndex());
+        }
+    }
+
+    /**
+     * Open GOP and resequencing state of one stream.
+     */
+    private static class Lane {
+
+        /**
+         * Only touched by the serial decode stage.
+         */
+        List<FrameTask> open = new ArrayList<>();
+        long sealed;
+
+        /**
+         * Guarded by the lane. One worker at a time passes GOPs on, outside the lock.
+         */
+        final Map<Long, List<DecodedFrame>> decoded = new HashMap<>();
+        long passed;
+        boolean passing;
+    }
+
+    private final ForkJoinPool pool;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final Sink sink;
+    private final Consumer<FrameTask> discarded;
+    private final LongConsumer decodedAt;
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param maxInFlight GOPs being decoded or waiting for an earlier one, over all streams
+     * @param decodedAt   called with the {@link System#nanoTime()} a frame's decoding started at
+     * @param discarded   called with every frame that failed to decode or to be passed on
+     */
+    public GopDecoder(int threads, int maxInFlight, Sink sink, LongConsumer decodedAt,
+                      Consumer<FrameTask> discarded) {
+
+        this.pool = new ForkJoinPool(threads, DecoderThread::new, null, false);
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.sink = sink;
+        this.decodedAt = decodedAt;
+        this.discarded = discarded;
+        log.info("GOP decoder started: {} worker(s), {} GOP(s) in flight.", threads, maxInFlight);
+    }
+
+    /**
+     * Called by the serial decode stage. Blocks while the maximum of GOPs is in flight.
+     */
+    public void add(FrameTask task) throws InterruptedException {
+        final Lane lane = lanes.computeIfAbsent(task.getStream().getLaneName(), key -> new Lane());
+        if (!task.isEndOfStream() && task.getFrame().isKeyFrame() && !lane.open.isEmpty()) {
+            try {
+                seal(lane);
+            } catch (InterruptedException iex) {
+                discarded.accept(task);
+
+                throw iex;
+            }
+        }
+        lane.open.add(task);
+        if (task.isEndOfStream()) {
+            // Passed on behind the last GOP of the stream.
+            seal(lane);
+        }
+    }
+
+    /**
+     * GOPs being decoded or waiting for an earlier one.
+     */
+    public int getInFlight() {
+
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * Frames that failed to decode since the start.
+     */
+    public long getFailed() {
+
+        return failed.sum();
+    }
+
+    /**
+     * Seals the open GOPs and decodes them. Call once the decode stage has stopped.
+     *
+     * @return false if the GOPs were not passed on within the timeout
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        for (Lane lane : lanes.values()) {
+            if (!lane.open.isEmpty()) {
+                seal(lane);
+            }
+        }
+        pool.shutdown();
+
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    private void seal(Lane lane) throws InterruptedException {
+        final List<FrameTask> gop = lane.open;
+        lane.open = new ArrayList<>();
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException iex) {
+            gop.forEach(discarded);
+
+            throw iex;
+        }
+        final long sequence = lane.sealed++;
+        try {
+            pool.execute(() -> decode(lane, sequence, gop));
+        } catch (RejectedExecutionException rex) {
+            log.warn("GOP decoder is shut down. Drop {} frame(s).", gop.size());
+            pass(lane, sequence, List.of());
+            gop.forEach(discarded);
+        }
+    }
+
+    /**
+     * Runs on a pool worker.
+     */
+    private void decode(Lane lane, long sequence, List<FrameTask> gop) {
+        final H264FrameDecoder decoder = ((DecoderThread) Thread.currentThread()).decoder;
+        final List<DecodedFrame> frames = new ArrayList<>(gop.size());
+        for (FrameTask task : gop) {
+            if (task.isEndOfStream()) {
+                frames.add(new DecodedFrame(task, null, null));
+                continue;
+            }
+            final long start = System.nanoTime();
+            try {
+                final BufferedImage image = decoder.decodeH264Frame(task.getFrame(), task.getTrackMetadata());
+                decodedAt.accept(start);
+                if (task.isSampled()) {
+                    frames.add(new DecodedFrame(task, image, null));
+                }
+            } catch (RuntimeException rex) {
+                log.error("Could not decode frame #{} of stream {}.", task.getFrameNumber(),
+                        task.getStream().getStreamName(), rex);
+
+                failed.increment();
+                discarded.accept(task);
+            }
+        }
+        frames.sort(Comparator.comparingLong(frame -> frame.getTask().getTimecodeMillis()));
+        pass(lane, sequence, frames);
+    }
+
+    /**
+     * Passes on the GOP and every later one already decoded, once the GOPs before it are passed. The sink may block,
+     * so it is called without the lane lock; a worker finding another one passing leaves its GOP to it.
+     */
+    private void pass(Lane lane, long sequence, List<DecodedFrame> frames) {
+        synchronized (lane) {
+            lane.decoded.put(sequence, frames);
+            if (lane.passing) {
+
+                return;
+            }
+            lane.passing = true;
+        }
+        while (true) {
+            final List<DecodedFrame> next;
+            synchronized (lane) {
+                next = lane.decoded.remove(lane.passed);
+                if (null == next) {
+                    lane.passing = false;
+
+                    return;
+                }
+                ++lane.passed;
+            }
+            inFlight.release();
+            for (DecodedFrame frame : next) {
+                if (Thread.currentThread().isInterrupted()) {
+                    discarded.accept(frame.getTask());
+                    continue;
+                }
+                try {
+                    sink.accept(frame);
+                } catch (InterruptedException iex) {
+                    Thread.currentThread().interrupt();
+                    discarded.accept(frame.getTask());
+                } catch (RuntimeException rex) {
+                    log.error("Could not pass frame #{} on.", frame.getTask().getFrameNumber(), rex);
+                    failed.increment();
+                    discarded.accept(frame.getTask());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package den.tal.stream.watch.pipeline;
+
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sizes of the frame pipeline stages.
+ */
+@Component
+public class PipelineSettings {
+
+    @Value("${film.watcher.pipeline.backpressure:drop-oldest}")
+    private String backpressure;
+
+    /**
+     * platform or virtual, see {@link ExecutionMode}.
+     */
+    @Value("${film.watcher.pipeline.execution:platform}")
+    private String execution;
+
+    /**
+     * 0 sizes the pool to the cores.
+     */
+    @Value("${film.watcher.pipeline.decode.threads:1}")
+    private int decodeThreads;
+
+    @Getter
+    @Value("${film.watcher.pipeline.decode.queue:16}")
+    private int decodeQueue;
+
+    /**
+     * Decode whole GOPs of a stream in parallel, see {@link GopDecoder}.
+     */
+    @Getter
+    @Value("${film.watcher.pipeline.decode.gop.enabled:false}")
+    private boolean gopDecoding;
+
+    /**
+     * 0 sizes the pool to the cores.
+     */
+    @Value("${film.watcher.pipeline.decode.gop.threads:0}")
+    private int gopThreads;
+
+    /**
+     * 0 is twice the GOP threads.
+     */
+    @Value("${film.watcher.pipeline.decode.gop.in_flight:0}")
+    private int gopInFlight;
+
+    /**
+     * 0 sizes the pool to the cores.
+     */
+    @Value("${film.watcher.pipeline.encode.threads:2}")
+    private int encodeThreads;
+
+    @Getter
+    @Value("${film.watcher.pipeline.encode.queue:16}")
+    private int encodeQueue;
+
+    @Getter
+    @Value("${film.watcher.pipeline.upload.threads:1}")
+    private int uploadThreads;
+
+    @Getter
+    @Value("${film.watcher.pipeline.upload.queue:64}")
+    private int uploadQueue;
+
+    /**
+     * Seconds to wait for queued frames on shutdown.
+     */
+    @Getter
+    @Value("${film.watcher.pipeline.drain_timeout:10}")
+    private int drainTimeoutSeconds;
+
+    public BackpressurePolicy getBackpressurePolicy() throws FilmWatcherInitException {
+
+        return BackpressurePolicy.fromProperty(backpressure);
+    }
+
+    public ExecutionMode getExecutionMode() throws FilmWatcherInitException {
+
+        return ExecutionMode.fromProperty(execution);
+    }
+
+    public int getDecodeThreads() {
+
+        return orCores(decodeThreads);
+    }
+
+    public int getGopThreads() {
+
+        return orCores(gopThreads);
+    }
+
+    public int getGopInFlight() {
+
+        return gopInFlight > 0 ? gopInFlight : 2 * getGopThreads();
+    }
+
+    public int getEncodeThreads() {
+
+        return orCores(encodeThreads);
+    }
+
+    private static int orCores(int threads) {
+
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+}
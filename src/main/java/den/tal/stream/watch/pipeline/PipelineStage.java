@@ -0,0 +1,268 @@
+package den.tal.stream.watch.pipeline;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * One step of the frame pipeline: bounded queues drained by a pool of workers shared by all streams.
+ * Every stream gets its own lane (queue) and workers take lanes round-robin, one item at a time,
+ * so a busy stream can't starve the others. In a serial stage a lane is handled by one worker at a time,
+ * which lets per-stream state (decoders) be used without synchronization.
+ * Each worker thread gets its own {@link Worker} instance. Items dropped by backpressure or failed by a worker
+ * are passed to the discard callback; items left in the queues by a shutdown are not.
+ */
+@Slf4j
+public class PipelineStage<T> {
+
+    private static final long POLL_MILLIS = 100;
+
+    @FunctionalInterface
+    public interface Worker<T> {
+
+        void handle(T item) throws Exception;
+    }
+
+    private static class Lane<T> {
+
+        final String name;
+        final BlockingQueue<T> queue;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Lane(String name, int capacity) {
+            this.name = name;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+
+    @Getter
+    private final String name;
+
+    private final int capacity;
+    private final boolean serial;
+    private final BackpressurePolicy policy;
+    private final Map<String, Lane<T>> lanes = new ConcurrentHashMap<>();
+    private final BlockingQueue<Lane<T>> ready = new LinkedBlockingQueue<>();
+    private final ExecutorService workers;
+    private final Consumer<T> discarded;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * @param capacity queue capacity of each lane
+     * @param serial   handle items of one lane by one worker at a time, in order
+     */
+    public PipelineStage(String name, int capacity, int threads, boolean serial, BackpressurePolicy policy,
+                         Supplier<Worker<T>> workerFactory) {
+
+        this(name, capacity, threads, serial, policy, workerFactory, item -> { });
+    }
+
+    /**
+     * @param discarded called with every item dropped by backpressure or failed by a worker
+     */
+    public PipelineStage(String name, int capacity, int threads, boolean serial, BackpressurePolicy policy,
+                         Supplier<Worker<T>> workerFactory, Consumer<T> discarded) {
+
+        this.name = name;
+        this.discarded = discarded;
+        this.capacity = capacity;
+        this.serial = serial;
+        this.policy = policy;
+        this.workers = Executors.newFixedThreadPool(threads, new StageThreadFactory(name));
+        for (int i = 0; i < threads; i++) {
+            final Worker<T> worker = workerFactory.get();
+            workers.submit(() -> drain(worker));
+        }
+        log.info("Stage {} started: {} worker(s), lane capacity {}, backpressure {}.", name, threads, capacity,
+                policy);
+    }
+
+    /**
+     * Puts an item into the lane according to the backpressure policy.
+     *
+     * @return false if the item was rejected
+     */
+    public boolean submit(String laneName, T item) throws InterruptedException {
+        if (!running) {
+
+            return false;
+        }
+        final Lane<T> lane = lanes.computeIfAbsent(laneName, key -> new Lane<>(key, capacity));
+        switch (policy) {
+            case BLOCK:
+                lane.queue.put(item);
+                break;
+
+            case DROP_OLDEST:
+                while (!lane.queue.offer(item)) {
+                    final T oldest = lane.queue.poll();
+                    if (null != oldest) {
+                        log.trace("Lane {} of stage {} is full. Drop the oldest item.", laneName, name);
+                        dropped.increment();
+                        discarded.accept(oldest);
+                    }
+                }
+                break;
+
+            default:
+                if (!lane.queue.offer(item)) {
+                    log.trace("Lane {} of stage {} is full. Drop the newest item.", laneName, name);
+                    dropped.increment();
+                    discarded.accept(item);
+
+                    return false;
+                }
+        }
+        schedule(lane);
+
+        return true;
+    }
+
+    /**
+     * Waits for room in the lane whatever the backpressure policy, for items that must not be dropped.
+     *
+     * @return false if the stage is shut down
+     */
+    public boolean put(String laneName, T item) throws InterruptedException {
+        if (!running) {
+
+            return false;
+        }
+        final Lane<T> lane = lanes.computeIfAbsent(laneName, key -> new Lane<>(key, capacity));
+        lane.queue.put(item);
+        schedule(lane);
+
+        return true;
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Lane<T> lane : lanes.values()) {
+            depth += lane.queue.size();
+        }
+
+        return depth;
+    }
+
+    /**
+     * Fill of one lane from 0 to 1, 0 for a lane not seen yet.
+     */
+    public double getOccupancy(String laneName) {
+        final Lane<T> lane = lanes.get(laneName);
+
+        return null == lane ? 0 : (double) lane.queue.size() / capacity;
+    }
+
+    /**
+     * Items dropped by backpressure since the start.
+     */
+    public long getDropped() {
+
+        return dropped.sum();
+    }
+
+    /**
+     * Items a worker failed to handle since the start.
+     */
+    public long getFailed() {
+
+        return failed.sum();
+    }
+
+    /**
+     * Stops accepting new items. Workers finish what is already queued.
+     */
+    public void shutdown() {
+        running = false;
+        workers.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+
+        return workers.awaitTermination(timeout, unit);
+    }
+
+    private void schedule(Lane<T> lane) {
+        if (lane.scheduled.compareAndSet(false, true)) {
+            ready.add(lane);
+        }
+    }
+
+    private void release(Lane<T> lane) {
+        lane.scheduled.set(false);
+        if (!lane.queue.isEmpty()) {
+            schedule(lane);
+        }
+    }
+
+    private void drain(Worker<T> worker) {
+        while (running || !ready.isEmpty()) {
+            Lane<T> lane;
+            try {
+                lane = ready.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException iex) {
+                log.warn("Stage {} worker interrupted.", name);
+                Thread.currentThread().interrupt();
+
+                return;
+            }
+            if (null == lane) {
+                continue;
+            }
+            final T item = lane.queue.poll();
+            if (!serial) {
+                // Back to the tail of the ready queue right away: other workers may take its next item.
+                release(lane);
+            }
+            try {
+                if (null != item) {
+                    worker.handle(item);
+                }
+            } catch (InterruptedException iex) {
+                Thread.currentThread().interrupt();
+
+                return;
+            } catch (Exception ex) {
+                log.error("Stage {} could not handle item of lane {}.", name, lane.name, ex);
+                failed.increment();
+                discarded.accept(item);
+            } finally {
+                if (serial) {
+                    release(lane);
+                }
+            }
+        }
+    }
+
+    private static class StageThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        StageThreadFactory(String stageName) {
+            prefix = "stage-" + stageName + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+
+            return new Thread(runnable, prefix + counter.incrementAndGet());
+        }
+    }
+}
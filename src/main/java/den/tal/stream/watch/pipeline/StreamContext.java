@@ -0,0 +1,67 @@
+package den.tal.stream.watch.pipeline;
+
+import com.amazonaws.kinesisvideo.parser.utilities.H264FrameDecoder;
+import den.tal.stream.watch.checkpoint.FragmentTracker;
+import den.tal.stream.watch.sampling.SharpestFrameWindow;
+import lombok.Getter;
+
+/**
+ * Per-stream state used by the shared pipeline stages. The decode stage is serial per stream,
+ * so the decoder is never used by two threads at once. The {@link GopDecoder} uses its own decoders instead.
+ */
+@Getter
+public class StreamContext {
+
+    private final String streamName;
+
+    /**
+     * Queue of the stream in every stage, its name unless readers of one stream run side by side.
+     */
+    private final String laneName;
+
+    private final H264FrameDecoder decoder = new H264FrameDecoder();
+    private final FragmentTracker fragments = new FragmentTracker();
+
+    /**
+     * Null unless the sharpest sampling mode is on.
+     */
+    private final SharpestFrameWindow<DecodedFrame> sharpestWindow;
+
+    private Long lastUploadedHash;
+    private long lastUploadedFrameNumber = -1;
+
+    public StreamContext(String streamName) {
+        this(streamName, null);
+    }
+
+    public StreamContext(String streamName, SharpestFrameWindow<DecodedFrame> sharpestWindow) {
+        this(streamName, streamName, sharpestWindow);
+    }
+
+    /**
+     * @param laneName lane of this reader; readers sharing a lane are decoded one after another
+     */
+    public StreamContext(String streamName, String laneName, SharpestFrameWindow<DecodedFrame> sharpestWindow) {
+        this.streamName = streamName;
+        this.laneName = laneName;
+        this.sharpestWindow = sharpestWindow;
+    }
+
+    /**
+     * Perceptual hash of the latest frame uploaded to S3, null before the first upload.
+     */
+    public synchronized Long getLastUploadedHash() {
+
+        return lastUploadedHash;
+    }
+
+    /**
+     * Called from uploader threads. Uploads may finish out of order, so an older frame never replaces a newer one.
+     */
+    public synchronized void uploaded(long frameNumber, long hash) {
+        if (frameNumber > lastUploadedFrameNumber) {
+            lastUploadedFrameNumber = frameNumber;
+            lastUploadedHash = hash;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package den.tal.stream.watch.preview;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lossy slot per stream holding its latest encoded frame for the {@link PreviewServer}. Encoder threads offer
+ * every frame; at most {@code fps} of them per second are copied, the others cost a clock read.
+ */
+public class PreviewChannel {
+
+    @Getter
+    @AllArgsConstructor
+    public static class PreviewFrame {
+
+        private final byte[] jpeg;
+        private final long timecodeMillis;
+        private final long copiedAtNanos;
+    }
+
+    private final long minIntervalNanos;
+    private final Map<String, AtomicReference<PreviewFrame>> slots = new ConcurrentHashMap<>();
+
+    public PreviewChannel(int fps) {
+        minIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, fps);
+    }
+
+    /**
+     * Keeps a copy of the JPEG unless the slot of the stream was filled less than a frame interval ago
+     * or holds a later frame.
+     */
+    public void offer(String streamName, byte[] jpeg, int length, long timecodeMillis) {
+        final AtomicReference<PreviewFrame> slot = slots.computeIfAbsent(streamName,
+                key -> new AtomicReference<>());
+        final PreviewFrame last = slot.get();
+        final long now = System.nanoTime();
+        if (null != last && (now - last.copiedAtNanos < minIntervalNanos || timecodeMillis < last.timecodeMillis)) {
+
+            return;
+        }
+        slot.compareAndSet(last, new PreviewFrame(Arrays.copyOf(jpeg, length), timecodeMillis, now));
+    }
+
+    /**
+     * @return null until a frame of the stream has been offered
+     */
+    public PreviewFrame latest(String streamName) {
+        final AtomicReference<PreviewFrame> slot = slots.get(streamName);
+
+        return null == slot ? null : slot.get();
+    }
+
+    public Set<String> getStreamNames() {
+
+        return new TreeSet<>(slots.keySet());
+    }
+
+    public long getMinIntervalNanos() {
+
+        return minIntervalNanos;
+    }
+}
@@ -0,0 +1,142 @@
+package den.tal.stream.watch.preview;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the {@link PreviewChannel} over HTTP:
+ * <ul>
+ *     <li>{@code /preview} lists the streams that have a frame,</li>
+ *     <li>{@code /preview/<stream>.jpg} is the latest frame of a stream,</li>
+ *     <li>{@code /preview/<stream>} is an MJPEG stream of its frames, sent at most {@code fps} times a second.</li>
+ * </ul>
+ * Viewers only read the slots, so a slow or stuck viewer never holds up ingestion.
+ */
+@Slf4j
+public class PreviewServer {
+
+    public static final String PATH = "/preview";
+    static final String BOUNDARY = "frame";
+
+    private final PreviewChannel channel;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * MJPEG connections left. One more thread than viewers answers the other requests.
+     */
+    private final Semaphore streams;
+
+    public PreviewServer(PreviewChannel channel, int port, int viewers) throws IOException {
+        this.channel = channel;
+        streams = new Semaphore(viewers);
+        final var counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(viewers + 1, runnable -> {
+            final var thread = new Thread(runnable, "preview-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext(PATH, this::handle);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Preview is served on port {} at {}.", getPort(), PATH);
+    }
+
+    /**
+     * Closes viewer connections and stops the server.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            final String path = exchange.getRequestURI().getPath();
+            final String name = path.length() > PATH.length() + 1 ? path.substring(PATH.length() + 1) : "";
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+            } else if (!path.equals(PATH) && !path.startsWith(PATH + "/")) {
+                exchange.sendResponseHeaders(404, -1);
+            } else if (name.isEmpty()) {
+                send(exchange, "text/plain; charset=utf-8",
+                        String.join("\n", channel.getStreamNames()).getBytes(StandardCharsets.UTF_8));
+            } else if (name.endsWith(".jpg")) {
+                final PreviewChannel.PreviewFrame frame = channel.latest(name.substring(0, name.length() - 4));
+                if (null == frame) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    send(exchange, "image/jpeg", frame.getJpeg());
+                }
+            } else if (!streams.tryAcquire()) {
+                exchange.sendResponseHeaders(503, -1);
+            } else {
+                try {
+                    stream(exchange, name);
+                } finally {
+                    streams.release();
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    /**
+     * Sends every new frame of the stream until the viewer leaves or the server stops.
+     */
+    private void stream(HttpExchange exchange, String name) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "multipart/x-mixed-replace; boundary=" + BOUNDARY);
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(200, 0);
+        final OutputStream out = exchange.getResponseBody();
+        log.debug("Viewer {} watches stream {}.", exchange.getRemoteAddress(), name);
+        PreviewChannel.PreviewFrame sent = null;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final PreviewChannel.PreviewFrame frame = channel.latest(name);
+                if (null != frame && frame != sent) {
+                    out.write(("--" + BOUNDARY + "\r\nContent-Type: image/jpeg\r\nContent-Length: "
+                            + frame.getJpeg().length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                    out.write(frame.getJpeg());
+                    out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                    sent = frame;
+                }
+                TimeUnit.NANOSECONDS.sleep(channel.getMinIntervalNanos());
+            }
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ioex) {
+            log.debug("Viewer {} of stream {} has left.", exchange.getRemoteAddress(), name);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package den.tal.stream.watch.preview;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Component
+public class PreviewSettings {
+
+    /**
+     * Serves the latest sampled frame of every stream over HTTP. Works in a headless JVM.
+     */
+    @Value("${film.watcher.monitor.render:false}")
+    private boolean enabled;
+
+    @Value("${film.watcher.monitor.port:8081}")
+    private int port;
+
+    /**
+     * Frames per second kept for and sent to viewers, at most.
+     */
+    @Value("${film.watcher.monitor.fps:2}")
+    private int fps;
+
+    /**
+     * MJPEG connections served at a time; others are refused.
+     */
+    @Value("${film.watcher.monitor.viewers:4}")
+    private int viewers;
+}
@@ -1,67 +1,50 @@
 package den.tal.stream.watch.processors;
 
-import com.amazonaws.auth.AWSCredentialsProvider;
-import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.kinesisvideo.parser.mkv.Frame;
 import com.amazonaws.kinesisvideo.parser.mkv.FrameProcessException;
 import com.amazonaws.kinesisvideo.parser.utilities.*;
-import com.amazonaws.regions.Regions;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3ClientBuilder;
-import com.amazonaws.services.s3.model.ObjectMetadata;
-import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import den.tal.stream.watch.WatcherLifecycle;
+import den.tal.stream.watch.metrics.StreamMetrics;
+import den.tal.stream.watch.pipeline.FramePipeline;
+import den.tal.stream.watch.pipeline.FrameTask;
+import den.tal.stream.watch.pipeline.StreamContext;
+import den.tal.stream.watch.sampling.FrameSampler;
 import lombok.extern.slf4j.Slf4j;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.Optional;
-import java.util.UUID;
-import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Picks frames on the MKV reader thread and hands them over to the {@link FramePipeline}. Waits while the watcher
+ * is starting or paused, and stops the read by failing the frame once it is draining or the reader is interrupted.
+ * Frames that are not sampled cost a counter increment and no allocation, unless the pipeline decodes whole GOPs
+ * and needs them as references; fragment tags are resolved once per fragment by the {@link FragmentCache}.
+ */
 @Slf4j
 public class FilmFrameProcessor implements FrameVisitor.FrameProcessor {
 
-    private int processNthFrame;
-    private int frameCounter;
-    private String bucketName;
-    private String folder;
-    private AmazonS3 s3;
-    private H264FrameDecoder frameDecoder = new H264FrameDecoder();
-    private ReentrantLock lock;
-
-    public FilmFrameProcessor(int analyzeEachNFrame, String bucketName, String folder, Regions region,
-                              AWSCredentialsProvider credentialsProvider, ReentrantLock lock,
-                              AwsClientBuilder.EndpointConfiguration s3EndpointConfiguration)
-                                    throws FilmWatcherInitException {
-
-        processNthFrame = analyzeEachNFrame;
-        this.bucketName = bucketName;
-        this.folder = "source-images-" + new SimpleDateFormat("ddMM").format(new Date());
-        this.lock = lock;
-
-        try {
-            var s3ClientBuilder = AmazonS3ClientBuilder.standard();
-
-            if (null != s3EndpointConfiguration) {
-                log.info("Use pre-defined S3 endpoint: {}", s3EndpointConfiguration.getServiceEndpoint());
-                s3ClientBuilder = s3ClientBuilder.withEndpointConfiguration(s3EndpointConfiguration);
-            } else {
-                log.info("Use default S3 endpoint.");
-                s3ClientBuilder = s3ClientBuilder.withRegion(region).withCredentials(credentialsProvider);
-            }
-
-            s3 = s3ClientBuilder.build();
-
-        } catch (Exception ex) {
-            log.error("Processor can not be created!", ex);
-
-            throw new FilmWatcherInitException(ex);
-        }
+    private StreamContext stream;
+    private FrameSampler sampler;
+    private long frameCounter;
+    private FramePipeline pipeline;
+    private WatcherLifecycle lifecycle;
+    private StreamMetrics metrics;
+    private final FragmentCache fragments = new FragmentCache();
+
+    /**
+     * Hand over the frames that are not sampled as well, see {@link FramePipeline#isDecodingGops()}.
+     */
+    private final boolean references;
+
+    public FilmFrameProcessor(StreamContext stream, FrameSampler sampler, WatcherLifecycle lifecycle,
+                              FramePipeline pipeline, StreamMetrics metrics) {
+
+        this.stream = stream;
+        this.sampler = sampler;
+        this.lifecycle = lifecycle;
+        this.pipeline = pipeline;
+        this.metrics = metrics;
+        this.references = null != pipeline && pipeline.isDecodingGops();
     }
 
     @Override
@@ -70,46 +53,44 @@ public class FilmFrameProcessor implements FrameVisitor.FrameProcessor {
                         Optional<BigInteger> timescale, Optional<BigInteger> fragmentTimecode)
             throws FrameProcessException {
 
-        lock.lock();
         try {
-            log.debug("Process frame #{}", frameCounter);
-            if (frameCounter % processNthFrame == 0) {
-                log.debug("Save frame #{} to bucket {}", frameCounter, bucketName);
-                try (var os = new ByteArrayOutputStream()) {
-                    BufferedImage image = frameDecoder.decodeH264Frame(frame, trackMetadata);
-                    Optional<MkvTag> locationTag = Optional.empty();
-                    if (tagProcessor.isPresent()) {
-                        final FragmentMetadataVisitor.BasicMkvTagProcessor processor =
-                            (FragmentMetadataVisitor.BasicMkvTagProcessor) tagProcessor.get();
+            if (Thread.currentThread().isInterrupted()) {
 
-                        locationTag = processor.getTags().stream().filter(
-                                mkvTag -> "LOCATION".equals(mkvTag.getTagName())).findFirst();
+                throw new FrameProcessException(String.format("Stop reading %s: its reader is interrupted.",
+                        stream.getStreamName()), null);
+            }
+            if (!lifecycle.awaitRunning()) {
 
-                        log.debug("Location tag: {}", locationTag);
-                    } else {
-                        log.debug("No MkvTag processor present.");
-                    }
-                    ImageIO.write(image, "jpeg", os);
-                    byte[] imageBytes = os.toByteArray();
-                    var is = new ByteArrayInputStream(imageBytes);
-                    var objectMetadata = new ObjectMetadata();
-                    objectMetadata.setContentType("image/jpeg");
-                    objectMetadata.setContentLength(imageBytes.length);
-                    if (locationTag.isPresent()) {
-                        objectMetadata.addUserMetadata("location", locationTag.get().getTagValue());
+                throw new FrameProcessException(String.format("Stop reading %s: the watcher is %s.",
+                        stream.getStreamName(), lifecycle.getState()), null);
+            }
+            metrics.frameRead();
+            if (sampler.sample(frameCounter, frame, timescale, fragmentTimecode)) {
+                metrics.frameSampled();
+                fragments.update(fragmentMetadata, tagProcessor);
+                final long timecodeMillis = FrameSampler.frameTimecodeMillis(frame, timescale, fragmentTimecode);
+                final long producerTimestampMillis = fragments.getProducerTimestampMillis();
+                if (!pipeline.submit(FrameTask.detach(stream, frameCounter, timecodeMillis, frame, trackMetadata,
+                        fragments.getLocation(), fragments.getFragmentNumber(),
+                        producerTimestampMillis < 0 ? timecodeMillis : producerTimestampMillis,
+                        stream.getFragments().frameSubmitted()))) {
+
+                    if (log.isDebugEnabled()) {
+                        log.debug("Frame #{} dropped by backpressure.", frameCounter);
                     }
-                    s3.putObject(bucketName, folder + "/" + UUID.randomUUID() + ".jpg", is, objectMetadata);
-                } catch (Exception ex) {
-                    final var msg = "Could not save frame to S3!";
-                    log.error(msg, ex);
-
-                    throw new FrameProcessException(msg, ex);
                 }
+            } else if (references) {
+                pipeline.submit(FrameTask.reference(stream, frameCounter,
+                        FrameSampler.frameTimecodeMillis(frame, timescale, fragmentTimecode), frame, trackMetadata));
             }
 
             ++frameCounter;
-        } finally {
-            lock.unlock();
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+            final var msg = "Interrupted while passing frame to pipeline!";
+            log.error(msg, iex);
+
+            throw new FrameProcessException(msg, iex);
         }
     }
 }
@@ -0,0 +1,75 @@
+package den.tal.stream.watch.processors;
+
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadata;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.MkvTag;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Fragment-level data of the frames of one reader. It is resolved again only when the fragment metadata or the
+ * tags of the segment change, so the frames in between read it without scanning tags or allocating.
+ */
+public class FragmentCache {
+
+    public static final String LOCATION_TAG = "LOCATION";
+
+    private FragmentMetadata fragment;
+    private List<MkvTag> tags;
+    private int tagCount = -1;
+
+    /**
+     * Null for media without fragment metadata.
+     */
+    @Getter
+    private String fragmentNumber;
+
+    /**
+     * Negative for media without fragment metadata.
+     */
+    @Getter
+    private long producerTimestampMillis = -1;
+
+    /**
+     * Value of the LOCATION tag, null if there is none.
+     */
+    @Getter
+    private String location;
+
+    /**
+     * @return true if the fragment or its tags have changed since the last frame
+     */
+    public boolean update(Optional<FragmentMetadata> fragmentMetadata,
+                          Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor) {
+
+        final FragmentMetadata current = fragmentMetadata.orElse(null);
+        final List<MkvTag> currentTags = tagProcessor.isPresent()
+                && tagProcessor.get() instanceof FragmentMetadataVisitor.BasicMkvTagProcessor
+                ? ((FragmentMetadataVisitor.BasicMkvTagProcessor) tagProcessor.get()).getTags() : null;
+        final int currentTagCount = null == currentTags ? -1 : currentTags.size();
+        if (current == fragment && currentTags == tags && currentTagCount == tagCount) {
+
+            return false;
+        }
+        if (current != fragment) {
+            fragment = current;
+            fragmentNumber = null == current ? null : current.getFragmentNumberString();
+            producerTimestampMillis = null == current ? -1 : current.getProducerSideTimestampMillis();
+        }
+        tags = currentTags;
+        tagCount = currentTagCount;
+        location = null;
+        if (null != currentTags) {
+            for (MkvTag tag : currentTags) {
+                if (LOCATION_TAG.equals(tag.getTagName())) {
+                    location = tag.getTagValue();
+                    break;
+                }
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,83 @@
+package den.tal.stream.watch.sampling;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sampling interval of one stream, kept between min and max. Lag or queue fill above its high watermark doubles
+ * the interval, so a stream that fell behind catches up quickly; both below their low watermarks shorten it by
+ * a fifth. In between the interval is held, and a change is held for at least {@code hold_ms}, so the rate
+ * doesn't oscillate. Used on the reader thread of its stream only.
+ */
+@Slf4j
+public class AdaptiveRateController {
+
+    private final String streamName;
+    private final long min;
+    private final long max;
+    private final long lagHighMillis;
+    private final long lagLowMillis;
+    private final double queueHigh;
+    private final double queueLow;
+    private final long holdNanos;
+
+    @Getter
+    private long interval;
+
+    private long changedAtNanos;
+
+    /**
+     * @param configured interval to start from, {@code save_nth_frame} or {@code interval_ms}
+     * @see AdaptiveSamplingSettings#check(long)
+     */
+    public AdaptiveRateController(String streamName, long configured, AdaptiveSamplingSettings settings) {
+        this(streamName, configured, settings, System.nanoTime());
+    }
+
+    AdaptiveRateController(String streamName, long configured, AdaptiveSamplingSettings settings, long nowNanos) {
+        this.streamName = streamName;
+        min = settings.minFor(configured);
+        max = settings.maxFor(configured);
+        lagHighMillis = settings.getLagHighMillis();
+        lagLowMillis = settings.getLagLowMillis();
+        queueHigh = settings.getQueueHigh();
+        queueLow = settings.getQueueLow();
+        holdNanos = TimeUnit.MILLISECONDS.toNanos(settings.getHoldMillis());
+        interval = Math.max(min, Math.min(max, configured));
+        changedAtNanos = nowNanos - holdNanos;
+    }
+
+    /**
+     * @param lagMillis milliseconds behind now, negative if unknown
+     * @param occupancy fill of the fullest pipeline queue of the stream
+     * @return interval to use from now on
+     */
+    public long update(long lagMillis, double occupancy) {
+
+        return update(lagMillis, occupancy, System.nanoTime());
+    }
+
+    long update(long lagMillis, double occupancy, long nowNanos) {
+        if (nowNanos - changedAtNanos < holdNanos) {
+
+            return interval;
+        }
+        long next = interval;
+        if (lagMillis > lagHighMillis || occupancy > queueHigh) {
+            next = Math.min(max, interval * 2);
+        } else if (lagMillis < lagLowMillis && occupancy < queueLow) {
+            next = Math.max(min, Math.min(interval - 1, interval * 4 / 5));
+        }
+        if (next != interval) {
+            log.info("Sampling interval of stream {}: {} -> {} (lag {} ms, queue {}%).", streamName, interval, next,
+                    lagMillis, Math.round(occupancy * 100));
+
+            interval = next;
+            changedAtNanos = nowNanos;
+        }
+
+        return interval;
+    }
+}
@@ -0,0 +1,53 @@
+package den.tal.stream.watch.sampling;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+
+import java.math.BigInteger;
+import java.util.Optional;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Takes one frame per interval of {@link AdaptiveRateController}, counted in frames or in stream time.
+ * The controller is fed with the lag and queue fill of the stream whenever a frame is taken.
+ */
+public class AdaptiveSampler implements FrameSampler {
+
+    private final AdaptiveRateController controller;
+    private final boolean byTime;
+    private final LongSupplier lagMillis;
+    private final DoubleSupplier occupancy;
+    private long lastSampled = Long.MIN_VALUE;
+    private long interval;
+
+    /**
+     * @param byTime interval in milliseconds of stream time rather than in frames
+     */
+    public AdaptiveSampler(AdaptiveRateController controller, boolean byTime, LongSupplier lagMillis,
+                           DoubleSupplier occupancy) {
+
+        this.controller = controller;
+        this.byTime = byTime;
+        this.lagMillis = lagMillis;
+        this.occupancy = occupancy;
+        this.interval = controller.getInterval();
+    }
+
+    @Override
+    public boolean sample(long frameNumber, Frame frame, Optional<BigInteger> timescale,
+                          Optional<BigInteger> fragmentTimecode) {
+
+        final long position = byTime ? FrameSampler.frameTimecodeMillis(frame, timescale, fragmentTimecode)
+                : frameNumber;
+
+        // Going backwards means a new session or producer restart; start over.
+        if (lastSampled == Long.MIN_VALUE || position < lastSampled || position - lastSampled >= interval) {
+            lastSampled = position;
+            interval = controller.update(lagMillis.getAsLong(), occupancy.getAsDouble());
+
+            return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,73 @@
+package den.tal.stream.watch.sampling;
+
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounds and watermarks of {@link AdaptiveRateController}. Intervals are frames in the nth-frame and sharpest modes
+ * and milliseconds in the interval mode.
+ */
+@Getter
+@Component
+public class AdaptiveSamplingSettings {
+
+    @Value("${film.watcher.sampling.adaptive.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * Shortest interval; 0 is a quarter of the configured one.
+     */
+    @Value("${film.watcher.sampling.adaptive.min:0}")
+    private long min;
+
+    /**
+     * Longest interval; 0 is eight times the configured one.
+     */
+    @Value("${film.watcher.sampling.adaptive.max:0}")
+    private long max;
+
+    @Value("${film.watcher.sampling.adaptive.lag.high_ms:10000}")
+    private long lagHighMillis;
+
+    @Value("${film.watcher.sampling.adaptive.lag.low_ms:2000}")
+    private long lagLowMillis;
+
+    /**
+     * Fill of the fullest pipeline queue of the stream, from 0 to 1.
+     */
+    @Value("${film.watcher.sampling.adaptive.queue.high:0.75}")
+    private double queueHigh;
+
+    @Value("${film.watcher.sampling.adaptive.queue.low:0.25}")
+    private double queueLow;
+
+    /**
+     * Least time between two changes of the interval.
+     */
+    @Value("${film.watcher.sampling.adaptive.hold_ms:2000}")
+    private long holdMillis;
+
+    public long minFor(long configured) {
+
+        return min > 0 ? min : Math.max(1, configured / 4);
+    }
+
+    public long maxFor(long configured) {
+
+        return max > 0 ? max : Math.max(1, configured) * 8;
+    }
+
+    /**
+     * @param configured {@code save_nth_frame} or {@code interval_ms}
+     */
+    public void check(long configured) throws FilmWatcherInitException {
+        if (minFor(configured) > maxFor(configured) || lagLowMillis > lagHighMillis || queueLow > queueHigh) {
+
+            throw new FilmWatcherInitException(String.format("film.watcher.sampling.adaptive: min %d must not exceed "
+                    + "max %d, and no low watermark may exceed its high one.", minFor(configured),
+                    maxFor(configured)));
+        }
+    }
+}
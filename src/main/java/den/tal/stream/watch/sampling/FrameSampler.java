@@ -0,0 +1,36 @@
+package den.tal.stream.watch.sampling;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+
+import java.math.BigInteger;
+import java.util.Optional;
+
+/**
+ * Decides on the MKV reader thread which frames are worth decoding.
+ */
+public interface FrameSampler {
+
+    /**
+     * Default Matroska timecode scale: one tick is a millisecond.
+     */
+    long DEFAULT_TIMESCALE_NANOS = 1_000_000L;
+
+    /**
+     * @param frameNumber number of the frame in the stream, counted by the caller from 0
+     */
+    boolean sample(long frameNumber, Frame frame, Optional<BigInteger> timescale,
+                   Optional<BigInteger> fragmentTimecode);
+
+    /**
+     * Absolute frame timecode in milliseconds: cluster timecode plus the frame offset, scaled to ms.
+     * Called for every frame, so it does not box.
+     */
+    static long frameTimecodeMillis(Frame frame, Optional<BigInteger> timescale,
+                                    Optional<BigInteger> fragmentTimecode) {
+
+        long ticks = (fragmentTimecode.isPresent() ? fragmentTimecode.get().longValue() : 0L) + frame.getTimeCode();
+        long nanosPerTick = timescale.isPresent() ? timescale.get().longValue() : DEFAULT_TIMESCALE_NANOS;
+
+        return ticks * nanosPerTick / 1_000_000L;
+    }
+}
@@ -0,0 +1,36 @@
+package den.tal.stream.watch.sampling;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+
+import java.math.BigInteger;
+import java.util.Optional;
+
+/**
+ * Takes at most one frame per interval of stream time.
+ */
+public class IntervalSampler implements FrameSampler {
+
+    private final long intervalMillis;
+    private long lastSampledMillis = Long.MIN_VALUE;
+
+    public IntervalSampler(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public boolean sample(long frameNumber, Frame frame, Optional<BigInteger> timescale,
+                          Optional<BigInteger> fragmentTimecode) {
+
+        long timecode = FrameSampler.frameTimecodeMillis(frame, timescale, fragmentTimecode);
+        // A timecode going backwards means a new session or producer restart; start over.
+        if (lastSampledMillis == Long.MIN_VALUE || timecode < lastSampledMillis
+                || timecode - lastSampledMillis >= intervalMillis) {
+
+            lastSampledMillis = timecode;
+
+            return true;
+        }
+
+        return false;
+    }
+}
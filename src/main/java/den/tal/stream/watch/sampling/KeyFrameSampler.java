@@ -0,0 +1,19 @@
+package den.tal.stream.watch.sampling;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+
+import java.math.BigInteger;
+import java.util.Optional;
+
+/**
+ * Takes key frames only. They decode without reference frames, so the decoder never works on a broken GOP.
+ */
+public class KeyFrameSampler implements FrameSampler {
+
+    @Override
+    public boolean sample(long frameNumber, Frame frame, Optional<BigInteger> timescale,
+                          Optional<BigInteger> fragmentTimecode) {
+
+        return frame.isKeyFrame();
+    }
+}
@@ -0,0 +1,25 @@
+package den.tal.stream.watch.sampling;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+
+import java.math.BigInteger;
+import java.util.Optional;
+
+/**
+ * Takes every N-th frame regardless of its type.
+ */
+public class NthFrameSampler implements FrameSampler {
+
+    private final int processNthFrame;
+
+    public NthFrameSampler(int processNthFrame) {
+        this.processNthFrame = processNthFrame;
+    }
+
+    @Override
+    public boolean sample(long frameNumber, Frame frame, Optional<BigInteger> timescale,
+                          Optional<BigInteger> fragmentTimecode) {
+
+        return frameNumber % processNthFrame == 0;
+    }
+}
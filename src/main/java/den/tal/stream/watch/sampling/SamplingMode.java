@@ -0,0 +1,57 @@
+package den.tal.stream.watch.sampling;
+
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Values of the {@code film.watcher.sampling.mode} property.
+ */
+public enum SamplingMode {
+
+    NTH_FRAME,
+    KEYFRAMES_ONLY,
+    INTERVAL,
+
+    /**
+     * Every nth frame is a candidate; the decode stage keeps the sharpest candidate of each window.
+     */
+    SHARPEST;
+
+    /**
+     * Parses property values like {@code nth-frame} or {@code keyframes-only}.
+     */
+    public static SamplingMode fromProperty(String value) throws FilmWatcherInitException {
+        try {
+
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+
+        } catch (IllegalArgumentException ex) {
+
+            throw new FilmWatcherInitException(String.format("Unknown film.watcher.sampling.mode '%s'. Use one of: %s",
+                    value, Arrays.stream(values()).map(SamplingMode::toProperty).collect(Collectors.joining(", "))));
+        }
+    }
+
+    public String toProperty() {
+
+        return name().toLowerCase().replace('_', '-');
+    }
+
+    public FrameSampler createSampler(int processNthFrame, long intervalMillis) {
+        switch (this) {
+            case KEYFRAMES_ONLY:
+
+                return new KeyFrameSampler();
+
+            case INTERVAL:
+
+                return new IntervalSampler(intervalMillis);
+
+            default:
+
+                return new NthFrameSampler(processNthFrame);
+        }
+    }
+}
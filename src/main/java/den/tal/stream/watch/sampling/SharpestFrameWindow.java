@@ -0,0 +1,72 @@
+package den.tal.stream.watch.sampling;
+
+import lombok.Getter;
+
+import java.util.function.Consumer;
+
+/**
+ * Keeps the sharpest candidate of the current window of one stream. A window spans a number of frames,
+ * or milliseconds of stream time when {@code windowMillis} is set. The best candidate is released
+ * when the first candidate of the next window arrives, or by {@link #flush()} once the stream ends.
+ * Not thread-safe; use it from the serial decode stage.
+ */
+public class SharpestFrameWindow<T> {
+
+    private final long windowFrames;
+    private final long windowMillis;
+
+    @Getter
+    private final SharpnessScorer scorer = new SharpnessScorer();
+
+    private long window = Long.MIN_VALUE;
+    private T best;
+    private double bestScore;
+
+    /**
+     * @param windowMillis window length in stream time; 0 to count {@code windowFrames} instead
+     */
+    public SharpestFrameWindow(long windowFrames, long windowMillis) {
+        this.windowFrames = Math.max(1, windowFrames);
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * @param discarded gets every candidate that lost to a sharper one
+     * @return the sharpest candidate of the window just closed, or null while the window is open
+     */
+    public T offer(T candidate, long frameNumber, long timecodeMillis, double score, Consumer<T> discarded) {
+        final long candidateWindow = windowMillis > 0 ? Math.floorDiv(timecodeMillis, windowMillis)
+                : frameNumber / windowFrames;
+
+        T closed = null;
+        if (candidateWindow != window) {
+            closed = best;
+            best = null;
+            window = candidateWindow;
+        }
+        if (null == best || score > bestScore) {
+            if (null != best) {
+                discarded.accept(best);
+            }
+            best = candidate;
+            bestScore = score;
+        } else {
+            discarded.accept(candidate);
+        }
+
+        return closed;
+    }
+
+    /**
+     * Closes the current window.
+     *
+     * @return its sharpest candidate, or null if it had none
+     */
+    public T flush() {
+        final T closed = best;
+        best = null;
+        window = Long.MIN_VALUE;
+
+        return closed;
+    }
+}
@@ -0,0 +1,93 @@
+package den.tal.stream.watch.sampling;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Variance of the Laplacian over a downsampled luma plane: blurred frames have weak edges and score low.
+ * Buffers are reused between calls, so a frame is scored without allocations. Not thread-safe;
+ * keep one per stream and use it from the serial decode stage.
+ */
+public class SharpnessScorer {
+
+    /**
+     * Width of the luma plane the image is reduced to. Enough to tell motion blur from a sharp frame.
+     */
+    private static final int TARGET_WIDTH = 160;
+
+    private int[] luma = new int[0];
+
+    public double score(BufferedImage image) {
+        final int step = Math.max(1, image.getWidth() / TARGET_WIDTH);
+        final int width = image.getWidth() / step;
+        final int height = image.getHeight() / step;
+        if (width < 3 || height < 3) {
+
+            return 0;
+        }
+        if (luma.length < width * height) {
+            luma = new int[width * height];
+        }
+        fillLuma(image, step, width, height);
+
+        long sum = 0;
+        long sumOfSquares = 0;
+        for (int y = 1; y < height - 1; y++) {
+            final int row = y * width;
+            for (int x = 1; x < width - 1; x++) {
+                final int i = row + x;
+                final long laplacian = luma[i - width] + luma[i + width] + luma[i - 1] + luma[i + 1] - 4 * luma[i];
+                sum += laplacian;
+                sumOfSquares += laplacian * laplacian;
+            }
+        }
+        final double count = (double) (width - 2) * (height - 2);
+        final double mean = sum / count;
+
+        return sumOfSquares / count - mean * mean;
+    }
+
+    private void fillLuma(BufferedImage image, int step, int width, int height) {
+        switch (image.getType()) {
+            case BufferedImage.TYPE_3BYTE_BGR: {
+                final byte[] bgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                final int stride = image.getWidth() * 3;
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        final int offset = y * step * stride + x * step * 3;
+                        luma[y * width + x] = luma(bgr[offset + 2] & 0xFF, bgr[offset + 1] & 0xFF,
+                                bgr[offset] & 0xFF);
+                    }
+                }
+                break;
+            }
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB: {
+                final int[] rgb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        luma[y * width + x] = luma(rgb[y * step * image.getWidth() + x * step]);
+                    }
+                }
+                break;
+            }
+            default:
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        luma[y * width + x] = luma(image.getRGB(x * step, y * step));
+                    }
+                }
+        }
+    }
+
+    private static int luma(int rgb) {
+
+        return luma((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+    }
+
+    private static int luma(int red, int green, int blue) {
+
+        return (red * 299 + green * 587 + blue * 114) / 1000;
+    }
+}
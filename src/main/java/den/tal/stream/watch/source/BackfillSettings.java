@@ -0,0 +1,94 @@
+package den.tal.stream.watch.source;
+
+import com.amazonaws.services.kinesisvideo.model.FragmentSelector;
+import com.amazonaws.services.kinesisvideo.model.FragmentSelectorType;
+import com.amazonaws.services.kinesisvideo.model.TimestampRange;
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+/**
+ * Time range and parallelism of the backfill source.
+ */
+@Getter
+@Component
+public class BackfillSettings {
+
+    /**
+     * Start of the range, ISO-8601 such as 2021-03-01T06:00:00Z.
+     */
+    @Value("${film.watcher.backfill.from:}")
+    private String from;
+
+    /**
+     * End of the range; empty for now.
+     */
+    @Value("${film.watcher.backfill.to:}")
+    private String to;
+
+    /**
+     * producer or server: the timestamps the range applies to.
+     */
+    @Value("${film.watcher.backfill.timestamp:producer}")
+    private String timestamp;
+
+    /**
+     * Fragments per GetMediaForFragmentList request, at most 1000.
+     */
+    @Value("${film.watcher.backfill.range_fragments:100}")
+    private int rangeFragments;
+
+    /**
+     * A longer pause between two fragments starts a new range.
+     */
+    @Value("${film.watcher.backfill.max_gap_ms:1000}")
+    private long maxGapMillis;
+
+    /**
+     * Ranges read at the same time per stream.
+     */
+    @Value("${film.watcher.backfill.parallelism:4}")
+    private int parallelism;
+
+    /**
+     * @throws FilmWatcherInitException if the range is missing, malformed or empty
+     */
+    public FragmentSelector toFragmentSelector() throws FilmWatcherInitException {
+        final FragmentSelectorType type;
+        if ("producer".equalsIgnoreCase(timestamp.trim())) {
+            type = FragmentSelectorType.PRODUCER_TIMESTAMP;
+        } else if ("server".equalsIgnoreCase(timestamp.trim())) {
+            type = FragmentSelectorType.SERVER_TIMESTAMP;
+        } else {
+
+            throw new FilmWatcherInitException(String.format(
+                    "Unknown film.watcher.backfill.timestamp '%s'. Use producer or server.", timestamp));
+        }
+        final Instant start = parse("from", from);
+        final Instant end = to.isBlank() ? Instant.now() : parse("to", to);
+        if (!start.isBefore(end)) {
+
+            throw new FilmWatcherInitException(String.format("Backfill range from %s to %s is empty!", start, end));
+        }
+
+        return new FragmentSelector().withFragmentSelectorType(type).withTimestampRange(new TimestampRange()
+                .withStartTimestamp(Date.from(start)).withEndTimestamp(Date.from(end)));
+    }
+
+    private static Instant parse(String name, String value) throws FilmWatcherInitException {
+        try {
+
+            return Instant.parse(value.trim());
+        } catch (DateTimeParseException dtpex) {
+
+            throw new FilmWatcherInitException(String.format(
+                    "film.watcher.backfill.%s '%s' is not an ISO-8601 instant such as 2021-03-01T06:00:00Z.",
+                    name, value));
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package den.tal.stream.watch.source;
+
+import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitor;
+import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
+import com.amazonaws.services.kinesisvideo.AmazonKinesisVideoArchivedMedia;
+import com.amazonaws.services.kinesisvideo.model.APIName;
+import com.amazonaws.services.kinesisvideo.model.Fragment;
+import com.amazonaws.services.kinesisvideo.model.FragmentSelector;
+import com.amazonaws.services.kinesisvideo.model.FragmentSelectorType;
+import com.amazonaws.services.kinesisvideo.model.GetMediaForFragmentListRequest;
+import com.amazonaws.services.kinesisvideo.model.ListFragmentsRequest;
+import com.amazonaws.services.kinesisvideo.model.ListFragmentsResult;
+import com.amazonaws.services.kinesisvideo.model.ResourceNotFoundException;
+import den.tal.stream.KinesisVideoMediaClients;
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reads a past time range of a stream: lists its fragments with ListFragments, splits them into ranges of
+ * contiguous fragments and reads several ranges at a time with GetMediaForFragmentList, as fast as the pipeline
+ * takes the frames. Every range gets its own visitor chain and is read in order. Each reader has a pipeline lane
+ * of its own, so ranges read side by side are decoded in parallel as well.
+ */
+@Slf4j
+public class BackfillSource implements FrameSource {
+
+    /**
+     * Most fragments GetMediaForFragmentList takes.
+     */
+    static final int MAX_RANGE_FRAGMENTS = 1000;
+
+    private final String streamName;
+    private final KinesisVideoMediaClients mediaClients;
+    private final FragmentSelector selector;
+    private final Function<Fragment, Date> timestamp;
+    private final int rangeFragments;
+    private final long maxGapMillis;
+    private final int parallelism;
+    private final Function<String, MkvElementVisitor> visitorFactory;
+    private final Consumer<String> finished;
+
+    /**
+     * @param visitorFactory builds the visitor chain of a range for the lane of its reader
+     * @throws FilmWatcherInitException if the time range is not valid
+     */
+    public BackfillSource(String streamName, KinesisVideoMediaClients mediaClients, BackfillSettings settings,
+                          Function<String, MkvElementVisitor> visitorFactory) throws FilmWatcherInitException {
+
+        this(streamName, mediaClients, settings, visitorFactory, lane -> { });
+    }
+
+    /**
+     * @param finished called with the lane once a range is read or failed, before the next range on the lane
+     * @throws FilmWatcherInitException if the time range is not valid
+     */
+    public BackfillSource(String streamName, KinesisVideoMediaClients mediaClients, BackfillSettings settings,
+                          Function<String, MkvElementVisitor> visitorFactory, Consumer<String> finished)
+            throws FilmWatcherInitException {
+
+        this.streamName = streamName;
+        this.mediaClients = mediaClients;
+        this.selector = settings.toFragmentSelector();
+        this.timestamp = FragmentSelectorType.PRODUCER_TIMESTAMP.toString().equals(selector.getFragmentSelectorType())
+                ? Fragment::getProducerTimestamp : Fragment::getServerTimestamp;
+        this.rangeFragments = Math.max(1, Math.min(MAX_RANGE_FRAGMENTS, settings.getRangeFragments()));
+        this.maxGapMillis = settings.getMaxGapMillis();
+        this.parallelism = Math.max(1, settings.getParallelism());
+        this.visitorFactory = visitorFactory;
+        this.finished = finished;
+    }
+
+    @Override
+    public String getName() {
+
+        return streamName;
+    }
+
+    @Override
+    public boolean isLive() {
+
+        return false;
+    }
+
+    /**
+     * Reads all ranges and returns when the last one is done.
+     *
+     * @throws FilmWatcherInitException if the stream does not exist or a range could not be read
+     */
+    @Override
+    public void watch() throws FilmWatcherInitException {
+        final long start = System.nanoTime();
+        final List<List<String>> ranges = split(listFragments(), rangeFragments, maxGapMillis, timestamp);
+        final int readers = Math.min(parallelism, ranges.size());
+        log.info("Backfill {} from {} to {}: {} range(s) with {} reader(s).", streamName,
+                selector.getTimestampRange().getStartTimestamp().toInstant(),
+                selector.getTimestampRange().getEndTimestamp().toInstant(), ranges.size(), readers);
+        if (ranges.isEmpty()) {
+
+            return;
+        }
+
+        final AmazonKinesisVideoArchivedMedia media = mediaClients.archivedForStream(streamName,
+                APIName.GET_MEDIA_FOR_FRAGMENT_LIST);
+        final Queue<List<String>> pending = new ConcurrentLinkedQueue<>(ranges);
+        final var failed = new AtomicInteger();
+        final var counter = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(readers,
+                runnable -> new Thread(runnable, "backfill-" + streamName + "-" + counter.incrementAndGet()));
+        try {
+            final List<Future<?>> results = IntStream.range(0, readers)
+                    .mapToObj(reader -> executor.submit(() -> {
+                        final String lane = streamName + "#" + reader;
+                        List<String> range;
+                        while (!Thread.currentThread().isInterrupted() && null != (range = pending.poll())) {
+                            if (!read(media, range, lane)) {
+                                failed.incrementAndGet();
+                            }
+                        }
+                    }))
+                    .collect(Collectors.toList());
+
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException eex) {
+            log.error("Backfill reader of {} failed.", streamName, eex);
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("Backfill of {} took {} s.", streamName,
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+        if (failed.get() > 0) {
+
+            throw new FilmWatcherInitException(String.format("%d of %d range(s) of %s could not be read.",
+                    failed.get(), ranges.size(), streamName));
+        }
+    }
+
+    private List<Fragment> listFragments() throws FilmWatcherInitException {
+        final AmazonKinesisVideoArchivedMedia archive = mediaClients.archivedForStream(streamName,
+                APIName.LIST_FRAGMENTS);
+        final List<Fragment> fragments = new ArrayList<>();
+        String nextToken = null;
+        do {
+            final ListFragmentsResult page;
+            try {
+                page = archive.listFragments(new ListFragmentsRequest().withStreamName(streamName)
+                        .withFragmentSelector(selector).withNextToken(nextToken));
+            } catch (ResourceNotFoundException rnfex) {
+
+                throw new FilmWatcherInitException(rnfex);
+            }
+            fragments.addAll(page.getFragments());
+            nextToken = page.getNextToken();
+        } while (null != nextToken);
+
+        return fragments;
+    }
+
+    /**
+     * @return false if the range failed; a range stopped by an interrupt did not
+     */
+    private boolean read(AmazonKinesisVideoArchivedMedia media, List<String> range, String lane) {
+        log.debug("Read {} fragment(s) of {} from {} on lane {}.", range.size(), streamName, range.get(0), lane);
+        try (InputStream payload = media.getMediaForFragmentList(new GetMediaForFragmentListRequest()
+                .withStreamName(streamName).withFragments(range)).getPayload()) {
+
+            StreamingMkvReader.createDefault(new InputStreamParserByteSource(payload))
+                    .apply(visitorFactory.apply(lane));
+        } catch (IOException | MkvElementVisitException | RuntimeException ex) {
+            if (!Thread.currentThread().isInterrupted()) {
+                log.error("Could not read fragments {} to {} of {}.", range.get(0), range.get(range.size() - 1),
+                        streamName, ex);
+
+                return false;
+            }
+        } finally {
+            finished.accept(lane);
+        }
+
+        return true;
+    }
+
+    /**
+     * Orders the fragments by the selected timestamp and splits them into ranges of at most
+     * {@code maxFragments}, starting a new one wherever a fragment begins more than {@code maxGapMillis}
+     * after the end of the one before.
+     *
+     * @return fragment numbers of every range
+     */
+    static List<List<String>> split(List<Fragment> fragments, int maxFragments, long maxGapMillis,
+                                    Function<Fragment, Date> timestamp) {
+
+        final List<Fragment> sorted = new ArrayList<>(fragments);
+        sorted.sort(Comparator.comparing(timestamp)
+                .thenComparing(fragment -> new BigInteger(fragment.getFragmentNumber())));
+
+        final List<List<String>> ranges = new ArrayList<>();
+        List<String> range = null;
+        long endMillis = 0;
+        for (Fragment fragment : sorted) {
+            final long startMillis = timestamp.apply(fragment).getTime();
+            if (null == range || range.size() >= maxFragments || startMillis - endMillis > maxGapMillis) {
+                range = new ArrayList<>();
+                ranges.add(range);
+            }
+            range.add(fragment.getFragmentNumber());
+            final Long length = fragment.getFragmentLengthInMilliseconds();
+            endMillis = startMillis + (null == length ? 0 : length);
+        }
+
+        return ranges;
+    }
+}
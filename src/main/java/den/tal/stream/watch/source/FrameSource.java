@@ -0,0 +1,30 @@
+package den.tal.stream.watch.source;
+
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+
+/**
+ * Where MKV media comes from. Every source feeds its media through the same visitor chain into the pipeline.
+ */
+public interface FrameSource {
+
+    String getName();
+
+    /**
+     * Reads media until the source is exhausted or fails. Live sources never return normally.
+     *
+     * @throws FilmWatcherInitException if the source can't be read at all; it is not retried
+     */
+    void watch() throws FilmWatcherInitException, MkvElementVisitException;
+
+    /**
+     * Live sources are read again after an error; finished ones are done for good.
+     */
+    boolean isLive();
+
+    /**
+     * Persists the read position, if the source keeps one.
+     */
+    default void flushCheckpoint() {
+    }
+}
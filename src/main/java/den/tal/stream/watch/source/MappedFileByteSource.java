@@ -0,0 +1,101 @@
+package den.tal.stream.watch.source;
+
+import com.amazonaws.kinesisvideo.parser.ebml.ParserByteSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Feeds a file to the MKV parser straight from memory-mapped pages, without copying it through a stream buffer.
+ * Files are mapped window by window, so they may be larger than a single mapping allows.
+ */
+public class MappedFileByteSource implements ParserByteSource {
+
+    static final long DEFAULT_WINDOW_BYTES = 256L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long windowBytes;
+    private long windowStart;
+    private MappedByteBuffer window;
+
+    public MappedFileByteSource(FileChannel channel) throws IOException {
+        this(channel, DEFAULT_WINDOW_BYTES);
+    }
+
+    MappedFileByteSource(FileChannel channel, long windowBytes) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.windowBytes = windowBytes;
+        map(0);
+    }
+
+    @Override
+    public int readByte() {
+        if (!nextWindowIfExhausted()) {
+
+            return -1;
+        }
+
+        return window.get() & 0xFF;
+    }
+
+    @Override
+    public int available() {
+
+        return (int) Math.min(Integer.MAX_VALUE, size - position());
+    }
+
+    @Override
+    public boolean eof() {
+
+        return position() >= size;
+    }
+
+    @Override
+    public int readBytes(ByteBuffer dest, int numBytes) {
+        if (!nextWindowIfExhausted()) {
+
+            return -1;
+        }
+        final int count = Math.min(numBytes, Math.min(dest.remaining(), window.remaining()));
+        final ByteBuffer slice = window.slice();
+        slice.limit(count);
+        dest.put(slice);
+        window.position(window.position() + count);
+
+        return count;
+    }
+
+    private long position() {
+
+        return windowStart + window.position();
+    }
+
+    private boolean nextWindowIfExhausted() {
+        if (window.hasRemaining()) {
+
+            return true;
+        }
+        if (eof()) {
+
+            return false;
+        }
+        map(position());
+
+        return true;
+    }
+
+    private void map(long start) {
+        try {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowBytes, size - start));
+        } catch (IOException ioex) {
+
+            throw new UncheckedIOException(ioex);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package den.tal.stream.watch.source;
+
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitor;
+import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads every {@code .mkv} file of a directory through memory-mapped buffers, several files at a time.
+ * Each file gets its own visitor chain, as if it were a stream of its own.
+ */
+@Slf4j
+public class MkvDirectorySource implements FrameSource {
+
+    private final Path directory;
+    private final int parallelism;
+    private final Function<String, MkvElementVisitor> visitorFactory;
+    private final Consumer<String> finished;
+
+    /**
+     * @param visitorFactory builds the visitor chain for a file name
+     */
+    public MkvDirectorySource(Path directory, int parallelism, Function<String, MkvElementVisitor> visitorFactory) {
+        this(directory, parallelism, visitorFactory, fileName -> { });
+    }
+
+    /**
+     * @param finished called with the file name once the file is read or failed
+     */
+    public MkvDirectorySource(Path directory, int parallelism, Function<String, MkvElementVisitor> visitorFactory,
+                              Consumer<String> finished) {
+
+        this.directory = directory;
+        this.parallelism = Math.max(1, parallelism);
+        this.visitorFactory = visitorFactory;
+        this.finished = finished;
+    }
+
+    @Override
+    public String getName() {
+
+        return directory.toString();
+    }
+
+    @Override
+    public boolean isLive() {
+
+        return false;
+    }
+
+    /**
+     * Reads all files and returns when the last one is done. A broken file is logged and skipped.
+     */
+    @Override
+    public void watch() throws FilmWatcherInitException {
+        final List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(file -> file.getFileName().toString().toLowerCase().endsWith(".mkv"))
+                    .sorted().collect(Collectors.toList());
+        } catch (IOException ioex) {
+
+            throw new FilmWatcherInitException(ioex);
+        }
+        log.info("Read {} MKV file(s) from {} with {} thread(s).", files.size(), directory, parallelism);
+
+        final var counter = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                runnable -> new Thread(runnable, "mkv-file-" + counter.incrementAndGet()));
+        try {
+            final List<Future<?>> results = files.stream()
+                    .map(file -> executor.submit(() -> readFile(file)))
+                    .collect(Collectors.toList());
+
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            log.error("MKV file reader failed.", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void readFile(Path file) {
+        log.debug("Read file {}", file);
+        final String fileName = file.getFileName().toString();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            read(channel, visitorFactory.apply(fileName));
+        } catch (IOException | MkvElementVisitException | RuntimeException ex) {
+            log.error("Could not read file {}.", file, ex);
+        } finally {
+            finished.accept(fileName);
+        }
+    }
+
+    static void read(FileChannel channel, MkvElementVisitor visitor) throws IOException, MkvElementVisitException {
+        StreamingMkvReader.createDefault(new MappedFileByteSource(channel)).apply(visitor);
+    }
+}
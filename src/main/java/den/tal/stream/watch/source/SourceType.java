@@ -0,0 +1,45 @@
+package den.tal.stream.watch.source;
+
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Values of the {@code film.watcher.source.type} property.
+ */
+public enum SourceType {
+
+    /**
+     * GetMedia of every stream in {@code kinesis.video.streams}.
+     */
+    KINESIS,
+
+    /**
+     * MKV files of {@code film.watcher.source.dir}.
+     */
+    FILES,
+
+    /**
+     * ListFragments and GetMediaForFragmentList of every stream in {@code kinesis.video.streams} over the time range
+     * of {@code film.watcher.backfill}.
+     */
+    BACKFILL;
+
+    public static SourceType fromProperty(String value) throws FilmWatcherInitException {
+        try {
+
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+
+        } catch (IllegalArgumentException ex) {
+
+            throw new FilmWatcherInitException(String.format("Unknown film.watcher.source.type '%s'. Use one of: %s",
+                    value, Arrays.stream(values()).map(SourceType::toProperty).collect(Collectors.joining(", "))));
+        }
+    }
+
+    public String toProperty() {
+
+        return name().toLowerCase().replace('_', '-');
+    }
+}
@@ -0,0 +1,318 @@
+package den.tal.stream.watch.spool;
+
+import den.tal.stream.watch.upload.UploadRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of upload requests in numbered segment files. A record is its body length, the CRC32 of the body
+ * and the body: key, content type, user metadata and data. Appends go to the active segment. Once it is full, or
+ * the drainer runs out of work, the segment is sealed, and the drainer replays and deletes it. On open, records
+ * cut short by a crash are truncated and every segment left is sealed. Replayed requests keep their keys, so a
+ * segment replayed twice only overwrites its objects.
+ */
+@Slf4j
+public class FrameSpool implements Closeable {
+
+    private static final String SUFFIX = ".spool";
+    private static final int HEADER_BYTES = Integer.BYTES * 2;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+
+    /**
+     * Bytes of all segments on disk.
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final Deque<Path> sealed = new ArrayDeque<>();
+    private long nextSequence;
+    private Path activePath;
+    private FileChannel active;
+    private long activeBytes;
+    private boolean closed;
+
+    private FrameSpool(Path directory, long segmentBytes, long maxBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Recovers the segments left by the previous run.
+     */
+    public static FrameSpool open(Path directory, long segmentBytes, long maxBytes) throws IOException {
+        Files.createDirectories(directory);
+        final var spool = new FrameSpool(directory, segmentBytes, maxBytes);
+        final List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted()
+                    .collect(Collectors.toList());
+        }
+        int records = 0;
+        for (Path segment : segments) {
+            final int recovered = recover(segment);
+            if (0 == recovered) {
+                Files.delete(segment);
+                continue;
+            }
+            records += recovered;
+            spool.sealed.add(segment);
+            spool.bytes.addAndGet(Files.size(segment));
+            spool.nextSequence = sequenceOf(segment) + 1;
+        }
+        log.info("Spool {}: {} frame(s) in {} segment(s) to replay.", directory.toAbsolutePath(), records,
+                spool.sealed.size());
+
+        return spool;
+    }
+
+    public static FrameSpool open(SpoolSettings settings) throws IOException {
+
+        return open(Path.of(settings.getDir()), settings.getSegmentMegabytes() * 1024L * 1024L,
+                settings.getMaxMegabytes() * 1024L * 1024L);
+    }
+
+    /**
+     * Called by uploader and stage threads.
+     *
+     * @return false if the spool is closed or the record doesn't fit the disk budget
+     */
+    public synchronized boolean append(UploadRequest request) throws IOException {
+        final byte[] body = encode(request);
+        final int recordBytes = HEADER_BYTES + body.length;
+        if (closed || bytes.get() + recordBytes > maxBytes) {
+
+            return false;
+        }
+        if (null != active && activeBytes + recordBytes > segmentBytes) {
+            seal();
+        }
+        if (null == active) {
+            activePath = directory.resolve(String.format("%020d%s", nextSequence++, SUFFIX));
+            active = FileChannel.open(activePath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            activeBytes = 0;
+        }
+        final var crc = new CRC32();
+        crc.update(body);
+        final ByteBuffer[] record = {
+                ByteBuffer.allocate(HEADER_BYTES).putInt(body.length).putInt((int) crc.getValue()).flip(),
+                ByteBuffer.wrap(body)};
+        try {
+            while (record[1].hasRemaining()) {
+                active.write(record);
+            }
+        } catch (IOException ioex) {
+            // A disk full midway must not leave a torn record in front of the next ones.
+            active.truncate(activeBytes);
+
+            throw ioex;
+        }
+        activeBytes += recordBytes;
+        bytes.addAndGet(recordBytes);
+        notifyAll();
+
+        return true;
+    }
+
+    /**
+     * Oldest sealed segment. The active one is sealed when nothing else is left.
+     *
+     * @return null if the spool stayed empty for the timeout or is closed
+     */
+    public synchronized Path next(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long left;
+        while (!closed && sealed.isEmpty() && 0 == activeBytes) {
+            left = deadline - System.nanoTime();
+            if (left <= 0) {
+
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        if (closed) {
+
+            return null;
+        }
+        if (sealed.isEmpty()) {
+            seal();
+        }
+
+        return sealed.peekFirst();
+    }
+
+    /**
+     * Drops a segment returned by {@link #next} once all of its records are uploaded.
+     */
+    public synchronized void remove(Path segment) throws IOException {
+        final long size = Files.size(segment);
+        Files.delete(segment);
+        sealed.remove(segment);
+        bytes.addAndGet(-size);
+    }
+
+    /**
+     * Valid records of a sealed segment in append order.
+     */
+    public static List<UploadRequest> read(Path segment) throws IOException {
+        final List<UploadRequest> records = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            scan(channel, records);
+        }
+
+        return records;
+    }
+
+    public long getBytes() {
+
+        return bytes.get();
+    }
+
+    public synchronized boolean isClosed() {
+
+        return closed;
+    }
+
+    /**
+     * Syncs the active segment to disk; appends are rejected from now on.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (null != active) {
+            active.force(false);
+            active.close();
+            active = null;
+        }
+        notifyAll();
+    }
+
+    private void seal() throws IOException {
+        if (null == active) {
+
+            return;
+        }
+        active.force(false);
+        active.close();
+        active = null;
+        activeBytes = 0;
+        sealed.addLast(activePath);
+    }
+
+    /**
+     * Cuts the segment after its last valid record.
+     *
+     * @return number of valid records
+     */
+    private static int recover(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final List<UploadRequest> records = new ArrayList<>();
+            final long valid = scan(channel, records);
+            if (valid < channel.size()) {
+                log.warn("Spool segment {}: drop {} byte(s) of a torn record.", segment.getFileName(),
+                        channel.size() - valid);
+                channel.truncate(valid);
+                channel.force(false);
+            }
+
+            return records.size();
+        }
+    }
+
+    /**
+     * @return position after the last valid record
+     */
+    private static long scan(FileChannel channel, List<UploadRequest> records) throws IOException {
+        final long size = channel.size();
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        long position = 0;
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            final int length = header.getInt();
+            final int checksum = header.getInt();
+            if (length < 0 || position + HEADER_BYTES + length > size) {
+
+                break;
+            }
+            final ByteBuffer body = ByteBuffer.allocate(length);
+            channel.read(body, position + HEADER_BYTES);
+            final var crc = new CRC32();
+            crc.update(body.array());
+            if (checksum != (int) crc.getValue()) {
+
+                break;
+            }
+            records.add(decode(body.array()));
+            position += HEADER_BYTES + length;
+        }
+
+        return position;
+    }
+
+    private static byte[] encode(UploadRequest request) throws IOException {
+        final var bytes = new ByteArrayOutputStream(request.getLength() + 256);
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeUTF(request.getKey());
+            out.writeUTF(request.getContentType());
+            final Map<String, String> userMetadata = null == request.getUserMetadata() ? Map.of()
+                    : request.getUserMetadata();
+            out.writeShort(userMetadata.size());
+            for (Map.Entry<String, String> entry : userMetadata.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+            out.writeInt(request.getLength());
+            out.write(request.getData(), 0, request.getLength());
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static UploadRequest decode(byte[] body) throws IOException {
+        try (var in = new DataInputStream(new ByteArrayInputStream(body))) {
+            final String key = in.readUTF();
+            final String contentType = in.readUTF();
+            final int entries = in.readUnsignedShort();
+            final Map<String, String> userMetadata = new HashMap<>(entries);
+            for (int i = 0; i < entries; i++) {
+                userMetadata.put(in.readUTF(), in.readUTF());
+            }
+            final byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+
+            return new UploadRequest(key, data, data.length, contentType, userMetadata);
+        }
+    }
+
+    private static long sequenceOf(Path segment) {
+        final String name = segment.getFileName().toString();
+
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,121 @@
+package den.tal.stream.watch.spool;
+
+import den.tal.stream.watch.metrics.FrameMetrics;
+import den.tal.stream.watch.upload.S3Uploader;
+import den.tal.stream.watch.upload.UploadRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays sealed spool segments on its own thread, oldest first, through the uploader. While S3 keeps failing
+ * only the first frame of the segment is tried, once per retry interval.
+ */
+@Slf4j
+public class SpoolDrainer {
+
+    private final FrameSpool spool;
+    private final S3Uploader uploader;
+    private final long retryMillis;
+    private final FrameMetrics metrics;
+    private final Thread thread;
+
+    public SpoolDrainer(FrameSpool spool, S3Uploader uploader, long retryMillis, FrameMetrics metrics) {
+        this.spool = spool;
+        this.uploader = uploader;
+        this.retryMillis = retryMillis;
+        this.metrics = metrics;
+        thread = new Thread(this::run, "spool-drainer");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Interrupts the replay. Frames of an unfinished segment stay spooled and are replayed on the next start.
+     */
+    public boolean stop(long timeout, TimeUnit unit) throws InterruptedException {
+        thread.interrupt();
+        TimeUnit.NANOSECONDS.timedJoin(thread, unit.toNanos(timeout));
+
+        return !thread.isAlive();
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final Path segment = spool.next(retryMillis, TimeUnit.MILLISECONDS);
+                if (null == segment) {
+                    if (spool.isClosed()) {
+
+                        break;
+                    }
+                    continue;
+                }
+                List<UploadRequest> pending = FrameSpool.read(segment);
+                log.info("Replay {} spooled frame(s) of {}.", pending.size(), segment.getFileName());
+                while (!pending.isEmpty()) {
+                    pending = replay(pending);
+                    if (!pending.isEmpty()) {
+                        TimeUnit.MILLISECONDS.sleep(retryMillis);
+                    }
+                }
+                spool.remove(segment);
+            }
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ioex) {
+            log.error("Spool can't be read. Stop replaying; spooled frames stay on disk.", ioex);
+        }
+        log.debug("Spool drainer stopped.");
+    }
+
+    /**
+     * @return requests still to upload
+     */
+    private List<UploadRequest> replay(List<UploadRequest> pending) throws InterruptedException {
+        if (uploader.isFailing()) {
+            if (!put(uploader.upload(pending.get(0)))) {
+
+                return pending;
+            }
+            pending = pending.subList(1, pending.size());
+        }
+        final List<CompletableFuture<?>> uploads = new ArrayList<>(pending.size());
+        for (UploadRequest request : pending) {
+            uploads.add(uploader.upload(request));
+        }
+        final List<UploadRequest> failed = new ArrayList<>();
+        for (int i = 0; i < uploads.size(); i++) {
+            if (!put(uploads.get(i))) {
+                failed.add(pending.get(i));
+            }
+        }
+        if (!failed.isEmpty()) {
+            log.warn("{} of {} spooled frame(s) not replayed. Retry in {} ms.", failed.size(), pending.size(),
+                    retryMillis);
+        }
+
+        return failed;
+    }
+
+    private boolean put(CompletableFuture<?> upload) throws InterruptedException {
+        try {
+            upload.get();
+            metrics.replayed();
+
+            return true;
+        } catch (ExecutionException ex) {
+
+            return false;
+        }
+    }
+}
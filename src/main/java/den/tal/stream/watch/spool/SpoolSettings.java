@@ -0,0 +1,34 @@
+package den.tal.stream.watch.spool;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Component
+public class SpoolSettings {
+
+    @Value("${film.watcher.spool.enabled:false}")
+    private boolean enabled;
+
+    @Value("${film.watcher.spool.dir:spool}")
+    private String dir;
+
+    /**
+     * Size at which a segment is sealed and handed to the drainer.
+     */
+    @Value("${film.watcher.spool.segment_mb:16}")
+    private int segmentMegabytes;
+
+    /**
+     * Disk budget of all segments. Frames that don't fit are dropped.
+     */
+    @Value("${film.watcher.spool.max_mb:1024}")
+    private int maxMegabytes;
+
+    /**
+     * Pause of the drainer between replay attempts while S3 keeps failing.
+     */
+    @Value("${film.watcher.spool.retry_ms:5000}")
+    private long retryMillis;
+}
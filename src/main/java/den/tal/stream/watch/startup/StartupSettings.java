@@ -0,0 +1,17 @@
+package den.tal.stream.watch.startup;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Component
+public class StartupSettings {
+
+    /**
+     * Looks up the stream endpoints, opens a connection to the bucket and runs the decoder and JPEG encoder
+     * over a sample fragment in parallel while the application starts, instead of on the way of the first frame.
+     */
+    @Value("${film.watcher.startup.warm_up:true}")
+    private boolean warmUp;
+}
@@ -0,0 +1,154 @@
+package den.tal.stream.watch.startup;
+
+import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.amazonaws.kinesisvideo.parser.mkv.FrameProcessException;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadata;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.H264FrameDecoder;
+import com.amazonaws.kinesisvideo.parser.utilities.MkvTrackMetadata;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.HeadBucketRequest;
+import den.tal.stream.KinesisVideoMediaClients;
+import den.tal.stream.watch.encode.EncodeSettings;
+import den.tal.stream.watch.encode.JpegBufferPool;
+import den.tal.stream.watch.encode.JpegEncoder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Does the work the first frame would otherwise wait for, all at once while the application starts:
+ * <ul>
+ *     <li>data endpoints and GetMedia clients of the streams,</li>
+ *     <li>a connection to the bucket, kept in the pool of the S3 client,</li>
+ *     <li>the MKV reader, H.264 decoder and JPEG encoder run over a bundled sample fragment.</li>
+ * </ul>
+ * Every task is best effort: what fails is done again on the frame path.
+ */
+@Slf4j
+public class StartupWarmUp {
+
+    static final String SAMPLE = "/warmup/sample.mkv";
+
+    private final CompletableFuture<Void> done;
+
+    /**
+     * Starts every task.
+     *
+     * @param mediaClients null when no stream is read
+     */
+    public StartupWarmUp(KinesisVideoMediaClients mediaClients, List<String> streamNames, AmazonS3 s3,
+                         String bucketName, EncodeSettings encodeSettings) {
+
+        final long start = System.nanoTime();
+        final var counter = new AtomicInteger();
+        final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            final var thread = new Thread(runnable, "warm-up-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        final List<CompletableFuture<?>> tasks = new ArrayList<>();
+        if (null != mediaClients) {
+            tasks.add(mediaClients.prefetch(streamNames, executor));
+        }
+        tasks.add(CompletableFuture.runAsync(() -> connect(s3, bucketName), executor));
+        tasks.add(CompletableFuture.runAsync(() -> {
+            try {
+                log.debug("Warmed up decoder and encoder on {} frame(s).", runCodecs(encodeSettings));
+            } catch (IOException | MkvElementVisitException | RuntimeException ex) {
+                log.warn("Could not warm up decoder and encoder.", ex);
+            }
+        }, executor));
+        // Threads end once the tasks are done.
+        executor.shutdown();
+        done = CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new))
+                .whenComplete((result, ex) -> log.info("Warmed up in {} ms.",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    /**
+     * @return false if the warm-up was still running at the timeout
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            done.get(timeout, unit);
+
+            return true;
+        } catch (TimeoutException tex) {
+
+            return false;
+        } catch (ExecutionException eex) {
+            // Not thrown: every task handles its own failures.
+
+            throw new IllegalStateException(eex);
+        }
+    }
+
+    /**
+     * Any answer, even a denied one, leaves a connection in the pool and the request path of the client loaded.
+     */
+    static void connect(AmazonS3 s3, String bucketName) {
+        try {
+            s3.headBucket(new HeadBucketRequest(bucketName));
+            log.debug("Connected to bucket {}.", bucketName);
+        } catch (RuntimeException ex) {
+            log.debug("Head of bucket {} failed; its connection is warm anyway.", bucketName, ex);
+        }
+    }
+
+    /**
+     * Reads the sample fragment, decodes its frames and encodes them as JPEG with the configured settings.
+     *
+     * @return frames encoded
+     */
+    static int runCodecs(EncodeSettings encodeSettings) throws IOException, MkvElementVisitException {
+        final var decoder = new H264FrameDecoder();
+        final var pool = new JpegBufferPool(1);
+        final var encoder = new JpegEncoder(encodeSettings, pool);
+        final var encoded = new AtomicInteger();
+        final FrameVisitor.FrameProcessor processor = new FrameVisitor.FrameProcessor() {
+            @Override
+            public void process(Frame frame, MkvTrackMetadata trackMetadata,
+                                Optional<FragmentMetadata> fragmentMetadata,
+                                Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor,
+                                Optional<BigInteger> timescale, Optional<BigInteger> fragmentTimecode)
+                    throws FrameProcessException {
+
+                try {
+                    pool.release(encoder.encode(decoder.decodeH264Frame(frame, trackMetadata)));
+                    encoded.incrementAndGet();
+                } catch (IOException ioex) {
+
+                    throw new FrameProcessException("Could not encode the sample frame.", ioex);
+                }
+            }
+        };
+        try (InputStream sample = StartupWarmUp.class.getResourceAsStream(SAMPLE)) {
+            if (null == sample) {
+
+                throw new IOException("Sample fragment " + SAMPLE + " is missing!");
+            }
+            StreamingMkvReader.createDefault(new InputStreamParserByteSource(sample)).apply(FrameVisitor.create(
+                    processor, Optional.of(new FragmentMetadataVisitor.BasicMkvTagProcessor())));
+        }
+
+        return encoded.get();
+    }
+}
@@ -0,0 +1,232 @@
+package den.tal.stream.watch.upload;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concatenates the JPEGs of a stream into pack objects, so one PUT carries many frames. A pack is flushed once
+ * it holds {@code maxBytes}, once its frames span {@code maxMillis} of stream time, or {@code maxMillis} after its
+ * first frame arrived. The index of a pack has a line per frame with its offset, length, timecode, number and
+ * location, so a consumer can fetch a single frame with a ranged GET.
+ *
+ * @param <T> caller state kept with every frame until its pack is flushed
+ */
+@Slf4j
+public class FramePacker<T> {
+
+    public static final String PACK_CONTENT_TYPE = "application/octet-stream";
+    public static final String INDEX_CONTENT_TYPE = "text/tab-separated-values";
+    public static final String INDEX_HEADER = "offset\tlength\ttimecode_ms\tframe\tlocation\n";
+
+    @FunctionalInterface
+    public interface Flusher<T> {
+
+        void flush(Pack<T> pack) throws InterruptedException;
+    }
+
+    /**
+     * Frames of one stream in the order they were added.
+     */
+    public static class Pack<T> {
+
+        @Getter
+        private final String streamName;
+
+        private final long openedAtNanos = System.nanoTime();
+        private final StringBuilder index = new StringBuilder(INDEX_HEADER);
+        private final List<T> frames = new ArrayList<>();
+        private final List<Integer> offsets = new ArrayList<>();
+        private byte[] data;
+        private int length;
+        private long firstTimecodeMillis;
+
+        private Pack(String streamName, int capacity) {
+            this.streamName = streamName;
+            this.data = new byte[capacity];
+        }
+
+        public List<T> getFrames() {
+
+            return frames;
+        }
+
+        public int getLength() {
+
+            return length;
+        }
+
+        /**
+         * Where the i-th frame starts in the pack.
+         */
+        public int getOffset(int i) {
+
+            return offsets.get(i);
+        }
+
+        /**
+         * Bytes of the i-th frame.
+         */
+        public int getLength(int i) {
+
+            return (i + 1 < offsets.size() ? offsets.get(i + 1) : length) - offsets.get(i);
+        }
+
+        /**
+         * The request refers to the buffer of the pack.
+         *
+         * @param indexKey key of the index object, stored in the pack's metadata
+         */
+        public UploadRequest toRequest(String key, String indexKey) {
+            final Map<String, String> metadata = new HashMap<>();
+            metadata.put("stream", streamName);
+            metadata.put("frames", Integer.toString(frames.size()));
+            metadata.put("first_timecode_ms", Long.toString(firstTimecodeMillis));
+            metadata.put("index", indexKey);
+
+            return new UploadRequest(key, data, length, PACK_CONTENT_TYPE, metadata);
+        }
+
+        public UploadRequest toIndexRequest(String indexKey, String packKey) {
+            final byte[] bytes = index.toString().getBytes(StandardCharsets.UTF_8);
+
+            return new UploadRequest(indexKey, bytes, bytes.length, INDEX_CONTENT_TYPE, Map.of("pack", packKey));
+        }
+
+        private void add(byte[] jpeg, int jpegLength, long timecodeMillis, long frameNumber, String location,
+                         T frame) {
+
+            if (frames.isEmpty()) {
+                firstTimecodeMillis = timecodeMillis;
+            }
+            if (length + jpegLength > data.length) {
+                data = Arrays.copyOf(data, Math.max(length + jpegLength, 2 * data.length));
+            }
+            System.arraycopy(jpeg, 0, data, length, jpegLength);
+            index.append(length).append('\t').append(jpegLength).append('\t').append(timecodeMillis)
+                    .append('\t').append(frameNumber).append('\t')
+                    .append(indexField(location)).append('\n');
+
+            offsets.add(length);
+            length += jpegLength;
+            frames.add(frame);
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 256 * 1024;
+
+    /**
+     * The value as a field of a tab-separated index, empty for null.
+     */
+    public static String indexField(String value) {
+
+        return null == value ? "" : value.replaceAll("[\t\r\n]", " ");
+    }
+
+    private final int maxBytes;
+    private final long maxMillis;
+    private final Flusher<T> flusher;
+    private final Map<String, Pack<T>> open = new HashMap<>();
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param flusher called with every full or expired pack, outside of the packer's lock
+     */
+    public FramePacker(int maxBytes, long maxMillis, Flusher<T> flusher) {
+        this.maxBytes = maxBytes;
+        this.maxMillis = maxMillis;
+        this.flusher = flusher;
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "frame-packer");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        final long period = Math.max(10, maxMillis / 4);
+        timer.scheduleWithFixedDelay(this::flushExpired, period, period, TimeUnit.MILLISECONDS);
+        log.info("Frames are packed up to {} bytes or {} ms per object.", maxBytes, maxMillis);
+    }
+
+    /**
+     * Copies the JPEG into the open pack of the stream, so the caller may reuse its buffer.
+     */
+    public void add(String streamName, byte[] jpeg, int jpegLength, long timecodeMillis, long frameNumber,
+                    String location, T frame) throws InterruptedException {
+
+        Pack<T> full = null;
+        Pack<T> overflowed = null;
+        synchronized (this) {
+            Pack<T> pack = open.get(streamName);
+            if (null != pack && (pack.length + jpegLength > maxBytes
+                    || timecodeMillis - pack.firstTimecodeMillis >= maxMillis)) {
+
+                full = open.remove(streamName);
+                pack = null;
+            }
+            if (null == pack) {
+                pack = new Pack<>(streamName, Math.min(maxBytes, INITIAL_CAPACITY));
+                open.put(streamName, pack);
+            }
+            pack.add(jpeg, jpegLength, timecodeMillis, frameNumber, location, frame);
+            if (pack.length >= maxBytes) {
+                overflowed = open.remove(streamName);
+            }
+        }
+        if (null != full) {
+            flusher.flush(full);
+        }
+        if (null != overflowed) {
+            flusher.flush(overflowed);
+        }
+    }
+
+    /**
+     * Flushes every open pack and stops the timer.
+     */
+    public void close() throws InterruptedException {
+        timer.shutdown();
+        timer.awaitTermination(maxMillis, TimeUnit.MILLISECONDS);
+        final List<Pack<T>> packs;
+        synchronized (this) {
+            packs = new ArrayList<>(open.values());
+            open.clear();
+        }
+        for (Pack<T> pack : packs) {
+            flusher.flush(pack);
+        }
+    }
+
+    private void flushExpired() {
+        final long now = System.nanoTime();
+        final List<Pack<T>> expired = new ArrayList<>();
+        synchronized (this) {
+            open.values().removeIf(pack -> {
+                if (now - pack.openedAtNanos >= TimeUnit.MILLISECONDS.toNanos(maxMillis)) {
+                    expired.add(pack);
+
+                    return true;
+                }
+
+                return false;
+            });
+        }
+        try {
+            for (Pack<T> pack : expired) {
+                flusher.flush(pack);
+            }
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException rex) {
+            log.error("Could not flush expired packs.", rex);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package den.tal.stream.watch.upload;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import den.tal.stream.watch.metrics.FrameMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Puts objects to S3 on a dedicated executor with a bounded number of requests in flight.
+ * Throttling and server errors are retried with exponential backoff and full jitter.
+ */
+@Slf4j
+public class S3Uploader {
+
+    private final AmazonS3 s3;
+    private final String bucketName;
+    private final UploadSettings settings;
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+    private final FrameMetrics metrics;
+
+    /**
+     * The last finished upload exhausted its retries on throttling or server errors. Deliberately one flag for
+     * the whole uploader: such errors mean the bucket is unavailable for every stream, and are what the spool is
+     * for. An error of one object that retrying can't fix leaves the flag alone.
+     */
+    private volatile boolean failing;
+
+    public S3Uploader(AmazonS3 s3, String bucketName, UploadSettings settings, FrameMetrics metrics) {
+        this(s3, bucketName, settings, metrics, newPlatformExecutor(settings.getMaxInFlight()));
+    }
+
+    /**
+     * @param executor runs every upload, retries included, on one of its threads; shut down by {@link #shutdown}
+     */
+    public S3Uploader(AmazonS3 s3, String bucketName, UploadSettings settings, FrameMetrics metrics,
+                      ExecutorService executor) {
+
+        this.s3 = s3;
+        this.bucketName = bucketName;
+        this.settings = settings;
+        this.metrics = metrics;
+        this.inFlight = new Semaphore(settings.getMaxInFlight());
+        this.executor = executor;
+        metrics.bindUploader(this);
+    }
+
+    private static ExecutorService newPlatformExecutor(int threads) {
+        final var counter = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(threads,
+                runnable -> new Thread(runnable, "s3-upload-" + counter.incrementAndGet()));
+    }
+
+    /**
+     * Blocks while {@code max_in_flight} uploads are running, then starts the upload.
+     *
+     * @return future completed with the PUT result, or exceptionally once retries are exhausted
+     */
+    public CompletableFuture<PutObjectResult> upload(UploadRequest request) throws InterruptedException {
+        inFlight.acquire();
+        final var future = new CompletableFuture<PutObjectResult>();
+        try {
+            executor.execute(() -> {
+                try {
+                    final PutObjectResult result = putWithRetries(request);
+                    failing = false;
+                    future.complete(result);
+                } catch (Exception ex) {
+                    if (!(ex instanceof SdkClientException) || isRetryable((SdkClientException) ex)) {
+                        failing = true;
+                    }
+                    future.completeExceptionally(ex);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException rex) {
+            inFlight.release();
+            future.completeExceptionally(rex);
+        }
+
+        return future;
+    }
+
+    /**
+     * Uploads started and not finished yet, retries included.
+     */
+    public int getInFlight() {
+
+        return settings.getMaxInFlight() - inFlight.availablePermits();
+    }
+
+    /**
+     * True from an upload that failed after retrying throttling or server errors until the next one that succeeds.
+     */
+    public boolean isFailing() {
+
+        return failing;
+    }
+
+    /**
+     * Waits until no upload is running and the callbacks of the finished ones have returned.
+     *
+     * @return false if uploads were still running at the timeout
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!inFlight.tryAcquire(settings.getMaxInFlight(), timeout, unit)) {
+
+            return false;
+        }
+        inFlight.release(settings.getMaxInFlight());
+
+        return true;
+    }
+
+    /**
+     * Waits for running uploads and stops the pool.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private PutObjectResult putWithRetries(UploadRequest request) throws InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            final long start = System.nanoTime();
+            try {
+                final PutObjectResult result = s3.putObject(toPutObjectRequest(request));
+                metrics.put(start);
+
+                return result;
+            } catch (SdkClientException ex) {
+                metrics.put(start);
+                if (attempt >= settings.getMaxRetries() || !isRetryable(ex)) {
+                    log.error("Could not save {} to bucket {} after {} attempt(s).", request.getKey(), bucketName,
+                            attempt + 1, ex);
+
+                    throw ex;
+                }
+                long backoff = backoffMillis(attempt);
+                log.warn("Retry {} of {} in {} ms: {}", attempt + 1, request.getKey(), backoff, ex.getMessage());
+                TimeUnit.MILLISECONDS.sleep(backoff);
+            }
+        }
+    }
+
+    private PutObjectRequest toPutObjectRequest(UploadRequest request) {
+        var objectMetadata = new ObjectMetadata();
+        objectMetadata.setContentType(request.getContentType());
+        objectMetadata.setContentLength(request.getLength());
+        if (null != request.getUserMetadata()) {
+            request.getUserMetadata().forEach(objectMetadata::addUserMetadata);
+        }
+
+        return new PutObjectRequest(bucketName, request.getKey(),
+                new ByteArrayInputStream(request.getData(), 0, request.getLength()), objectMetadata);
+    }
+
+    long backoffMillis(int attempt) {
+        long ceiling = Math.min(settings.getMaxBackoffMillis(),
+                settings.getBaseBackoffMillis() << Math.min(attempt, 20));
+
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    static boolean isRetryable(SdkClientException ex) {
+        if (ex instanceof AmazonServiceException) {
+            final var serviceException = (AmazonServiceException) ex;
+            int status = serviceException.getStatusCode();
+            String code = serviceException.getErrorCode();
+
+            return status == 429 || status >= 500 || "SlowDown".equals(code) || "Throttling".equals(code)
+                    || "RequestTimeout".equals(code);
+        }
+
+        return ex.isRetryable();
+    }
+}
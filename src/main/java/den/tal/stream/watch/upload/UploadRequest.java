@@ -0,0 +1,25 @@
+package den.tal.stream.watch.upload;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * One object to be put to the bucket.
+ */
+@Getter
+@AllArgsConstructor
+public class UploadRequest {
+
+    private final String key;
+    private final byte[] data;
+
+    /**
+     * Bytes of {@code data} to put, starting at 0. Lets pooled buffers be uploaded without trimming.
+     */
+    private final int length;
+
+    private final String contentType;
+    private final Map<String, String> userMetadata;
+}
@@ -0,0 +1,55 @@
+package den.tal.stream.watch.upload;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Component
+public class UploadSettings {
+
+    /**
+     * First part of every object key.
+     */
+    @Value("${film.watcher.folder:source_images}")
+    private String keyRoot = "source_images";
+
+    /**
+     * Write an index object per fragment that lists where its frames were stored.
+     */
+    @Value("${film.watcher.upload.fragment_index:true}")
+    private boolean fragmentIndex;
+
+    /**
+     * PUT requests running at the same time. Callers block when the limit is reached.
+     */
+    @Value("${film.watcher.upload.max_in_flight:8}")
+    private int maxInFlight;
+
+    /**
+     * Attempts after the first one for throttled and 5xx responses.
+     */
+    @Value("${film.watcher.upload.max_retries:5}")
+    private int maxRetries;
+
+    @Value("${film.watcher.upload.backoff.base_ms:100}")
+    private long baseBackoffMillis;
+
+    @Value("${film.watcher.upload.backoff.max_ms:5000}")
+    private long maxBackoffMillis;
+
+    /**
+     * Put the frames of a stream together into pack objects with an index, see {@link FramePacker}.
+     */
+    @Value("${film.watcher.upload.pack.enabled:false}")
+    private boolean packing;
+
+    @Value("${film.watcher.upload.pack.max_bytes:8388608}")
+    private int packMaxBytes;
+
+    /**
+     * Stream time spanned by a pack, and the longest a pack stays open.
+     */
+    @Value("${film.watcher.upload.pack.max_ms:10000}")
+    private long packMaxMillis;
+}
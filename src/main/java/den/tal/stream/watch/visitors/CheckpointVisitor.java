@@ -0,0 +1,134 @@
+package den.tal.stream.watch.visitors;
+
+import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvEndMasterElement;
+import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadata;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+import com.amazonaws.services.kinesisvideo.model.StartSelector;
+import com.amazonaws.services.kinesisvideo.model.StartSelectorType;
+import den.tal.stream.watch.checkpoint.Checkpoint;
+import den.tal.stream.watch.checkpoint.CheckpointStore;
+import den.tal.stream.watch.checkpoint.FragmentTracker;
+import den.tal.stream.watch.exceptions.CheckpointException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Optional;
+
+/**
+ * Reconnects after the last fragment read to its end, but persists only fragments committed by the
+ * {@link FragmentTracker}, every N of them. A restart therefore re-reads fragments whose frames were still
+ * in the pipeline. Place it after the frame visitor, so a fragment is closed only once all its frames are handed over.
+ */
+@Slf4j
+public class CheckpointVisitor extends CompositeMkvElementVisitor {
+
+    private final FragmentMetadataVisitor fragmentMetadataVisitor;
+    private final String streamName;
+    private final FragmentTracker fragments;
+    private final CheckpointStore store;
+    private final int saveEveryNFragments;
+
+    private Checkpoint last;
+    private Checkpoint saved;
+    private long savedAtCount;
+    private String lastContinuationToken;
+
+    private CheckpointVisitor(FragmentMetadataVisitor fragmentMetadataVisitor, String streamName,
+                              FragmentTracker fragments, CheckpointStore store, int saveEveryNFragments) {
+
+        super(fragmentMetadataVisitor);
+        this.fragmentMetadataVisitor = fragmentMetadataVisitor;
+        this.streamName = streamName;
+        this.fragments = fragments;
+        this.store = store;
+        this.saveEveryNFragments = Math.max(1, saveEveryNFragments);
+    }
+
+    public static CheckpointVisitor create(String streamName, FragmentTracker fragments, CheckpointStore store,
+                                           int saveEveryNFragments) {
+
+        return new CheckpointVisitor(FragmentMetadataVisitor.create(), streamName, fragments, store,
+                saveEveryNFragments);
+    }
+
+    @Override
+    public void visit(MkvEndMasterElement endMasterElement) throws MkvElementVisitException {
+        super.visit(endMasterElement);
+        if (MkvTypeInfos.SEGMENT.equals(endMasterElement.getElementMetaData().getTypeInfo())) {
+            Optional<FragmentMetadata> fragment = fragmentMetadataVisitor.getCurrentFragmentMetadata();
+            if (fragment.isPresent()) {
+                record(new Checkpoint(fragment.get().getFragmentNumberString(), newContinuationToken()));
+            }
+        }
+    }
+
+    /**
+     * The token if it came with this fragment. The metadata visitor keeps the token of an earlier session, which
+     * points before the fragments read since; those checkpoint by fragment number.
+     */
+    private String newContinuationToken() {
+        final Optional<String> token = fragmentMetadataVisitor.getContinuationToken();
+        if (token.isEmpty() || token.get().equals(lastContinuationToken)) {
+
+            return null;
+        }
+        lastContinuationToken = token.get();
+
+        return lastContinuationToken;
+    }
+
+    private synchronized void record(Checkpoint checkpoint) {
+        last = checkpoint;
+        fragments.fragmentRead(checkpoint);
+        if (fragments.getCommittedCount() - savedAtCount >= saveEveryNFragments) {
+            flush();
+        }
+    }
+
+    /**
+     * Starts after the checkpoint handed over with a lease instead of the stored one.
+     */
+    public synchronized void resumeFrom(Checkpoint checkpoint) {
+        last = checkpoint;
+    }
+
+    /**
+     * Where the next GetMedia call should start: after the last fragment seen in this process, after the stored
+     * checkpoint on a fresh start, or NOW when nothing is known.
+     */
+    public synchronized StartSelector nextStartSelector() {
+        if (null == last) {
+            try {
+                last = store.load(streamName).orElse(null);
+                log.info("Resume stream {} from checkpoint {}", streamName, last);
+            } catch (CheckpointException cex) {
+                log.error("Could not load checkpoint of stream {}. Start from now.", streamName, cex);
+            }
+        }
+
+        return null == last ? new StartSelector().withStartSelectorType(StartSelectorType.NOW)
+                : last.toStartSelector();
+    }
+
+    /**
+     * Persists the last committed checkpoint if it changed since the previous save.
+     */
+    public synchronized void flush() {
+        final long count = fragments.getCommittedCount();
+        final Checkpoint committed = fragments.getCommitted().orElse(null);
+        if (null == committed || committed == saved) {
+
+            return;
+        }
+        try {
+            store.save(streamName, committed);
+            saved = committed;
+            savedAtCount = count;
+            log.debug("Checkpoint of stream {} saved: {}", streamName, committed);
+        } catch (CheckpointException cex) {
+            log.error("Could not save checkpoint of stream {}.", streamName, cex);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package den.tal.stream.watch.visitors;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.amazonaws.kinesisvideo.parser.mkv.FrameProcessException;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadata;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.MkvTrackMetadata;
+
+import java.math.BigInteger;
+import java.util.Optional;
+
+/**
+ * Hands every frame to several processors in order, so a single {@link FrameVisitor} parses the segment,
+ * track and tag elements once for all of them.
+ */
+public class CompositeFrameProcessor implements FrameVisitor.FrameProcessor {
+
+    private final FrameVisitor.FrameProcessor[] processors;
+
+    public CompositeFrameProcessor(FrameVisitor.FrameProcessor... processors) {
+        this.processors = processors;
+    }
+
+    @Override
+    public void process(Frame frame, MkvTrackMetadata trackMetadata, Optional<FragmentMetadata> fragmentMetadata,
+                        Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor,
+                        Optional<BigInteger> timescale, Optional<BigInteger> fragmentTimecode)
+            throws FrameProcessException {
+
+        for (FrameVisitor.FrameProcessor processor : processors) {
+            processor.process(frame, trackMetadata, fragmentMetadata, tagProcessor, timescale, fragmentTimecode);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (FrameVisitor.FrameProcessor processor : processors) {
+            processor.close();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package den.tal.stream.watch.visitors;
+
+import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvEndMasterElement;
+import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Reports every new {@code AWS_KINESISVIDEO_CONTINUATION_TOKEN}. GetMedia adds it to the last fragment of a session,
+ * so the next session can be opened right there, before the current one closes.
+ */
+public class ContinuationVisitor extends CompositeMkvElementVisitor {
+
+    private final FragmentMetadataVisitor fragmentMetadataVisitor;
+    private final Consumer<String> listener;
+    private String last;
+
+    private ContinuationVisitor(FragmentMetadataVisitor fragmentMetadataVisitor, Consumer<String> listener) {
+        super(fragmentMetadataVisitor);
+        this.fragmentMetadataVisitor = fragmentMetadataVisitor;
+        this.listener = listener;
+    }
+
+    /**
+     * @param listener called on the reader thread
+     */
+    public static ContinuationVisitor create(Consumer<String> listener) {
+
+        return new ContinuationVisitor(FragmentMetadataVisitor.create(), listener);
+    }
+
+    @Override
+    public void visit(MkvEndMasterElement endMasterElement) throws MkvElementVisitException {
+        super.visit(endMasterElement);
+        if (MkvTypeInfos.SEGMENT.equals(endMasterElement.getElementMetaData().getTypeInfo())) {
+            final Optional<String> token = fragmentMetadataVisitor.getContinuationToken();
+            if (token.isPresent() && !token.get().equals(last)) {
+                last = token.get();
+                listener.accept(last);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package den.tal.stream.watch.visitors;
+
+import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvEndMasterElement;
+import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadata;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+import den.tal.stream.watch.checkpoint.Checkpoint;
+import den.tal.stream.watch.checkpoint.FragmentTracker;
+
+import java.util.Optional;
+
+/**
+ * Closes every fragment read to its end in the {@link FragmentTracker} when checkpoints are off, so fragments still
+ * commit and their indexes are written. Place it after the frame visitor, like the {@link CheckpointVisitor}.
+ */
+public class FragmentEndVisitor extends CompositeMkvElementVisitor {
+
+    private final FragmentMetadataVisitor fragmentMetadataVisitor;
+    private final FragmentTracker fragments;
+    private String lastContinuationToken;
+
+    private FragmentEndVisitor(FragmentMetadataVisitor fragmentMetadataVisitor, FragmentTracker fragments) {
+        super(fragmentMetadataVisitor);
+        this.fragmentMetadataVisitor = fragmentMetadataVisitor;
+        this.fragments = fragments;
+    }
+
+    public static FragmentEndVisitor create(FragmentTracker fragments) {
+
+        return new FragmentEndVisitor(FragmentMetadataVisitor.create(), fragments);
+    }
+
+    @Override
+    public void visit(MkvEndMasterElement endMasterElement) throws MkvElementVisitException {
+        super.visit(endMasterElement);
+        if (MkvTypeInfos.SEGMENT.equals(endMasterElement.getElementMetaData().getTypeInfo())) {
+            final Optional<FragmentMetadata> fragment = fragmentMetadataVisitor.getCurrentFragmentMetadata();
+            if (fragment.isPresent()) {
+                fragments.fragmentRead(new Checkpoint(fragment.get().getFragmentNumberString(),
+                        newContinuationToken()));
+            }
+        }
+    }
+
+    /**
+     * A token only on the fragment it came with, as in the {@link CheckpointVisitor}.
+     */
+    private String newContinuationToken() {
+        final Optional<String> token = fragmentMetadataVisitor.getContinuationToken();
+        if (token.isEmpty() || token.get().equals(lastContinuationToken)) {
+
+            return null;
+        }
+        lastContinuationToken = token.get();
+
+        return lastContinuationToken;
+    }
+}
@@ -0,0 +1,37 @@
+package den.tal.stream.watch.visitors;
+
+import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvEndMasterElement;
+import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+import den.tal.stream.watch.metrics.StreamMetrics;
+
+/**
+ * Reports how far behind the live edge a stream is read, from the {@code AWS_KINESISVIDEO_MILLIS_BEHIND_NOW}
+ * tag GetMedia adds to every fragment.
+ */
+public class LagVisitor extends CompositeMkvElementVisitor {
+
+    private final FragmentMetadataVisitor fragmentMetadataVisitor;
+    private final StreamMetrics metrics;
+
+    private LagVisitor(FragmentMetadataVisitor fragmentMetadataVisitor, StreamMetrics metrics) {
+        super(fragmentMetadataVisitor);
+        this.fragmentMetadataVisitor = fragmentMetadataVisitor;
+        this.metrics = metrics;
+    }
+
+    public static LagVisitor create(StreamMetrics metrics) {
+
+        return new LagVisitor(FragmentMetadataVisitor.create(), metrics);
+    }
+
+    @Override
+    public void visit(MkvEndMasterElement endMasterElement) throws MkvElementVisitException {
+        super.visit(endMasterElement);
+        if (MkvTypeInfos.SEGMENT.equals(endMasterElement.getElementMetaData().getTypeInfo())) {
+            fragmentMetadataVisitor.getMillisBehindNow().ifPresent(metrics::lag);
+        }
+    }
+}
@@ -3,20 +3,59 @@ package den.tal.stream.watch.visitors;
 import com.amazonaws.kinesisvideo.parser.mkv.Frame;
 import com.amazonaws.kinesisvideo.parser.mkv.FrameProcessException;
 import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadata;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
 import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
 import com.amazonaws.kinesisvideo.parser.utilities.MkvTrackMetadata;
+import den.tal.stream.watch.processors.FragmentCache;
 import lombok.extern.slf4j.Slf4j;
 
+import java.math.BigInteger;
 import java.util.Optional;
 
+/**
+ * Logs the metadata of a stream at debug level: the fragment and track once when they change, and every
+ * {@code everyNthFrame}-th frame. Nothing is formatted or allocated while debug logging is off.
+ */
 @Slf4j
 public class LogFrameProcessor implements FrameVisitor.FrameProcessor {
 
+    private final String streamName;
+    private final int everyNthFrame;
+    private final FragmentCache fragments = new FragmentCache();
+    private MkvTrackMetadata track;
+    private long frameCounter;
+
+    /**
+     * @param everyNthFrame 0 logs no frames, only fragments and tracks
+     */
+    public LogFrameProcessor(String streamName, int everyNthFrame) {
+        this.streamName = streamName;
+        this.everyNthFrame = everyNthFrame;
+    }
+
     @Override
-    public void process(Frame frame, MkvTrackMetadata trackMetadata, Optional<FragmentMetadata> fragmentMetadata)
+    public void process(Frame frame, MkvTrackMetadata trackMetadata, Optional<FragmentMetadata> fragmentMetadata,
+                        Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor,
+                        Optional<BigInteger> timescale, Optional<BigInteger> fragmentTimecode)
             throws FrameProcessException {
 
-        log.debug("Frame: {} Track metadata: {} Fragment metadata: {} ", frame, trackMetadata,
-                fragmentMetadata.orElse(null));
+        final long frameNumber = frameCounter++;
+        if (!log.isDebugEnabled()) {
+
+            return;
+        }
+        if (fragments.update(fragmentMetadata, tagProcessor)) {
+            log.debug("Stream {} fragment: {} Location: {}", streamName, fragmentMetadata.orElse(null),
+                    fragments.getLocation());
+        }
+        if (trackMetadata != track) {
+            track = trackMetadata;
+            log.debug("Stream {} track metadata: {}", streamName, trackMetadata);
+        }
+        if (everyNthFrame > 0 && frameNumber % everyNthFrame == 0) {
+            log.debug("Stream {} frame #{}: track {}, timecode {}, key frame {}, {} bytes", streamName,
+                    frameNumber, frame.getTrackNumber(), frame.getTimeCode(), frame.isKeyFrame(),
+                    frame.getFrameData().remaining());
+        }
     }
 }
@@ -0,0 +1,31 @@
+package den.tal.stream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AppConfigTest {
+
+    private static List<String> streams(MockEnvironment environment) {
+        final var appConfig = new AppConfig();
+        ReflectionTestUtils.setField(appConfig, "videoStreamName", "traffic-guard");
+        ReflectionTestUtils.setField(appConfig, "environment", environment);
+        ReflectionTestUtils.invokeMethod(appConfig, "bindVideoStreamNames");
+
+        return appConfig.getVideoStreamNames();
+    }
+
+    @Test
+    public void streamsAreReadAsListOrCommaSeparated() {
+        assertEquals(List.of("north", "south"), streams(new MockEnvironment()
+                .withProperty("kinesis.video.streams[0]", "north")
+                .withProperty("kinesis.video.streams[1]", "south")));
+        assertEquals(List.of("north", "south"), streams(new MockEnvironment()
+                .withProperty("kinesis.video.streams", "north, south")));
+        assertEquals(List.of("traffic-guard"), streams(new MockEnvironment()));
+    }
+}
@@ -0,0 +1,176 @@
+package den.tal.stream.watch;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadata;
+import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.MkvTrackMetadata;
+import com.amazonaws.services.kinesisvideo.AbstractAmazonKinesisVideoMedia;
+import com.amazonaws.services.kinesisvideo.AmazonKinesisVideoMedia;
+import com.amazonaws.services.kinesisvideo.model.GetMediaRequest;
+import com.amazonaws.services.kinesisvideo.model.GetMediaResult;
+import com.amazonaws.services.kinesisvideo.model.StartSelector;
+import com.amazonaws.services.kinesisvideo.model.StartSelectorType;
+import den.tal.stream.KinesisVideoMediaClients;
+import den.tal.stream.watch.source.SyntheticMkv;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamWatcherTest {
+
+    private static final int FRAGMENTS = 2;
+    private static final int FRAMES_PER_FRAGMENT = 3;
+
+    private final List<StartSelector> selectors = new CopyOnWriteArrayList<>();
+    private final List<String> callers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger frames = new AtomicInteger();
+    private final AtomicReference<Thread> reader = new AtomicReference<>();
+
+    private static ReconnectSettings settings(boolean prefetch) {
+        final var settings = new ReconnectSettings();
+        ReflectionTestUtils.setField(settings, "baseBackoffMillis", 1L);
+        ReflectionTestUtils.setField(settings, "maxBackoffMillis", 5L);
+        ReflectionTestUtils.setField(settings, "prefetch", prefetch);
+
+        return settings;
+    }
+
+    private static GetMediaResult session(InputStream payload) {
+
+        return new GetMediaResult().withPayload(payload);
+    }
+
+    private static InputStream clip(String continuationToken) {
+
+        return new ByteArrayInputStream(SyntheticMkv.create(32, 24, FRAGMENTS, FRAMES_PER_FRAGMENT,
+                continuationToken));
+    }
+
+    /**
+     * Runs the watcher over scripted GetMedia sessions; the reader is interrupted after the last one.
+     */
+    @SafeVarargs
+    private void watch(boolean prefetch, Supplier<GetMediaResult>... script) throws Exception {
+        final AmazonKinesisVideoMedia media = new AbstractAmazonKinesisVideoMedia() {
+            @Override
+            public GetMediaResult getMedia(GetMediaRequest request) {
+                selectors.add(request.getStartSelector());
+                callers.add(Thread.currentThread().getName());
+                final int call = selectors.size();
+                if (call > script.length) {
+                    reader.get().interrupt();
+
+                    return session(new ByteArrayInputStream(new byte[0]));
+                }
+
+                return script[call - 1].get();
+            }
+        };
+        final var clients = new KinesisVideoMediaClients(null, null, "eu-central-1") {
+            @Override
+            public AmazonKinesisVideoMedia forStream(String streamName) {
+
+                return media;
+            }
+        };
+        final var watcher = new StreamWatcher("camera", clients, new CompositeMkvElementVisitor(
+                FrameVisitor.create(new FrameVisitor.FrameProcessor() {
+                    @Override
+                    public void process(Frame frame, MkvTrackMetadata trackMetadata,
+                                        Optional<FragmentMetadata> fragmentMetadata) {
+                        frames.incrementAndGet();
+                    }
+                })), null, settings(prefetch));
+
+        final var failure = new AtomicReference<Exception>();
+        final var thread = new Thread(() -> {
+            try {
+                watcher.watch();
+            } catch (Exception ex) {
+                failure.set(ex);
+            }
+        });
+        reader.set(thread);
+        thread.start();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertFalse(thread.isAlive());
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void reconnectsAfterTheLastFragmentReadAndBacksOffOtherwise() throws Exception {
+        watch(false,
+                () -> session(clip("token-1")),
+                () -> session(new ByteArrayInputStream(new byte[0])),
+                () -> {
+                    throw new SdkClientException("connection reset");
+                },
+                () -> session(clip(null)));
+
+        assertEquals(2 * FRAGMENTS * FRAMES_PER_FRAGMENT, frames.get());
+        assertEquals(StartSelectorType.NOW.toString(), selectors.get(0).getStartSelectorType());
+        // Checkpoints are off: every later session continues where the first one ended.
+        for (StartSelector selector : selectors.subList(1, selectors.size())) {
+            assertEquals(StartSelectorType.CONTINUATION_TOKEN.toString(), selector.getStartSelectorType());
+            assertEquals("token-1", selector.getContinuationToken());
+        }
+    }
+
+    @Test
+    public void prefetchOpensTheNextSessionBeforeTheCurrentOneEnds() throws Exception {
+        final var nextOpened = new CountDownLatch(1);
+        final var waitedForNext = new AtomicReference<Boolean>();
+        final byte[] first = SyntheticMkv.create(32, 24, FRAGMENTS, FRAMES_PER_FRAGMENT, "token-1");
+        // The first session stays open until the second one has been requested.
+        final InputStream held = new ByteArrayInputStream(first) {
+            @Override
+            public synchronized int read(byte[] buffer, int offset, int length) {
+                final int read = super.read(buffer, offset, length);
+                if (read < 0 && null == waitedForNext.get()) {
+                    try {
+                        waitedForNext.set(nextOpened.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException iex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                return read;
+            }
+
+            @Override
+            public synchronized int read() {
+                final byte[] one = new byte[1];
+
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+        };
+
+        watch(true,
+                () -> session(held),
+                () -> {
+                    nextOpened.countDown();
+
+                    return session(clip(null));
+                });
+
+        assertEquals(Boolean.TRUE, waitedForNext.get());
+        assertEquals(2 * FRAGMENTS * FRAMES_PER_FRAGMENT, frames.get());
+        assertTrue(callers.get(1).startsWith("get-media-prefetch-"));
+        assertEquals("token-1", selectors.get(1).getContinuationToken());
+    }
+}
@@ -0,0 +1,79 @@
+package den.tal.stream.watch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WatcherLifecycleTest {
+
+    private final WatcherLifecycle lifecycle = new WatcherLifecycle();
+
+    private CompletableFuture<Boolean> reader() {
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+
+                return lifecycle.awaitRunning();
+
+            } catch (InterruptedException iex) {
+
+                throw new IllegalStateException(iex);
+            }
+        });
+    }
+
+    @Test
+    public void movesOnlyAlongTheLifecycle() {
+        assertFalse(lifecycle.pause());
+        assertFalse(lifecycle.resume());
+        assertTrue(lifecycle.start());
+        assertFalse(lifecycle.start());
+        assertTrue(lifecycle.pause());
+        assertEquals(WatcherLifecycle.State.PAUSED, lifecycle.getState());
+        assertTrue(lifecycle.resume());
+        assertTrue(lifecycle.drain());
+        assertFalse(lifecycle.drain());
+        assertFalse(lifecycle.resume());
+        lifecycle.stopped();
+        assertEquals(WatcherLifecycle.State.STOPPED, lifecycle.getState());
+    }
+
+    @Test
+    public void readersWaitUntilStartedAndWhilePaused() throws Exception {
+        final var beforeStart = reader();
+        assertThrows(TimeoutException.class, () -> beforeStart.get(100, TimeUnit.MILLISECONDS));
+        lifecycle.start();
+        assertTrue(beforeStart.get(1, TimeUnit.SECONDS));
+
+        lifecycle.pause();
+        final var whilePaused = reader();
+        assertThrows(TimeoutException.class, () -> whilePaused.get(100, TimeUnit.MILLISECONDS));
+        lifecycle.resume();
+        assertTrue(whilePaused.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void drainReleasesPausedReaders() throws Exception {
+        lifecycle.start();
+        lifecycle.pause();
+        final var whilePaused = reader();
+        assertThrows(TimeoutException.class, () -> whilePaused.get(100, TimeUnit.MILLISECONDS));
+
+        assertTrue(lifecycle.drain());
+        assertFalse(whilePaused.get(1, TimeUnit.SECONDS));
+        assertFalse(lifecycle.awaitRunning());
+    }
+
+    @Test
+    public void awaitsStopWithinTimeout() throws Exception {
+        lifecycle.drain();
+        assertFalse(lifecycle.awaitStopped(50, TimeUnit.MILLISECONDS));
+
+        CompletableFuture.runAsync(lifecycle::stopped, CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS));
+        assertTrue(lifecycle.awaitStopped(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,64 @@
+package den.tal.stream.watch.checkpoint;
+
+import den.tal.stream.watch.exceptions.CheckpointException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileCheckpointStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void missingCheckpointIsEmpty() throws CheckpointException {
+        assertTrue(new FileCheckpointStore(directory).load("stream").isEmpty());
+    }
+
+    @Test
+    public void roundTrip() throws CheckpointException {
+        new FileCheckpointStore(directory).save("stream", new Checkpoint("91343852333181432", "token"));
+
+        final Checkpoint loaded = new FileCheckpointStore(directory).load("stream").orElseThrow();
+        assertEquals("91343852333181432", loaded.getFragmentNumber());
+        assertEquals("token", loaded.getContinuationToken());
+    }
+
+    @Test
+    public void roundTripWithoutToken() throws CheckpointException {
+        final var store = new FileCheckpointStore(directory);
+        store.save("stream", new Checkpoint("1", null));
+
+        assertNull(store.load("stream").orElseThrow().getContinuationToken());
+    }
+
+    @Test
+    public void saveReplacesPreviousCheckpointAndLeavesNoTemporaryFile() throws CheckpointException, IOException {
+        final var store = new FileCheckpointStore(directory);
+        store.save("stream", new Checkpoint("1", "a"));
+        store.save("stream", new Checkpoint("2", "b"));
+
+        assertEquals("2", store.load("stream").orElseThrow().getFragmentNumber());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals("stream.checkpoint", files.map(path -> path.getFileName().toString())
+                    .collect(Collectors.joining(",")));
+        }
+    }
+
+    @Test
+    public void streamsAreStoredSeparately() throws CheckpointException {
+        final var store = new FileCheckpointStore(directory);
+        store.save("camera/1", new Checkpoint("1", null));
+        store.save("camera-2", new Checkpoint("2", null));
+
+        assertEquals("1", store.load("camera/1").orElseThrow().getFragmentNumber());
+        assertEquals("2", store.load("camera-2").orElseThrow().getFragmentNumber());
+    }
+}
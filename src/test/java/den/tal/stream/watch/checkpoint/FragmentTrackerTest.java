@@ -0,0 +1,59 @@
+package den.tal.stream.watch.checkpoint;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FragmentTrackerTest {
+
+    private final FragmentTracker tracker = new FragmentTracker();
+
+    private static Checkpoint checkpoint(String fragmentNumber) {
+
+        return new Checkpoint(fragmentNumber, null);
+    }
+
+    @Test
+    public void fragmentWithoutFramesCommitsWhenRead() {
+        tracker.fragmentRead(checkpoint("1"));
+
+        assertEquals("1", tracker.getCommitted().get().getFragmentNumber());
+        assertEquals(1, tracker.getCommittedCount());
+    }
+
+    @Test
+    public void fragmentWaitsForItsFrames() {
+        final var first = tracker.frameSubmitted();
+        final var second = tracker.frameSubmitted();
+        tracker.fragmentRead(checkpoint("1"));
+
+        assertEquals(Optional.empty(), tracker.getCommitted());
+        first.done();
+        assertEquals(Optional.empty(), tracker.getCommitted());
+        second.done();
+        assertEquals("1", tracker.getCommitted().get().getFragmentNumber());
+    }
+
+    @Test
+    public void openFragmentIsNotCommitted() {
+        tracker.frameSubmitted().done();
+
+        assertEquals(Optional.empty(), tracker.getCommitted());
+    }
+
+    @Test
+    public void laterFragmentWaitsForEarlierOne() {
+        final var slow = tracker.frameSubmitted();
+        tracker.fragmentRead(checkpoint("1"));
+        final var fast = tracker.frameSubmitted();
+        tracker.fragmentRead(checkpoint("2"));
+        fast.done();
+
+        assertEquals(Optional.empty(), tracker.getCommitted());
+        slow.done();
+        assertEquals("2", tracker.getCommitted().get().getFragmentNumber());
+        assertEquals(2, tracker.getCommittedCount());
+    }
+}
@@ -0,0 +1,42 @@
+package den.tal.stream.watch.dedup;
+
+import den.tal.stream.watch.pipeline.StreamContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameDeduplicatorTest {
+
+    private final StreamContext stream = new StreamContext("test");
+    private final FrameDeduplicator deduplicator;
+
+    public FrameDeduplicatorTest() {
+        final var settings = new DedupSettings();
+        ReflectionTestUtils.setField(settings, "maxDistance", 2);
+        ReflectionTestUtils.setField(settings, "reportIntervalSeconds", 60);
+        deduplicator = new FrameDeduplicator(settings);
+    }
+
+    @Test
+    public void keepsEverythingUntilFirstUpload() {
+        assertFalse(deduplicator.isDuplicate(stream, 0L));
+        assertFalse(deduplicator.isDuplicate(stream, 0L));
+    }
+
+    @Test
+    public void comparesWithLastUploadedFrame() {
+        stream.uploaded(1, 0L);
+
+        assertTrue(deduplicator.isDuplicate(stream, 0b11L));
+        assertFalse(deduplicator.isDuplicate(stream, 0b111L));
+    }
+
+    @Test
+    public void olderUploadDoesNotReplaceNewer() {
+        stream.uploaded(5, -1L);
+        stream.uploaded(3, 0L);
+
+        assertEquals(-1L, stream.getLastUploadedHash());
+    }
+}
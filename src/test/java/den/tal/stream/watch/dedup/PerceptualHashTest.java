@@ -0,0 +1,70 @@
+package den.tal.stream.watch.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PerceptualHashTest {
+
+    private static BufferedImage gradient(int width, int height, Color from, Color to) {
+        final var image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, from, width, height / 3f, to));
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+
+        return image;
+    }
+
+    @Test
+    public void sameImageSameHash() {
+        final var image = gradient(320, 240, Color.WHITE, Color.BLACK);
+
+        assertEquals(PerceptualHash.dHash(image), PerceptualHash.dHash(image));
+    }
+
+    @Test
+    public void scaledImageHashesClose() {
+        final long small = PerceptualHash.dHash(gradient(320, 240, Color.WHITE, Color.BLACK));
+        final long large = PerceptualHash.dHash(gradient(1280, 720, Color.WHITE, Color.BLACK));
+
+        assertTrue(PerceptualHash.distance(small, large) <= 5);
+    }
+
+    @Test
+    public void smallChangeHashesClose() {
+        final var image = gradient(320, 240, Color.WHITE, Color.BLACK);
+        final long before = PerceptualHash.dHash(image);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(10, 10, 4, 4);
+        graphics.dispose();
+
+        assertTrue(PerceptualHash.distance(before, PerceptualHash.dHash(image)) <= 5);
+    }
+
+    @Test
+    public void mirroredImageHashesFar() {
+        final long forward = PerceptualHash.dHash(gradient(320, 240, Color.WHITE, Color.BLACK));
+        final long backward = PerceptualHash.dHash(gradient(320, 240, Color.BLACK, Color.WHITE));
+
+        assertTrue(PerceptualHash.distance(forward, backward) > 20);
+    }
+
+    @Test
+    public void tinyImageDoesNotFail() {
+        PerceptualHash.dHash(new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB));
+    }
+
+    @Test
+    public void distanceCountsDifferentBits() {
+        assertEquals(0, PerceptualHash.distance(0xF0L, 0xF0L));
+        assertEquals(2, PerceptualHash.distance(0b1010L, 0b0110L));
+        assertEquals(64, PerceptualHash.distance(0L, -1L));
+    }
+}
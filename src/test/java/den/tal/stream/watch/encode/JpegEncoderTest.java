@@ -0,0 +1,95 @@
+package den.tal.stream.watch.encode;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JpegEncoderTest {
+
+    private final JpegBufferPool pool = new JpegBufferPool(2);
+
+    private static EncodeSettings settings(float quality, int maxWidth, int cropWidth, int cropHeight) {
+        final var settings = new EncodeSettings();
+        ReflectionTestUtils.setField(settings, "quality", quality);
+        ReflectionTestUtils.setField(settings, "maxWidth", maxWidth);
+        ReflectionTestUtils.setField(settings, "cropX", 100);
+        ReflectionTestUtils.setField(settings, "cropY", 50);
+        ReflectionTestUtils.setField(settings, "cropWidth", cropWidth);
+        ReflectionTestUtils.setField(settings, "cropHeight", cropHeight);
+
+        return settings;
+    }
+
+    private static BufferedImage frame() {
+        final var image = new BufferedImage(1280, 720, BufferedImage.TYPE_3BYTE_BGR);
+        final Graphics2D graphics = image.createGraphics();
+        for (int x = 0; x < 1280; x += 10) {
+            graphics.setColor(new Color(x % 256, (x * 3) % 256, (x * 7) % 256));
+            graphics.fillRect(x, 0, 10, 720);
+        }
+        graphics.dispose();
+
+        return image;
+    }
+
+    private static BufferedImage read(JpegBuffer buffer) throws IOException {
+
+        return ImageIO.read(new ByteArrayInputStream(buffer.getData(), 0, buffer.getLength()));
+    }
+
+    @Test
+    public void encodesReadableJpeg() throws IOException {
+        final JpegBuffer buffer = new JpegEncoder(settings(0.85f, 0, 0, 0), pool).encode(frame());
+        final BufferedImage decoded = read(buffer);
+
+        assertEquals(1280, decoded.getWidth());
+        assertEquals(720, decoded.getHeight());
+    }
+
+    @Test
+    public void lowerQualityIsSmaller() throws IOException {
+        final int high = new JpegEncoder(settings(0.95f, 0, 0, 0), pool).encode(frame()).getLength();
+        final int low = new JpegEncoder(settings(0.3f, 0, 0, 0), pool).encode(frame()).getLength();
+
+        assertTrue(low < high);
+    }
+
+    @Test
+    public void scalesDownKeepingAspectRatio() throws IOException {
+        final var encoder = new JpegEncoder(settings(0.85f, 640, 0, 0), pool);
+        final BufferedImage decoded = read(encoder.encode(frame()));
+
+        assertEquals(640, decoded.getWidth());
+        assertEquals(360, decoded.getHeight());
+    }
+
+    @Test
+    public void cropsBeforeScaling() throws IOException {
+        final var encoder = new JpegEncoder(settings(0.85f, 400, 800, 400), pool);
+        final BufferedImage decoded = read(encoder.encode(frame()));
+
+        assertEquals(400, decoded.getWidth());
+        assertEquals(200, decoded.getHeight());
+    }
+
+    @Test
+    public void releasedBufferIsReused() throws IOException {
+        final var encoder = new JpegEncoder(settings(0.85f, 0, 0, 0), pool);
+        final JpegBuffer first = encoder.encode(frame());
+        final int length = first.getLength();
+        pool.release(first);
+        final JpegBuffer second = encoder.encode(frame());
+
+        assertSame(first, second);
+        assertEquals(length, second.getLength());
+        assertEquals(1280, read(second).getWidth());
+    }
+}
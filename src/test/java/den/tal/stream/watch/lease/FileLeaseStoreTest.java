@@ -0,0 +1,54 @@
+package den.tal.stream.watch.lease;
+
+import den.tal.stream.watch.checkpoint.Checkpoint;
+import den.tal.stream.watch.exceptions.LeaseException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileLeaseStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void unknownStreamHasFreeLease() throws LeaseException {
+        final Lease lease = new FileLeaseStore(dir).read("camera/1");
+
+        assertEquals("camera/1", lease.getStreamName());
+        assertEquals(0, lease.getVersion());
+        assertTrue(lease.isFree(0));
+    }
+
+    @Test
+    public void roundTripsEveryField() throws LeaseException {
+        final var store = new FileLeaseStore(dir);
+        final Lease written = Lease.free("camera").next("a", 1000, "b", new Checkpoint("42", "token"));
+        assertTrue(store.write(written));
+
+        final Lease read = store.read("camera");
+        assertEquals("a", read.getOwner());
+        assertEquals(1000, read.getExpiresAtMillis());
+        assertEquals(1, read.getVersion());
+        assertEquals("b", read.getPendingOwner());
+        assertEquals("42", read.getCheckpoint().getFragmentNumber());
+        assertEquals("token", read.getCheckpoint().getContinuationToken());
+        assertFalse(read.isFree(999));
+        assertTrue(read.isFree(1000));
+    }
+
+    @Test
+    public void onlyOneWriterWinsAVersion() throws LeaseException {
+        final var first = new FileLeaseStore(dir);
+        final var second = new FileLeaseStore(dir);
+        final Lease free = first.read("camera");
+
+        assertTrue(first.write(free.next("a", 1000, null, null)));
+        assertFalse(second.write(free.next("b", 1000, null, null)));
+        assertEquals("a", second.read("camera").getOwner());
+        assertTrue(second.write(second.read("camera").next("b", 2000, null, null)));
+    }
+}
@@ -0,0 +1,169 @@
+package den.tal.stream.watch.lease;
+
+import den.tal.stream.watch.checkpoint.Checkpoint;
+import den.tal.stream.watch.exceptions.LeaseException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LeaseCoordinatorTest {
+
+    private static final long LEASE_MILLIS = 1000;
+    private static final List<String> STREAMS = List.of("s1", "s2", "s3", "s4");
+
+    @TempDir
+    Path dir;
+
+    private final AtomicLong clock = new AtomicLong(10_000);
+    private LeaseStore store;
+
+    /**
+     * Reads nothing; remembers the streams it reads and where each was resumed from.
+     */
+    private static class Readers implements LeaseCoordinator.Listener {
+
+        final Set<String> reading = new TreeSet<>();
+        final Map<String, Checkpoint> resumedFrom = new HashMap<>();
+        final Map<String, Checkpoint> committed = new HashMap<>();
+
+        @Override
+        public void acquired(String streamName, Checkpoint checkpoint) {
+            assertTrue(reading.add(streamName), streamName + " read twice");
+            resumedFrom.put(streamName, checkpoint);
+        }
+
+        @Override
+        public void released(String streamName) {
+            reading.remove(streamName);
+        }
+
+        @Override
+        public Checkpoint checkpoint(String streamName) {
+
+            return committed.get(streamName);
+        }
+    }
+
+    @BeforeEach
+    public void setUp() throws LeaseException {
+        store = new FileLeaseStore(dir);
+    }
+
+    private LeaseCoordinator coordinator(String owner, Readers readers) {
+
+        return new LeaseCoordinator(store, owner, STREAMS, LEASE_MILLIS, readers, clock::get);
+    }
+
+    @Test
+    public void singleInstanceTakesEveryStream() throws LeaseException {
+        final var readers = new Readers();
+        final LeaseCoordinator a = coordinator("a", readers);
+        a.tick();
+
+        assertEquals(new TreeSet<>(STREAMS), readers.reading);
+        assertEquals(readers.reading, a.getHeld());
+    }
+
+    @Test
+    public void newInstanceGetsItsShareWithCheckpoints() throws LeaseException {
+        final var readersA = new Readers();
+        final var readersB = new Readers();
+        final LeaseCoordinator a = coordinator("a", readersA);
+        final LeaseCoordinator b = coordinator("b", readersB);
+        a.tick();
+        for (String stream : STREAMS) {
+            readersA.committed.put(stream, new Checkpoint("fragment-of-" + stream, null));
+        }
+
+        for (int i = 0; i < 4; i++) {
+            b.tick();
+            a.tick();
+            clock.addAndGet(100);
+        }
+
+        assertEquals(2, readersA.reading.size());
+        assertEquals(2, readersB.reading.size());
+        for (String stream : readersB.reading) {
+            assertFalse(readersA.reading.contains(stream));
+            assertEquals("fragment-of-" + stream, readersB.resumedFrom.get(stream).getFragmentNumber());
+        }
+
+        // Balanced: no more handovers.
+        b.tick();
+        a.tick();
+        assertEquals(2, readersA.reading.size());
+        assertEquals(2, readersB.reading.size());
+    }
+
+    @Test
+    public void streamsOfSilentInstanceAreTakenAfterExpiry() throws LeaseException {
+        final var readersA = new Readers();
+        final var readersB = new Readers();
+        final LeaseCoordinator a = coordinator("a", readersA);
+        final LeaseCoordinator b = coordinator("b", readersB);
+        a.tick();
+        readersA.committed.put("s1", new Checkpoint("7", "token-7"));
+        a.tick();
+
+        // Asks a for a handover; a never answers.
+        b.tick();
+        assertTrue(readersB.reading.isEmpty());
+
+        // a stops heartbeating.
+        clock.addAndGet(LEASE_MILLIS + 1);
+        b.tick();
+        assertEquals(new TreeSet<>(STREAMS), readersB.reading);
+        assertEquals("token-7", readersB.resumedFrom.get("s1").getContinuationToken());
+
+        // a wakes up, finds its leases taken and stops its readers.
+        a.tick();
+        assertFalse(readersA.reading.stream().anyMatch(readersB.reading::contains));
+    }
+
+    @Test
+    public void stopReleasesLeasesForOthers() throws Exception {
+        final var readersA = new Readers();
+        final var readersB = new Readers();
+        final LeaseCoordinator a = coordinator("a", readersA);
+        a.tick();
+        readersA.committed.put("s2", new Checkpoint("9", null));
+        a.stop(1, TimeUnit.SECONDS);
+
+        assertTrue(readersA.reading.isEmpty());
+        final LeaseCoordinator b = coordinator("b", readersB);
+        b.tick();
+        assertEquals(new TreeSet<>(STREAMS), readersB.reading);
+        assertEquals("9", readersB.resumedFrom.get("s2").getFragmentNumber());
+    }
+
+    @Test
+    public void heartbeatsStopBeforeLeasesAreReleased() throws Exception {
+        final var readers = new Readers();
+        final LeaseCoordinator a = coordinator("a", readers);
+        a.start(10);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (a.getHeld().size() < STREAMS.size() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+
+        assertTrue(a.stopHeartbeats(1, TimeUnit.SECONDS));
+        // Readers keep their leases while the pipeline drains.
+        assertEquals(new TreeSet<>(STREAMS), readers.reading);
+        assertEquals(readers.reading, a.getHeld());
+
+        a.stop(1, TimeUnit.SECONDS);
+        assertTrue(readers.reading.isEmpty());
+        assertTrue(a.getHeld().isEmpty());
+    }
+}
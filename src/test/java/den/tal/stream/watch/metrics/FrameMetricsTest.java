@@ -0,0 +1,132 @@
+package den.tal.stream.watch.metrics;
+
+import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
+import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
+import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import den.tal.stream.watch.WatcherLifecycle;
+import den.tal.stream.watch.dedup.DedupSettings;
+import den.tal.stream.watch.encode.EncodeSettings;
+import den.tal.stream.watch.pipeline.FramePipeline;
+import den.tal.stream.watch.pipeline.PipelineSettings;
+import den.tal.stream.watch.pipeline.StreamContext;
+import den.tal.stream.watch.processors.FilmFrameProcessor;
+import den.tal.stream.watch.sampling.NthFrameSampler;
+import den.tal.stream.watch.source.SyntheticMkv;
+import den.tal.stream.watch.upload.S3Uploader;
+import den.tal.stream.watch.upload.UploadSettings;
+import den.tal.stream.watch.visitors.LagVisitor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameMetricsTest {
+
+    private static final int FRAGMENTS = 3;
+    private static final int FRAMES_PER_FRAGMENT = 10;
+    private static final int NTH_FRAME = 5;
+    private static final int SAMPLED = FRAGMENTS * FRAMES_PER_FRAGMENT / NTH_FRAME;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CountDownLatch stored = new CountDownLatch(SAMPLED);
+    private final WatcherLifecycle lifecycle = new WatcherLifecycle();
+    private FrameMetrics metrics;
+    private S3Uploader uploader;
+    private FramePipeline pipeline;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        final var pipelineSettings = new PipelineSettings();
+        ReflectionTestUtils.setField(pipelineSettings, "backpressure", "block");
+        ReflectionTestUtils.setField(pipelineSettings, "decodeThreads", 1);
+        ReflectionTestUtils.setField(pipelineSettings, "decodeQueue", 4);
+        ReflectionTestUtils.setField(pipelineSettings, "encodeThreads", 1);
+        ReflectionTestUtils.setField(pipelineSettings, "encodeQueue", 4);
+        ReflectionTestUtils.setField(pipelineSettings, "uploadThreads", 1);
+        ReflectionTestUtils.setField(pipelineSettings, "uploadQueue", 4);
+        ReflectionTestUtils.setField(pipelineSettings, "drainTimeoutSeconds", 5);
+
+        final var encodeSettings = new EncodeSettings();
+        ReflectionTestUtils.setField(encodeSettings, "quality", 0.8f);
+        ReflectionTestUtils.setField(encodeSettings, "bufferPoolSize", 4);
+
+        final var uploadSettings = new UploadSettings();
+        ReflectionTestUtils.setField(uploadSettings, "maxInFlight", 2);
+
+        metrics = new FrameMetrics(registry);
+        uploader = new S3Uploader(new AbstractAmazonS3() {
+            @Override
+            public PutObjectResult putObject(PutObjectRequest request) {
+                stored.countDown();
+
+                return new PutObjectResult();
+            }
+        }, "bucket", uploadSettings, metrics);
+        pipeline = new FramePipeline(pipelineSettings, new DedupSettings(), encodeSettings, uploader, metrics);
+        lifecycle.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        pipeline.shutdown();
+        uploader.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void countsEveryStepOfTheFramePath() throws Exception {
+        final StreamMetrics streamMetrics = metrics.forStream("camera");
+        final var processor = new FilmFrameProcessor(new StreamContext("camera"), new NthFrameSampler(NTH_FRAME),
+                lifecycle, pipeline, streamMetrics);
+
+        StreamingMkvReader.createDefault(new InputStreamParserByteSource(new ByteArrayInputStream(
+                SyntheticMkv.create(64, 48, FRAGMENTS, FRAMES_PER_FRAGMENT)))).apply(new CompositeMkvElementVisitor(
+                        FrameVisitor.create(processor, Optional.of(new FragmentMetadataVisitor.BasicMkvTagProcessor())),
+                        LagVisitor.create(streamMetrics)));
+
+        assertTrue(stored.await(10, TimeUnit.SECONDS));
+        pipeline.shutdown();
+        uploader.shutdown(5, TimeUnit.SECONDS);
+
+        assertEquals(FRAGMENTS * FRAMES_PER_FRAGMENT,
+                registry.get("film.watcher.frames.read").tag("stream", "camera").counter().count());
+        assertEquals(SAMPLED, registry.get("film.watcher.frames.sampled").tag("stream", "camera").counter().count());
+        assertEquals(SAMPLED, registry.get("film.watcher.frames.decoded").counter().count());
+        assertEquals(SAMPLED, registry.get("film.watcher.frames.encoded").counter().count());
+        assertEquals(SAMPLED, registry.get("film.watcher.frames.uploaded").counter().count());
+        for (String stage : new String[] {"decode", "encode", "s3"}) {
+            assertEquals(SAMPLED, registry.get("film.watcher.stage.latency").tag("stage", stage).timer().count());
+        }
+        for (String stage : new String[] {"decode", "encode", "upload"}) {
+            assertEquals(0, registry.get("film.watcher.stage.queue").tag("stage", stage).gauge().value());
+            assertEquals(0, registry.get("film.watcher.frames.dropped").tag("stage", stage)
+                    .tag("reason", "backpressure").functionCounter().count());
+        }
+        // The last fragment of the clip is live.
+        assertEquals(0, registry.get("film.watcher.stream.lag").tag("stream", "camera").gauge().value());
+        assertTrue(registry.get("film.watcher.startup.first_upload").gauge().value() > 0);
+    }
+
+    @Test
+    public void lagIsUnknownUntilReported() {
+        final StreamMetrics streamMetrics = metrics.forStream("camera");
+
+        assertTrue(Double.isNaN(registry.get("film.watcher.stream.lag").tag("stream", "camera").gauge().value()));
+        assertTrue(Double.isNaN(registry.get("film.watcher.startup.first_upload").gauge().value()));
+        streamMetrics.lag(1500);
+        assertEquals(1500, registry.get("film.watcher.stream.lag").tag("stream", "camera").gauge().value());
+        assertSame(streamMetrics, metrics.forStream("camera"));
+    }
+}
@@ -0,0 +1,65 @@
+package den.tal.stream.watch.pipeline;
+
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutionModeTest {
+
+    @Test
+    public void parsesProperty() throws FilmWatcherInitException {
+        assertSame(ExecutionMode.PLATFORM, ExecutionMode.fromProperty("platform"));
+        assertSame(ExecutionMode.VIRTUAL, ExecutionMode.fromProperty(" VIRTUAL "));
+        assertThrows(FilmWatcherInitException.class, () -> ExecutionMode.fromProperty("green"));
+    }
+
+    @Test
+    public void platformPoolIsBoundedAndNamed() throws Exception {
+        final ExecutorService executor = ExecutionMode.PLATFORM.newExecutor("io-", 2, true);
+        final Set<String> names = new HashSet<>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                final Future<Thread> thread = executor.submit(Thread::currentThread);
+                assertTrue(thread.get().isDaemon());
+                names.add(thread.get().getName());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(Set.of("io-1", "io-2").containsAll(names));
+    }
+
+    @Test
+    public void virtualThreadPerTaskOnJava21() throws Exception {
+        if (Runtime.version().feature() < 21) {
+            assertThrows(FilmWatcherInitException.class, () -> ExecutionMode.VIRTUAL.newExecutor("io-", 2, false));
+
+            return;
+        }
+        final ExecutorService executor = ExecutionMode.VIRTUAL.newExecutor("io-", 2, false);
+        final Set<Thread> threads = new HashSet<>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                threads.add(executor.submit(Thread::currentThread).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(8, threads.size());
+        for (Thread thread : threads) {
+            assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread));
+            assertTrue(thread.getName().startsWith("io-"));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package den.tal.stream.watch.pipeline;
+
+import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
+import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
+import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import den.tal.stream.watch.WatcherLifecycle;
+import den.tal.stream.watch.dedup.DedupSettings;
+import den.tal.stream.watch.encode.EncodeSettings;
+import den.tal.stream.watch.metrics.FrameMetrics;
+import den.tal.stream.watch.processors.FilmFrameProcessor;
+import den.tal.stream.watch.sampling.NthFrameSampler;
+import den.tal.stream.watch.sampling.SharpestFrameWindow;
+import den.tal.stream.watch.source.SyntheticMkv;
+import den.tal.stream.watch.upload.S3Uploader;
+import den.tal.stream.watch.upload.UploadSettings;
+import den.tal.stream.watch.visitors.FragmentEndVisitor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FramePipelineTest {
+
+    private static final int FRAGMENTS = 3;
+    private static final int FRAMES_PER_FRAGMENT = 10;
+    private static final int NTH_FRAME = 5;
+    private static final long FIRST_FRAGMENT = 91343852333181432L;
+
+    /**
+     * SyntheticMkv starts at 1600000000000 ms, 2020-09-13T12:26:40Z.
+     */
+    private static final String PARTITION = "frames/2020/09/13/12/camera/";
+
+    private final Map<String, byte[]> bucket = new ConcurrentHashMap<>();
+
+    private void read(boolean packing) throws Exception {
+        read(packing, NTH_FRAME, null, false);
+    }
+
+    /**
+     * Reads the clip through a new pipeline into the bucket.
+     *
+     * @param window sharpest window of the stream or null
+     * @param finish tell the pipeline the stream has ended before shutting it down
+     */
+    private void read(boolean packing, int nthFrame, SharpestFrameWindow<DecodedFrame> window, boolean finish)
+            throws Exception {
+
+        final var pipelineSettings = new PipelineSettings();
+        ReflectionTestUtils.setField(pipelineSettings, "backpressure", "block");
+        ReflectionTestUtils.setField(pipelineSettings, "decodeThreads", 1);
+        ReflectionTestUtils.setField(pipelineSettings, "decodeQueue", 4);
+        ReflectionTestUtils.setField(pipelineSettings, "encodeThreads", 2);
+        ReflectionTestUtils.setField(pipelineSettings, "encodeQueue", 4);
+        ReflectionTestUtils.setField(pipelineSettings, "uploadThreads", 1);
+        ReflectionTestUtils.setField(pipelineSettings, "uploadQueue", 4);
+        ReflectionTestUtils.setField(pipelineSettings, "drainTimeoutSeconds", 5);
+        final var encodeSettings = new EncodeSettings();
+        ReflectionTestUtils.setField(encodeSettings, "quality", 0.8f);
+        ReflectionTestUtils.setField(encodeSettings, "bufferPoolSize", 4);
+        final var uploadSettings = new UploadSettings();
+        ReflectionTestUtils.setField(uploadSettings, "keyRoot", "frames");
+        ReflectionTestUtils.setField(uploadSettings, "fragmentIndex", true);
+        ReflectionTestUtils.setField(uploadSettings, "maxInFlight", 2);
+        ReflectionTestUtils.setField(uploadSettings, "packing", packing);
+        ReflectionTestUtils.setField(uploadSettings, "packMaxBytes", 1 << 20);
+        ReflectionTestUtils.setField(uploadSettings, "packMaxMillis", 60_000L);
+
+        final var metrics = new FrameMetrics(new SimpleMeterRegistry());
+        final var uploader = new S3Uploader(new AbstractAmazonS3() {
+            @Override
+            public PutObjectResult putObject(PutObjectRequest request) {
+                try {
+                    bucket.put(request.getKey(), request.getInputStream().readAllBytes());
+                } catch (IOException ioex) {
+
+                    throw new UncheckedIOException(ioex);
+                }
+
+                return new PutObjectResult();
+            }
+        }, "bucket", uploadSettings, metrics);
+        final var pipeline = new FramePipeline(pipelineSettings, new DedupSettings(), encodeSettings, uploadSettings,
+                uploader, null, metrics);
+
+        final var lifecycle = new WatcherLifecycle();
+        lifecycle.start();
+        final StreamContext stream = pipeline.attach(new StreamContext("camera", window));
+        StreamingMkvReader.createDefault(new InputStreamParserByteSource(new ByteArrayInputStream(
+                SyntheticMkv.create(64, 48, FRAGMENTS, FRAMES_PER_FRAGMENT)))).apply(new CompositeMkvElementVisitor(
+                        FrameVisitor.create(new FilmFrameProcessor(stream, new NthFrameSampler(nthFrame), lifecycle,
+                                pipeline, metrics.forStream("camera")),
+                                Optional.of(new FragmentMetadataVisitor.BasicMkvTagProcessor())),
+                        FragmentEndVisitor.create(stream.getFragments())));
+
+        if (finish) {
+            pipeline.finish("camera");
+        }
+        pipeline.shutdown();
+        assertTrue(uploader.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    private List<String[]> index(long fragment) {
+        final byte[] index = bucket.get(PARTITION + fragment + "/index.tsv");
+        assertNotNull(index, "index of fragment " + fragment);
+        final String[] lines = new String(index, StandardCharsets.UTF_8).split("\n");
+        assertEquals(FramePipeline.FRAGMENT_INDEX_HEADER, lines[0] + "\n");
+
+        return Arrays.stream(lines).skip(1).map(line -> line.split("\t", -1)).collect(Collectors.toList());
+    }
+
+    @Test
+    public void keysFollowTheFrameAndEveryFragmentIsIndexed() throws Exception {
+        read(false);
+
+        final Set<String> keys = new TreeSet<>(bucket.keySet());
+        final int sampledPerFragment = FRAMES_PER_FRAGMENT / NTH_FRAME;
+        assertEquals(FRAGMENTS * (sampledPerFragment + 1), keys.size());
+        for (int fragment = 0; fragment < FRAGMENTS; fragment++) {
+            final List<String[]> lines = index(FIRST_FRAGMENT + fragment);
+            assertEquals(sampledPerFragment, lines.size());
+            for (String[] line : lines) {
+                final long timecode = Long.parseLong(line[3]);
+                assertEquals(PARTITION + (FIRST_FRAGMENT + fragment) + "/" + timecode + ".jpg", line[0]);
+                assertEquals("0", line[1]);
+                assertEquals(bucket.get(line[0]).length, Integer.parseInt(line[2]));
+            }
+        }
+
+        // Reading the same media again overwrites the same objects.
+        read(false);
+        assertEquals(keys, new TreeSet<>(bucket.keySet()));
+    }
+
+    @Test
+    public void packedFramesAreIndexedByRange() throws Exception {
+        read(true);
+
+        final List<String> packs = bucket.keySet().stream().filter(key -> key.endsWith(".pack"))
+                .collect(Collectors.toList());
+        assertEquals(1, packs.size());
+        assertTrue(packs.get(0).startsWith(PARTITION + FIRST_FRAGMENT + "/"));
+        final byte[] pack = bucket.get(packs.get(0));
+        for (int fragment = 0; fragment < FRAGMENTS; fragment++) {
+            for (String[] line : index(FIRST_FRAGMENT + fragment)) {
+                assertEquals(packs.get(0), line[0]);
+                final int offset = Integer.parseInt(line[1]);
+                assertEquals((byte) 0xFF, pack[offset]);
+                assertEquals((byte) 0xD8, pack[offset + 1]);
+                assertEquals((byte) 0xD9, pack[offset + Integer.parseInt(line[2]) - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void lastSharpestWindowIsPassedOn() throws Exception {
+        for (boolean finish : new boolean[] {true, false}) {
+            bucket.clear();
+            // 30 frames in windows of 4: the last window holds frames 28 and 29 when the clip ends.
+            read(false, 1, new SharpestFrameWindow<>(4, 0), finish);
+
+            final int windows = (FRAGMENTS * FRAMES_PER_FRAGMENT + 3) / 4;
+            assertEquals(windows, bucket.keySet().stream().filter(key -> key.endsWith(".jpg")).count(),
+                    "finish " + finish);
+            // Its fragment commits, so the index of the last fragment is written.
+            final List<String[]> lines = index(FIRST_FRAGMENT + FRAGMENTS - 1);
+            assertEquals(3, lines.size());
+            assertTrue(lines.stream().anyMatch(line -> Long.parseLong(line[4]) >= 28));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package den.tal.stream.watch.pipeline;
+
+import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadata;
+import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.H264FrameDecoder;
+import com.amazonaws.kinesisvideo.parser.utilities.MkvTrackMetadata;
+import den.tal.stream.watch.source.SyntheticMkv;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GopDecoderTest {
+
+    private static final int GOPS = 6;
+    private static final int FRAMES_PER_GOP = 4;
+
+    private final Map<String, List<DecodedFrame>> passed = new ConcurrentHashMap<>();
+    private final List<FrameTask> discarded = new CopyOnWriteArrayList<>();
+    private final Set<String> workers = ConcurrentHashMap.newKeySet();
+
+    private static List<FrameTask> tasks(StreamContext stream) throws Exception {
+
+        return tasks(stream, 1);
+    }
+
+    /**
+     * @param nthFrame every nth frame is sampled, the others are references
+     */
+    private static List<FrameTask> tasks(StreamContext stream, int nthFrame) throws Exception {
+        final List<FrameTask> tasks = new ArrayList<>();
+        final byte[] mkv = SyntheticMkv.create(64, 48, GOPS, FRAMES_PER_GOP);
+        StreamingMkvReader.createDefault(new InputStreamParserByteSource(new ByteArrayInputStream(mkv)))
+                .apply(FrameVisitor.create(new FrameVisitor.FrameProcessor() {
+                    @Override
+                    public void process(Frame frame, MkvTrackMetadata trackMetadata,
+                                        Optional<FragmentMetadata> fragmentMetadata) {
+
+                        final int number = tasks.size();
+                        tasks.add(0 == number % nthFrame
+                                ? FrameTask.detach(stream, number, 40L * number, frame, trackMetadata, null, null,
+                                        40L * number, stream.getFragments().frameSubmitted())
+                                : FrameTask.reference(stream, number, 40L * number, frame, trackMetadata));
+                    }
+                }));
+
+        return tasks;
+    }
+
+    private GopDecoder decoder(int threads) {
+
+        return new GopDecoder(threads, 2 * threads, decoded -> {
+            workers.add(Thread.currentThread().getName());
+            passed.computeIfAbsent(decoded.getTask().getStream().getStreamName(), key -> new ArrayList<>())
+                    .add(decoded);
+        }, start -> { }, discarded::add);
+    }
+
+    @Test
+    public void decodesGopsInParallelAndPassesThemOnInStreamOrder() throws Exception {
+        final var north = new StreamContext("north");
+        final var south = new StreamContext("south");
+        final List<FrameTask> northTasks = tasks(north);
+        final List<FrameTask> southTasks = tasks(south);
+
+        final GopDecoder decoder = decoder(4);
+        for (int i = 0; i < northTasks.size(); i++) {
+            decoder.add(northTasks.get(i));
+            decoder.add(southTasks.get(i));
+        }
+        assertTrue(decoder.shutdown(10, TimeUnit.SECONDS));
+
+        assertTrue(discarded.isEmpty());
+        assertEquals(0, decoder.getInFlight());
+        final var reference = new H264FrameDecoder();
+        for (List<FrameTask> tasks : List.of(northTasks, southTasks)) {
+            final List<DecodedFrame> frames = passed.get(tasks.get(0).getStream().getStreamName());
+            assertEquals(GOPS * FRAMES_PER_GOP, frames.size());
+            for (int i = 0; i < frames.size(); i++) {
+                final FrameTask task = tasks.get(i);
+                assertSame(task, frames.get(i).getTask());
+                // Every GOP starts at a key frame, so decoding it alone gives the same picture.
+                assertImagesEqual(reference.decodeH264Frame(task.getFrame(), task.getTrackMetadata()),
+                        frames.get(i).getImage());
+            }
+        }
+        assertTrue(workers.stream().allMatch(name -> name.startsWith("stage-decode-gop-")));
+    }
+
+    @Test
+    public void discardsFramesThatFailToDecode() throws Exception {
+        final var stream = new StreamContext("north");
+        final List<FrameTask> tasks = tasks(stream);
+        final FrameTask good = tasks.get(0);
+        // No picture size: the decoder can't allocate the image.
+        final FrameTask broken = new FrameTask(stream, 1, 40, tasks.get(1).getFrame(),
+                MkvTrackMetadata.builder().trackNumber(BigInteger.ONE)
+                        .codecPrivateData(good.getTrackMetadata().getCodecPrivateData()).build(),
+                null, null, 40, stream.getFragments().frameSubmitted());
+
+        final GopDecoder decoder = decoder(2);
+        decoder.add(good);
+        decoder.add(broken);
+        assertTrue(decoder.shutdown(10, TimeUnit.SECONDS));
+
+        assertEquals(List.of(broken), discarded);
+        assertEquals(1, decoder.getFailed());
+        assertEquals(1, passed.get("north").size());
+        assertSame(good, passed.get("north").get(0).getTask());
+    }
+
+    @Test
+    public void decodesReferenceFramesButPassesOnlySampledOnes() throws Exception {
+        final var stream = new StreamContext("north");
+        // Every third frame: most sampled frames are P-frames that refer to frames which are not sampled.
+        final List<FrameTask> tasks = tasks(stream, 3);
+
+        final GopDecoder decoder = decoder(4);
+        for (FrameTask task : tasks) {
+            decoder.add(task);
+        }
+        assertTrue(decoder.shutdown(10, TimeUnit.SECONDS));
+
+        assertTrue(discarded.isEmpty());
+        final List<DecodedFrame> frames = passed.get("north");
+        final var reference = new H264FrameDecoder();
+        int next = 0;
+        for (FrameTask task : tasks) {
+            final BufferedImage image = reference.decodeH264Frame(task.getFrame(), task.getTrackMetadata());
+            if (task.isSampled()) {
+                assertSame(task, frames.get(next).getTask());
+                // Same picture as decoding the whole stream in order.
+                assertImagesEqual(image, frames.get(next++).getImage());
+            }
+        }
+        assertEquals(next, frames.size());
+        assertEquals((GOPS * FRAMES_PER_GOP + 2) / 3, frames.size());
+    }
+
+    private static void assertImagesEqual(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertArrayEquals(expected.getRGB(0, 0, expected.getWidth(), expected.getHeight(), null, 0,
+                expected.getWidth()), actual.getRGB(0, 0, actual.getWidth(), actual.getHeight(), null, 0,
+                actual.getWidth()));
+    }
+}
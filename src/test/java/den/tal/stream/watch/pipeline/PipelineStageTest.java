@@ -0,0 +1,182 @@
+package den.tal.stream.watch.pipeline;
+
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PipelineStageTest {
+
+    private final List<String> handled = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch firstStarted = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private PipelineStage<String> stage;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        if (null != stage) {
+            stage.shutdown();
+            stage.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * The single worker parks on the first item, so everything submitted afterwards stays queued.
+     */
+    private PipelineStage<String> blockedStage(int capacity, boolean serial, BackpressurePolicy policy)
+            throws InterruptedException {
+
+        stage = new PipelineStage<>("test", capacity, 1, serial, policy, () -> item -> {
+            handled.add(item);
+            if (firstStarted.getCount() > 0) {
+                firstStarted.countDown();
+                release.await();
+            }
+        });
+        assertTrue(stage.submit("a", "a1"));
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+        return stage;
+    }
+
+    private void drain() throws InterruptedException {
+        release.countDown();
+        stage.shutdown();
+        assertTrue(stage.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void dropOldestEvictsHeadOfLane() throws InterruptedException {
+        blockedStage(2, true, BackpressurePolicy.DROP_OLDEST);
+        assertTrue(stage.submit("a", "a2"));
+        assertTrue(stage.submit("a", "a3"));
+        assertTrue(stage.submit("a", "a4"));
+        drain();
+
+        assertEquals(List.of("a1", "a3", "a4"), handled);
+    }
+
+    @Test
+    public void dropNewestRejectsWhenLaneIsFull() throws InterruptedException {
+        blockedStage(2, true, BackpressurePolicy.DROP_NEWEST);
+        assertTrue(stage.submit("a", "a2"));
+        assertTrue(stage.submit("a", "a3"));
+        assertFalse(stage.submit("a", "a4"));
+        drain();
+
+        assertEquals(List.of("a1", "a2", "a3"), handled);
+    }
+
+    @Test
+    public void blockWaitsForFreeSpace() throws InterruptedException {
+        blockedStage(1, true, BackpressurePolicy.BLOCK);
+        assertTrue(stage.submit("a", "a2"));
+        final var submitted = new AtomicBoolean();
+        final var producer = new Thread(() -> {
+            try {
+                submitted.set(stage.submit("a", "a3"));
+            } catch (InterruptedException iex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive(), "Producer must wait while the lane is full");
+
+        release.countDown();
+        producer.join(5000);
+        assertTrue(submitted.get());
+        drain();
+
+        assertEquals(List.of("a1", "a2", "a3"), handled);
+    }
+
+    @Test
+    public void lanesAreTakenRoundRobin() throws InterruptedException {
+        blockedStage(8, false, BackpressurePolicy.BLOCK);
+        for (int i = 2; i <= 5; i++) {
+            stage.submit("a", "a" + i);
+        }
+        stage.submit("b", "b1");
+        stage.submit("b", "b2");
+        drain();
+
+        assertEquals(List.of("a1", "a2", "b1", "a3", "b2", "a4", "a5"), handled);
+    }
+
+    @Test
+    public void serialLaneKeepsOrderAcrossWorkers() throws InterruptedException {
+        final var active = new AtomicInteger();
+        final var overlapped = new AtomicBoolean();
+        stage = new PipelineStage<>("serial", 100, 4, true, BackpressurePolicy.BLOCK, () -> item -> {
+            if (active.incrementAndGet() > 1) {
+                overlapped.set(true);
+            }
+            handled.add(item);
+            active.decrementAndGet();
+        });
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add("a" + i);
+            stage.submit("a", "a" + i);
+        }
+        drain();
+
+        assertFalse(overlapped.get(), "One lane must never be handled by two workers at once");
+        assertEquals(expected, handled);
+    }
+
+    @Test
+    public void shutdownDrainsQueuedItemsAndRejectsNewOnes() throws InterruptedException {
+        blockedStage(10, true, BackpressurePolicy.BLOCK);
+        stage.submit("a", "a2");
+        stage.submit("b", "b1");
+        stage.shutdown();
+        assertFalse(stage.submit("a", "a3"));
+        release.countDown();
+        assertTrue(stage.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(3, handled.size());
+        assertEquals(0, stage.getQueueDepth());
+    }
+
+    @Test
+    public void unknownBackpressureNamesPropertyAndValues() {
+        final var ex = assertThrows(FilmWatcherInitException.class, () -> BackpressurePolicy.fromProperty("drop"));
+
+        assertTrue(ex.getMessage().contains("film.watcher.pipeline.backpressure"));
+        assertTrue(ex.getMessage().contains("block, drop-oldest, drop-newest"));
+    }
+
+    @Test
+    public void droppedAndFailedItemsAreDiscarded() throws InterruptedException {
+        final List<String> discarded = Collections.synchronizedList(new ArrayList<>());
+        stage = new PipelineStage<>("test", 1, 1, true, BackpressurePolicy.DROP_NEWEST, () -> item -> {
+            if (firstStarted.getCount() > 0) {
+                firstStarted.countDown();
+                release.await();
+            }
+            if ("bad".equals(item)) {
+
+                throw new IllegalStateException(item);
+            }
+        }, discarded::add);
+        assertTrue(stage.submit("a", "a1"));
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        assertTrue(stage.submit("a", "bad"));
+        assertFalse(stage.submit("a", "a3"));
+        drain();
+
+        assertEquals(List.of("a3", "bad"), discarded);
+    }
+}
@@ -0,0 +1,100 @@
+package den.tal.stream.watch.preview;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PreviewServerTest {
+
+    private final PreviewChannel channel = new PreviewChannel(1);
+    private PreviewServer server;
+
+    @AfterEach
+    public void stop() {
+        if (null != server) {
+            server.stop();
+        }
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        final var connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path)
+                .openConnection();
+        connection.setReadTimeout(5000);
+
+        return connection;
+    }
+
+    @Test
+    public void keepsOneFrameAnIntervalAndNeverAnOlderOne() {
+        channel.offer("north", new byte[] {1, 2, 3, 4}, 2, 1000);
+        channel.offer("north", new byte[] {5, 6}, 2, 1040);
+        assertArrayEquals(new byte[] {1, 2}, channel.latest("north").getJpeg());
+
+        final var unthrottled = new PreviewChannel(Integer.MAX_VALUE);
+        unthrottled.offer("north", new byte[] {1}, 1, 1000);
+        unthrottled.offer("north", new byte[] {2}, 1, 960);
+        assertArrayEquals(new byte[] {1}, unthrottled.latest("north").getJpeg());
+        unthrottled.offer("north", new byte[] {3}, 1, 1040);
+        assertArrayEquals(new byte[] {3}, unthrottled.latest("north").getJpeg());
+        assertNull(unthrottled.latest("south"));
+    }
+
+    @Test
+    public void servesLatestFrameAndStreamList() throws Exception {
+        server = new PreviewServer(channel, 0, 1);
+        server.start();
+        final byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, 7, (byte) 0xFF, (byte) 0xD9};
+        channel.offer("north", jpeg, jpeg.length, 1000);
+
+        final HttpURLConnection frame = open("/preview/north.jpg");
+        assertEquals(200, frame.getResponseCode());
+        assertEquals("image/jpeg", frame.getContentType());
+        assertArrayEquals(jpeg, frame.getInputStream().readAllBytes());
+
+        assertEquals(404, open("/preview/south.jpg").getResponseCode());
+        assertEquals("north", new String(open("/preview").getInputStream().readAllBytes(),
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void streamsFramesAsMultipartAndLimitsViewers() throws Exception {
+        server = new PreviewServer(channel, 0, 1);
+        server.start();
+        final byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, 7, (byte) 0xFF, (byte) 0xD9};
+        channel.offer("north", jpeg, jpeg.length, 1000);
+
+        final HttpURLConnection viewer = open("/preview/north");
+        assertEquals(200, viewer.getResponseCode());
+        assertEquals("multipart/x-mixed-replace; boundary=" + PreviewServer.BOUNDARY, viewer.getContentType());
+        final InputStream in = viewer.getInputStream();
+        final String head = "--" + PreviewServer.BOUNDARY + "\r\nContent-Type: image/jpeg\r\nContent-Length: "
+                + jpeg.length + "\r\n\r\n";
+        final byte[] part = readFully(in, head.length() + jpeg.length);
+        assertEquals(head, new String(part, 0, head.length(), StandardCharsets.US_ASCII));
+        assertArrayEquals(jpeg, Arrays.copyOfRange(part, head.length(), part.length));
+
+        // The only viewer slot is taken.
+        assertEquals(503, open("/preview/north").getResponseCode());
+        viewer.disconnect();
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        final var out = new ByteArrayOutputStream();
+        while (out.size() < length) {
+            final int b = in.read();
+            assertNotEquals(-1, b);
+            out.write(b);
+        }
+
+        return out.toByteArray();
+    }
+}
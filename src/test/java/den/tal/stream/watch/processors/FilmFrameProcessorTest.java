@@ -0,0 +1,92 @@
+package den.tal.stream.watch.processors;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadata;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.MkvTag;
+import com.amazonaws.kinesisvideo.parser.utilities.MkvTrackMetadata;
+import den.tal.stream.watch.WatcherLifecycle;
+import den.tal.stream.watch.metrics.FrameMetrics;
+import den.tal.stream.watch.pipeline.StreamContext;
+import den.tal.stream.watch.sampling.FrameSampler;
+import den.tal.stream.watch.visitors.CompositeFrameProcessor;
+import den.tal.stream.watch.visitors.LogFrameProcessor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class FilmFrameProcessorTest {
+
+    private static final int FRAMES = 200_000;
+
+    @Test
+    public void cacheResolvesTagsOncePerChange() {
+        final var tags = new FragmentMetadataVisitor.BasicMkvTagProcessor();
+        final Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor = Optional.of(tags);
+        final var cache = new FragmentCache();
+        tags.process(new MkvTag("AWS_KINESISVIDEO_FRAGMENT_NUMBER", "1"), Optional.empty());
+
+        assertTrue(cache.update(Optional.empty(), tagProcessor));
+        assertNull(cache.getLocation());
+        assertNull(cache.getFragmentNumber());
+        assertFalse(cache.update(Optional.empty(), tagProcessor));
+
+        tags.process(new MkvTag(FragmentCache.LOCATION_TAG, "52.52,13.40"), Optional.empty());
+        assertTrue(cache.update(Optional.empty(), tagProcessor));
+        assertEquals("52.52,13.40", cache.getLocation());
+        assertFalse(cache.update(Optional.empty(), tagProcessor));
+
+        tags.clear();
+        assertTrue(cache.update(Optional.empty(), tagProcessor));
+        assertNull(cache.getLocation());
+        assertTrue(cache.update(Optional.empty(), Optional.empty()));
+    }
+
+    @Test
+    public void unsampledFramesDoNotAllocate() throws Exception {
+        final var threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        final var allocation = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocation.isThreadAllocatedMemorySupported());
+        allocation.setThreadAllocatedMemoryEnabled(true);
+
+        final var lifecycle = new WatcherLifecycle();
+        lifecycle.start();
+        final var metrics = new FrameMetrics(new SimpleMeterRegistry());
+        final FrameSampler never = (frameNumber, frame, timescale, fragmentTimecode) ->
+                FrameSampler.frameTimecodeMillis(frame, timescale, fragmentTimecode) < 0;
+        final var processor = new CompositeFrameProcessor(new LogFrameProcessor("camera", 1),
+                new FilmFrameProcessor(new StreamContext("camera"), never, lifecycle, null,
+                        metrics.forStream("camera")));
+
+        final var tags = new FragmentMetadataVisitor.BasicMkvTagProcessor();
+        tags.process(new MkvTag(FragmentCache.LOCATION_TAG, "52.52,13.40"), Optional.empty());
+        final Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor = Optional.of(tags);
+        final Optional<FragmentMetadata> fragment = Optional.empty();
+        final Optional<BigInteger> timescale = Optional.of(BigInteger.valueOf(1_000_000L));
+        final Optional<BigInteger> fragmentTimecode = Optional.of(BigInteger.valueOf(1_600_000_000_000L));
+        final Frame frame = Frame.builder().trackNumber(1).timeCode(40).keyFrame(false)
+                .frameData(ByteBuffer.allocate(1024)).build();
+        final MkvTrackMetadata track = MkvTrackMetadata.builder().trackNumber(BigInteger.ONE).build();
+
+        // Warm up, so the measured frames run compiled code.
+        for (int i = 0; i < FRAMES; i++) {
+            processor.process(frame, track, fragment, tagProcessor, timescale, fragmentTimecode);
+        }
+        final long thread = Thread.currentThread().getId();
+        final long before = allocation.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < FRAMES; i++) {
+            processor.process(frame, track, fragment, tagProcessor, timescale, fragmentTimecode);
+        }
+        final long allocated = allocation.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue(allocated < FRAMES / 10, allocated + " bytes allocated for " + FRAMES + " frames");
+    }
+}
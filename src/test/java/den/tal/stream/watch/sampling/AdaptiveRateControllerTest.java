@@ -0,0 +1,91 @@
+package den.tal.stream.watch.sampling;
+
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveRateControllerTest {
+
+    private static final long HOLD_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private static AdaptiveSamplingSettings settings(long min, long max) {
+        final var settings = new AdaptiveSamplingSettings();
+        ReflectionTestUtils.setField(settings, "enabled", true);
+        ReflectionTestUtils.setField(settings, "min", min);
+        ReflectionTestUtils.setField(settings, "max", max);
+        ReflectionTestUtils.setField(settings, "lagHighMillis", 10_000L);
+        ReflectionTestUtils.setField(settings, "lagLowMillis", 2_000L);
+        ReflectionTestUtils.setField(settings, "queueHigh", 0.75);
+        ReflectionTestUtils.setField(settings, "queueLow", 0.25);
+        ReflectionTestUtils.setField(settings, "holdMillis", 2_000L);
+
+        return settings;
+    }
+
+    @Test
+    public void backsOffUnderLagUpToMax() {
+        final var controller = new AdaptiveRateController("s", 5, settings(1, 30), 0);
+
+        assertEquals(10, controller.update(15_000, 0, 0));
+        assertEquals(20, controller.update(15_000, 0, HOLD_NANOS));
+        assertEquals(30, controller.update(15_000, 0, 2 * HOLD_NANOS));
+        assertEquals(30, controller.update(15_000, 0, 3 * HOLD_NANOS));
+    }
+
+    @Test
+    public void backsOffWhenQueuesFillUp() {
+        final var controller = new AdaptiveRateController("s", 5, settings(1, 30), 0);
+
+        assertEquals(10, controller.update(-1, 0.8, 0));
+    }
+
+    @Test
+    public void holdsEveryChange() {
+        final var controller = new AdaptiveRateController("s", 5, settings(1, 30), 0);
+
+        assertEquals(10, controller.update(15_000, 0, 0));
+        assertEquals(10, controller.update(15_000, 0, HOLD_NANOS - 1));
+        assertEquals(10, controller.update(0, 0, HOLD_NANOS - 1));
+    }
+
+    @Test
+    public void holdsBetweenWatermarks() {
+        final var controller = new AdaptiveRateController("s", 5, settings(1, 30), 0);
+
+        assertEquals(5, controller.update(5_000, 0.1, 0));
+        assertEquals(5, controller.update(1_000, 0.5, HOLD_NANOS));
+    }
+
+    @Test
+    public void speedsUpWithHeadroomDownToMin() {
+        final var controller = new AdaptiveRateController("s", 5, settings(2, 30), 0);
+
+        assertEquals(4, controller.update(0, 0, 0));
+        assertEquals(3, controller.update(0, 0, HOLD_NANOS));
+        assertEquals(2, controller.update(-1, 0, 2 * HOLD_NANOS));
+        assertEquals(2, controller.update(0, 0, 3 * HOLD_NANOS));
+    }
+
+    @Test
+    public void derivesBoundsFromConfiguredInterval() throws FilmWatcherInitException {
+        final var settings = settings(0, 0);
+        settings.check(1000);
+
+        assertEquals(250, settings.minFor(1000));
+        assertEquals(8000, settings.maxFor(1000));
+        assertEquals(1, settings.minFor(2));
+    }
+
+    @Test
+    public void rejectsInvertedBounds() {
+        assertThrows(FilmWatcherInitException.class, () -> settings(10, 5).check(5));
+
+        final var settings = settings(1, 30);
+        ReflectionTestUtils.setField(settings, "queueLow", 0.9);
+        assertThrows(FilmWatcherInitException.class, () -> settings.check(5));
+    }
+}
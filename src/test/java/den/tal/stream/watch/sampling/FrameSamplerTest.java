@@ -0,0 +1,117 @@
+package den.tal.stream.watch.sampling;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameSamplerTest {
+
+    private static final Optional<BigInteger> MILLIS = Optional.of(BigInteger.valueOf(1_000_000L));
+
+    private static Frame frame(int timeCode, boolean keyFrame) {
+
+        return Frame.builder().timeCode(timeCode).keyFrame(keyFrame).frameData(ByteBuffer.allocate(0)).build();
+    }
+
+    private static boolean sample(FrameSampler sampler, long frameNumber, long fragmentTimecode, int timeCode) {
+
+        return sampler.sample(frameNumber, frame(timeCode, false), MILLIS,
+                Optional.of(BigInteger.valueOf(fragmentTimecode)));
+    }
+
+    @Test
+    public void nthFrameTakesEveryNthFrameNumber() {
+        final var sampler = new NthFrameSampler(3);
+        final var taken = new StringBuilder();
+        for (long i = 0; i < 10; i++) {
+            if (sample(sampler, i, 0, 0)) {
+                taken.append(i);
+            }
+        }
+
+        assertEquals("0369", taken.toString());
+    }
+
+    @Test
+    public void adaptiveStrideFollowsController() {
+        final var settings = new AdaptiveSamplingSettings();
+        ReflectionTestUtils.setField(settings, "min", 1L);
+        ReflectionTestUtils.setField(settings, "max", 8L);
+        ReflectionTestUtils.setField(settings, "lagHighMillis", 10_000L);
+        ReflectionTestUtils.setField(settings, "lagLowMillis", 0L);
+        ReflectionTestUtils.setField(settings, "queueHigh", 0.75);
+        ReflectionTestUtils.setField(settings, "queueLow", 0.0);
+        final var sampler = new AdaptiveSampler(new AdaptiveRateController("s", 2, settings), false,
+                () -> 20_000, () -> 0);
+        final var taken = new StringBuilder();
+        for (long i = 0; i < 16; i++) {
+            if (sample(sampler, i, 0, 0)) {
+                taken.append(i).append(' ');
+            }
+        }
+
+        // Every taken frame reports lag, so the stride doubles up to max.
+        assertEquals("0 4 12 ", taken.toString());
+    }
+
+    @Test
+    public void keyFramesOnly() {
+        final var sampler = new KeyFrameSampler();
+
+        assertTrue(sampler.sample(0, frame(0, true), MILLIS, Optional.empty()));
+        assertFalse(sampler.sample(1, frame(40, false), MILLIS, Optional.empty()));
+    }
+
+    @Test
+    public void intervalTakesOneFramePerInterval() {
+        final var sampler = new IntervalSampler(1000);
+
+        assertTrue(sample(sampler, 0, 5000, 0));
+        assertFalse(sample(sampler, 1, 5000, 500));
+        assertFalse(sample(sampler, 2, 5000, 999));
+        assertTrue(sample(sampler, 3, 5000, 1000));
+        assertFalse(sample(sampler, 4, 6000, 500));
+        assertTrue(sample(sampler, 5, 7000, 0));
+    }
+
+    @Test
+    public void intervalStartsOverWhenTimecodeGoesBack() {
+        final var sampler = new IntervalSampler(1000);
+
+        assertTrue(sample(sampler, 0, 90_000, 0));
+        assertTrue(sample(sampler, 1, 0, 0));
+        assertFalse(sample(sampler, 2, 0, 500));
+        assertTrue(sample(sampler, 3, 1000, 0));
+    }
+
+    @Test
+    public void intervalUsesTimescale() {
+        final var sampler = new IntervalSampler(1000);
+        final Optional<BigInteger> tenMillis = Optional.of(BigInteger.valueOf(10_000_000L));
+
+        assertTrue(sampler.sample(0, frame(0, false), tenMillis, Optional.of(BigInteger.ZERO)));
+        assertFalse(sampler.sample(1, frame(99, false), tenMillis, Optional.of(BigInteger.ZERO)));
+        assertTrue(sampler.sample(2, frame(100, false), tenMillis, Optional.of(BigInteger.ZERO)));
+    }
+
+    @Test
+    public void parsesSamplingMode() throws FilmWatcherInitException {
+        assertEquals(SamplingMode.KEYFRAMES_ONLY, SamplingMode.fromProperty("keyframes-only"));
+        assertEquals(SamplingMode.INTERVAL, SamplingMode.fromProperty(" INTERVAL "));
+    }
+
+    @Test
+    public void unknownSamplingModeNamesPropertyAndValues() {
+        final var ex = assertThrows(FilmWatcherInitException.class, () -> SamplingMode.fromProperty("every-frame"));
+
+        assertTrue(ex.getMessage().contains("film.watcher.sampling.mode"));
+        assertTrue(ex.getMessage().contains("nth-frame, keyframes-only, interval, sharpest"));
+    }
+}
@@ -0,0 +1,56 @@
+package den.tal.stream.watch.sampling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SharpestFrameWindowTest {
+
+    private final List<String> discarded = new ArrayList<>();
+
+    @Test
+    public void releasesSharpestOfFrameWindow() {
+        final var window = new SharpestFrameWindow<String>(3, 0);
+
+        assertNull(window.offer("f0", 0, 0, 1.0, discarded::add));
+        assertNull(window.offer("f1", 1, 0, 5.0, discarded::add));
+        assertNull(window.offer("f2", 2, 0, 2.0, discarded::add));
+        assertEquals("f1", window.offer("f3", 3, 0, 0.5, discarded::add));
+        assertEquals(List.of("f0", "f2"), discarded);
+    }
+
+    @Test
+    public void releasesSharpestOfTimeWindow() {
+        final var window = new SharpestFrameWindow<String>(1, 1000);
+
+        assertNull(window.offer("a", 0, 100, 3.0, discarded::add));
+        assertNull(window.offer("b", 7, 900, 1.0, discarded::add));
+        assertEquals("a", window.offer("c", 8, 1000, 1.0, discarded::add));
+        assertEquals(List.of("b"), discarded);
+    }
+
+    @Test
+    public void timecodeGoingBackClosesWindow() {
+        final var window = new SharpestFrameWindow<String>(1, 1000);
+
+        assertNull(window.offer("a", 0, 5000, 3.0, discarded::add));
+        assertEquals("a", window.offer("b", 1, 0, 1.0, discarded::add));
+        assertTrue(discarded.isEmpty());
+    }
+
+    @Test
+    public void flushReleasesTheLastWindow() {
+        final var window = new SharpestFrameWindow<String>(3, 0);
+
+        assertNull(window.offer("f0", 0, 0, 1.0, discarded::add));
+        assertNull(window.offer("f1", 1, 0, 5.0, discarded::add));
+        assertEquals("f1", window.flush());
+        assertNull(window.flush());
+        // The next candidate opens a new window, even one with the same number.
+        assertNull(window.offer("f2", 2, 0, 2.0, discarded::add));
+        assertEquals("f2", window.flush());
+    }
+}
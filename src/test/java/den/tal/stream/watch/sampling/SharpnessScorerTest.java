@@ -0,0 +1,69 @@
+package den.tal.stream.watch.sampling;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SharpnessScorerTest {
+
+    private final SharpnessScorer scorer = new SharpnessScorer();
+
+    private static BufferedImage checkerboard(int type) {
+        final var image = new BufferedImage(640, 480, type);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        for (int y = 0; y < 480; y += 16) {
+            for (int x = 0; x < 640; x += 16) {
+                graphics.setColor(((x + y) / 16) % 2 == 0 ? Color.WHITE : Color.BLACK);
+                graphics.fillRect(x, y, 16, 16);
+            }
+        }
+        graphics.dispose();
+
+        return image;
+    }
+
+    private static BufferedImage blur(BufferedImage image) {
+        final int size = 15;
+        final float[] kernel = new float[size * size];
+        Arrays.fill(kernel, 1f / kernel.length);
+        final var blurred = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+
+        return new ConvolveOp(new Kernel(size, size, kernel), ConvolveOp.EDGE_NO_OP, null).filter(image, blurred);
+    }
+
+    @Test
+    public void flatImageScoresZero() {
+        assertEquals(0, scorer.score(new BufferedImage(640, 480, BufferedImage.TYPE_3BYTE_BGR)), 1e-9);
+    }
+
+    @Test
+    public void sharpScoresHigherThanBlurred() {
+        for (int type : new int[] {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_RGB,
+                BufferedImage.TYPE_BYTE_GRAY}) {
+
+            final var sharp = checkerboard(type);
+            assertTrue(scorer.score(sharp) > scorer.score(blur(sharp)), "image type " + type);
+        }
+    }
+
+    @Test
+    public void sameScoreForEveryRasterLayout() {
+        final double bgr = scorer.score(checkerboard(BufferedImage.TYPE_3BYTE_BGR));
+
+        assertEquals(bgr, scorer.score(checkerboard(BufferedImage.TYPE_INT_RGB)), 1e-9);
+    }
+
+    @Test
+    public void tinyImageScoresZero() {
+        assertEquals(0, scorer.score(new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB)), 1e-9);
+    }
+}
@@ -0,0 +1,226 @@
+package den.tal.stream.watch.soak;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import den.tal.stream.watch.source.SyntheticMkv;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GetDataEndpoint, GetMedia, ListFragments and GetMediaForFragmentList of Kinesis Video Streams over local HTTP.
+ * Every stream is a live camera that produces a fragment of synthetic H.264 every {@code fragmentMillis}; a fragment
+ * is sent once its last frame has been produced, with producer timestamps of the wall clock. A session starts at
+ * the fragment being produced (NOW) or at its continuation token, and ends with a continuation token after
+ * {@code sessionFragments}. Cameras may have been recording for a while already; every fragment produced so far
+ * is archived. One GOP is encoded up front and sent again with new timecodes, so serving costs next to no CPU.
+ */
+@Slf4j
+public class FakeKinesisVideo {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /**
+     * Fragments per ListFragments page.
+     */
+    private static final int PAGE = 100;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final SyntheticMkv.Gop gop;
+    private final long frameMillis;
+    private final long fragmentMillis;
+    private final int sessionFragments;
+    private final long startMillis;
+    private final AtomicLong fragmentsSent = new AtomicLong();
+    private volatile boolean stopped;
+
+    /**
+     * @param fps              frames per second of every stream
+     * @param fragmentMillis   length of a fragment; fps * fragmentMillis / 1000 frames each, the first a key frame
+     * @param sessionFragments fragments of a GetMedia session
+     */
+    public FakeKinesisVideo(int width, int height, int fps, long fragmentMillis, int sessionFragments)
+            throws IOException {
+
+        this(width, height, fps, fragmentMillis, sessionFragments, 0);
+    }
+
+    /**
+     * @param recordedMillis how long the cameras have been recording
+     */
+    public FakeKinesisVideo(int width, int height, int fps, long fragmentMillis, int sessionFragments,
+                            long recordedMillis) throws IOException {
+
+        this.startMillis = System.currentTimeMillis() - recordedMillis;
+        this.frameMillis = 1000 / fps;
+        this.fragmentMillis = fragmentMillis;
+        this.sessionFragments = sessionFragments;
+        gop = SyntheticMkv.encode(width, height, 0, (int) (fragmentMillis / frameMillis));
+        final var counter = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            final var thread = new Thread(runnable, "fake-kvs-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/getDataEndpoint", this::getDataEndpoint);
+        server.createContext("/getMedia", this::getMedia);
+        server.createContext("/listFragments", this::listFragments);
+        server.createContext("/getMediaForFragmentList", this::getMediaForFragmentList);
+        server.start();
+    }
+
+    public String getEndpoint() {
+
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Producer timestamp of the first fragment.
+     */
+    public long getStartMillis() {
+
+        return startMillis;
+    }
+
+    public long getFragmentMillis() {
+
+        return fragmentMillis;
+    }
+
+    public long getFragmentsSent() {
+
+        return fragmentsSent.get();
+    }
+
+    /**
+     * Ends the sessions and stops the server.
+     */
+    public void stop() {
+        stopped = true;
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void getDataEndpoint(HttpExchange exchange) throws IOException {
+        try {
+            exchange.getRequestBody().readAllBytes();
+            send(exchange, JSON.writeValueAsBytes(JSON.createObjectNode().put("DataEndpoint", getEndpoint())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void getMedia(HttpExchange exchange) throws IOException {
+        try {
+            final JsonNode request = JSON.readTree(exchange.getRequestBody());
+            final String streamName = request.path("StreamName").asText();
+            final JsonNode selector = request.path("StartSelector");
+            long fragment = "CONTINUATION_TOKEN".equals(selector.path("StartSelectorType").asText())
+                    ? Long.parseLong(selector.path("ContinuationToken").asText())
+                    : (System.currentTimeMillis() - startMillis) / fragmentMillis;
+
+            exchange.getResponseHeaders().set("Content-Type", "video/webm");
+            exchange.sendResponseHeaders(200, 0);
+            final OutputStream out = exchange.getResponseBody();
+            for (int i = 0; i < sessionFragments && !stopped; i++, fragment++) {
+                final long producedAt = startMillis + (fragment + 1) * fragmentMillis;
+                final long wait = producedAt - System.currentTimeMillis();
+                if (wait > 0) {
+                    TimeUnit.MILLISECONDS.sleep(wait);
+                }
+                out.write(SyntheticMkv.fragment(gop, SyntheticMkv.FIRST_FRAGMENT + fragment,
+                        startMillis + fragment * fragmentMillis, frameMillis,
+                        Math.max(0, System.currentTimeMillis() - producedAt),
+                        i == sessionFragments - 1 ? String.valueOf(fragment + 1) : null));
+                out.flush();
+                fragmentsSent.incrementAndGet();
+            }
+            log.debug("Session of {} ended before fragment {}.", streamName, fragment);
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ioex) {
+            log.debug("Reader left a session.", ioex);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Fragments whose producer timestamp is in the range, a page at a time. ListFragments promises no order;
+     * pages list their fragments newest first.
+     */
+    private void listFragments(HttpExchange exchange) throws IOException {
+        try {
+            final JsonNode request = JSON.readTree(exchange.getRequestBody());
+            final JsonNode range = request.path("FragmentSelector").path("TimestampRange");
+            final long from = (long) (range.path("StartTimestamp").asDouble() * 1000);
+            final long to = (long) (range.path("EndTimestamp").asDouble() * 1000);
+            final long first = request.hasNonNull("NextToken") ? request.path("NextToken").asLong()
+                    : Math.max(0, Math.floorDiv(from - startMillis + fragmentMillis - 1, fragmentMillis));
+            final long end = Math.min((System.currentTimeMillis() - startMillis) / fragmentMillis,
+                    Math.floorDiv(to - startMillis, fragmentMillis) + 1);
+            final long last = Math.min(end, first + PAGE);
+
+            final ObjectNode response = JSON.createObjectNode();
+            final ArrayNode fragments = response.putArray("Fragments");
+            for (long fragment = last - 1; fragment >= first; fragment--) {
+                final double timestamp = (startMillis + fragment * fragmentMillis) / 1000.0;
+                fragments.addObject()
+                        .put("FragmentNumber", String.valueOf(SyntheticMkv.FIRST_FRAGMENT + fragment))
+                        .put("FragmentSizeInBytes", 0)
+                        .put("ProducerTimestamp", timestamp)
+                        .put("ServerTimestamp", timestamp)
+                        .put("FragmentLengthInMilliseconds", fragmentMillis);
+            }
+            if (last < end) {
+                response.put("NextToken", String.valueOf(last));
+            }
+            send(exchange, JSON.writeValueAsBytes(response));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * The listed fragments, in the order asked for and as fast as the reader takes them.
+     */
+    private void getMediaForFragmentList(HttpExchange exchange) throws IOException {
+        try {
+            final JsonNode request = JSON.readTree(exchange.getRequestBody());
+            exchange.getResponseHeaders().set("Content-Type", "video/webm");
+            exchange.sendResponseHeaders(200, 0);
+            final OutputStream out = exchange.getResponseBody();
+            for (JsonNode number : request.path("Fragments")) {
+                final long fragment = Long.parseLong(number.asText()) - SyntheticMkv.FIRST_FRAGMENT;
+                out.write(SyntheticMkv.fragment(gop, SyntheticMkv.FIRST_FRAGMENT + fragment,
+                        startMillis + fragment * fragmentMillis, frameMillis, 0, null));
+                fragmentsSent.incrementAndGet();
+            }
+        } catch (IOException ioex) {
+            log.debug("Reader left a fragment list.", ioex);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+}
@@ -0,0 +1,183 @@
+package den.tal.stream.watch.soak;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PutObject of S3 over local HTTP with path-style keys. Every PUT waits {@code latencyMillis} plus up to
+ * {@code jitterMillis}, then fails with 503 SlowDown at {@code errorRate} or is accepted. Accepted objects
+ * are handed to the {@link Listener} and not kept, so a long soak does not fill the heap it measures.
+ */
+@Slf4j
+public class FakeS3 {
+
+    private static final byte[] SLOW_DOWN = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Error><Code>SlowDown</Code>"
+            + "<Message>Please reduce your request rate.</Message></Error>").getBytes(StandardCharsets.UTF_8);
+
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Called on a server thread for every accepted PUT.
+         */
+        void stored(String bucket, String key, int length);
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Listener listener;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double errorRate;
+
+    public FakeS3(Listener listener) throws IOException {
+        this.listener = listener;
+        final var counter = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            final var thread = new Thread(runnable, "fake-s3-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String getEndpoint() {
+
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * May be changed while the soak runs.
+     */
+    public void setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * Share of PUTs answered with 503 SlowDown, from 0 to 1.
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public long getAccepted() {
+
+        return accepted.get();
+    }
+
+    public long getFailed() {
+
+        return failed.get();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"PUT".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+
+                return;
+            }
+            // The SDK signs PUTs over plain HTTP chunk by chunk.
+            final String contentSha256 = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+            final byte[] body = null != contentSha256 && contentSha256.startsWith("STREAMING-")
+                    ? decodeAwsChunked(exchange.getRequestBody()) : exchange.getRequestBody().readAllBytes();
+
+            final long delay = latencyMillis + (jitterMillis > 0
+                    ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+            if (delay > 0) {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                failed.incrementAndGet();
+                exchange.getResponseHeaders().set("Content-Type", "application/xml");
+                exchange.sendResponseHeaders(503, SLOW_DOWN.length);
+                exchange.getResponseBody().write(SLOW_DOWN);
+
+                return;
+            }
+            final String path = exchange.getRequestURI().getPath();
+            final int slash = path.indexOf('/', 1);
+            listener.stored(path.substring(1, slash), path.substring(slash + 1), body.length);
+            accepted.incrementAndGet();
+            // The SDK checks the ETag against the MD5 of what it sent.
+            exchange.getResponseHeaders().set("ETag", "\"" + md5Hex(body) + "\"");
+            exchange.sendResponseHeaders(200, -1);
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Payload of {@code aws-chunked} content: {@code <hex size>;chunk-signature=...\r\n<data>\r\n}, up to
+     * a chunk of size 0.
+     */
+    static byte[] decodeAwsChunked(InputStream in) throws IOException {
+        final var out = new ByteArrayOutputStream();
+        while (true) {
+            final String header = readLine(in);
+            final int semicolon = header.indexOf(';');
+            final int size = Integer.parseInt(-1 == semicolon ? header : header.substring(0, semicolon), 16);
+            if (0 == size) {
+
+                return out.toByteArray();
+            }
+            out.write(in.readNBytes(size));
+            readLine(in);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        final var line = new StringBuilder();
+        int b;
+        while (-1 != (b = in.read()) && '\n' != b) {
+            if ('\r' != b) {
+                line.append((char) b);
+            }
+        }
+
+        return line.toString();
+    }
+
+    private static String md5Hex(byte[] data) {
+        try {
+            final var hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("MD5").digest(data)) {
+                hex.append(String.format("%02x", b));
+            }
+
+            return hex.toString();
+        } catch (NoSuchAlgorithmException nsaex) {
+
+            throw new IllegalStateException(nsaex);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package den.tal.stream.watch.soak;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
+import com.amazonaws.services.kinesisvideo.AmazonKinesisVideo;
+import com.amazonaws.services.s3.AmazonS3;
+import den.tal.stream.AppConfig;
+import den.tal.stream.KinesisVideoMediaClients;
+import den.tal.stream.StreamConsumerConfig;
+import den.tal.stream.watch.ReconnectSettings;
+import den.tal.stream.watch.StreamWatcher;
+import den.tal.stream.watch.WatcherLifecycle;
+import den.tal.stream.watch.dedup.DedupSettings;
+import den.tal.stream.watch.encode.EncodeSettings;
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import den.tal.stream.watch.metrics.FrameMetrics;
+import den.tal.stream.watch.metrics.StreamMetrics;
+import den.tal.stream.watch.pipeline.FramePipeline;
+import den.tal.stream.watch.pipeline.PipelineSettings;
+import den.tal.stream.watch.pipeline.StreamContext;
+import den.tal.stream.watch.processors.FilmFrameProcessor;
+import den.tal.stream.watch.sampling.NthFrameSampler;
+import den.tal.stream.watch.upload.S3Uploader;
+import den.tal.stream.watch.upload.UploadSettings;
+import den.tal.stream.watch.visitors.CompositeFrameProcessor;
+import den.tal.stream.watch.visitors.FragmentEndVisitor;
+import den.tal.stream.watch.visitors.LagVisitor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the consumer against {@link FakeKinesisVideo} and {@link FakeS3} for {@code soak.seconds}, with the
+ * clients built by {@link StreamConsumerConfig} from the {@code kinesis.service.endpoint} and
+ * {@code s3.service.endpoint} overrides. Every {@code soak.report_s} it prints the stored fps, the end-to-end
+ * latency from frame production to the accepted PUT, and the heap. It fails if the stored fps falls below
+ * 90% of the sampled rate, if the p99 latency exceeds {@code soak.max_p99_ms}, or if the heap after a full GC
+ * grows by more than {@code soak.max_heap_growth_mb} between the end of the warm-up and the end of the run.
+ * <p>
+ * Excluded from the default build: {@code mvn -P soak test -Dsoak.streams=4 -Dsoak.fps=30 -Dsoak.seconds=600}.
+ */
+@Slf4j
+@Tag("soak")
+public class SoakTest {
+
+    private static final String REGION = "eu-central-1";
+    private static final String BUCKET = "traffic-guard-frames";
+
+    private final int streams = Integer.getInteger("soak.streams", 2);
+    private final int fps = Integer.getInteger("soak.fps", 25);
+    private final int width = Integer.getInteger("soak.width", 320);
+    private final int height = Integer.getInteger("soak.height", 240);
+    private final int seconds = Integer.getInteger("soak.seconds", 60);
+    private final int nthFrame = Integer.getInteger("soak.nth_frame", 5);
+    private final long fragmentMillis = Long.getLong("soak.fragment_ms", 2000);
+    private final int sessionFragments = Integer.getInteger("soak.session_fragments", 15);
+    private final long s3LatencyMillis = Long.getLong("soak.s3.latency_ms", 20);
+    private final long s3JitterMillis = Long.getLong("soak.s3.jitter_ms", 30);
+    private final double s3ErrorRate = Double.parseDouble(System.getProperty("soak.s3.error_rate", "0.01"));
+    private final int reportSeconds = Integer.getInteger("soak.report_s", 10);
+    private final long maxP99Millis = Long.getLong("soak.max_p99_ms", 3 * fragmentMillis);
+    private final long maxHeapGrowthMegabytes = Long.getLong("soak.max_heap_growth_mb", 64);
+
+    /**
+     * Frame latencies in 10 ms buckets up to a minute; recording does not allocate.
+     */
+    private static final class LatencyHistogram {
+
+        private static final int BUCKET_MILLIS = 10;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(6000 + 1);
+        private final AtomicLong count = new AtomicLong();
+
+        void record(long millis) {
+            buckets.incrementAndGet((int) Math.min(buckets.length() - 1, Math.max(0, millis) / BUCKET_MILLIS));
+            count.incrementAndGet();
+        }
+
+        /**
+         * Upper bound of the bucket holding the percentile, -1 without samples.
+         */
+        long percentile(double p) {
+            final long rank = (long) Math.ceil(p * count.get());
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+
+                    return (i + 1L) * BUCKET_MILLIS;
+                }
+            }
+
+            return -1;
+        }
+    }
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong frames = new AtomicLong();
+
+    /**
+     * Object keys end in the producer timecode of the frame: {@code .../<timecode>.jpg}.
+     */
+    private void stored(String bucket, String key, int length) {
+        if (!BUCKET.equals(bucket) || !key.endsWith(".jpg")) {
+
+            return;
+        }
+        final long timecode = Long.parseLong(key.substring(key.lastIndexOf('/') + 1, key.length() - 4));
+        latency.record(System.currentTimeMillis() - timecode);
+        frames.incrementAndGet();
+    }
+
+    private static long heapAfterGc() {
+        System.gc();
+
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long gcCount() {
+
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(gc -> Math.max(0, gc.getCollectionCount())).sum();
+    }
+
+    @Test
+    public void sustainsSampledRateWithBoundedLatencyAndHeap() throws Exception {
+        final var kinesis = new FakeKinesisVideo(width, height, fps, fragmentMillis, sessionFragments);
+        final var s3 = new FakeS3(this::stored);
+        s3.setLatency(s3LatencyMillis, s3JitterMillis);
+        s3.setErrorRate(s3ErrorRate);
+
+        final var appConfig = new AppConfig();
+        ReflectionTestUtils.setField(appConfig, "region", REGION);
+        ReflectionTestUtils.setField(appConfig, "kinesisServiceEndpoint", kinesis.getEndpoint());
+        ReflectionTestUtils.setField(appConfig, "s3ServiceEndpoint", s3.getEndpoint());
+        ReflectionTestUtils.setField(appConfig, "s3PathStyleAccess", true);
+        final var config = new StreamConsumerConfig();
+        ReflectionTestUtils.setField(config, "appConfig", appConfig);
+        final var credentials = new AWSStaticCredentialsProvider(new BasicAWSCredentials("soak", "soak"));
+
+        final var uploadSettings = new UploadSettings();
+        ReflectionTestUtils.setField(uploadSettings, "fragmentIndex", true);
+        ReflectionTestUtils.setField(uploadSettings, "maxInFlight", 8);
+        ReflectionTestUtils.setField(uploadSettings, "maxRetries", 5);
+        ReflectionTestUtils.setField(uploadSettings, "baseBackoffMillis", 100L);
+        ReflectionTestUtils.setField(uploadSettings, "maxBackoffMillis", 5000L);
+        final var pipelineSettings = new PipelineSettings();
+        ReflectionTestUtils.setField(pipelineSettings, "backpressure", "drop-oldest");
+        ReflectionTestUtils.setField(pipelineSettings, "execution", "platform");
+        ReflectionTestUtils.setField(pipelineSettings, "decodeThreads", 2);
+        ReflectionTestUtils.setField(pipelineSettings, "decodeQueue", 16);
+        ReflectionTestUtils.setField(pipelineSettings, "encodeThreads", 2);
+        ReflectionTestUtils.setField(pipelineSettings, "encodeQueue", 16);
+        ReflectionTestUtils.setField(pipelineSettings, "uploadThreads", 2);
+        ReflectionTestUtils.setField(pipelineSettings, "uploadQueue", 64);
+        ReflectionTestUtils.setField(pipelineSettings, "drainTimeoutSeconds", 10);
+        final var encodeSettings = new EncodeSettings();
+        ReflectionTestUtils.setField(encodeSettings, "quality", 0.85f);
+        ReflectionTestUtils.setField(encodeSettings, "bufferPoolSize", 64);
+        final var reconnectSettings = new ReconnectSettings();
+        ReflectionTestUtils.setField(reconnectSettings, "baseBackoffMillis", 250L);
+        ReflectionTestUtils.setField(reconnectSettings, "maxBackoffMillis", 5000L);
+
+        final AmazonKinesisVideo kinesisVideo = config.kinesisVideo(credentials,
+                config.kinesisEndpointConfiguration());
+        final KinesisVideoMediaClients mediaClients = config.kinesisVideoMediaClients(credentials, kinesisVideo);
+        final AmazonS3 amazonS3 = config.amazonS3(credentials, config.s3EndpointConfiguration(), uploadSettings);
+
+        final var registry = new SimpleMeterRegistry();
+        final var metrics = new FrameMetrics(registry);
+        final var uploader = new S3Uploader(amazonS3, BUCKET, uploadSettings, metrics);
+        final var pipeline = new FramePipeline(pipelineSettings, new DedupSettings(), encodeSettings,
+                uploadSettings, uploader, null, metrics);
+        final var lifecycle = new WatcherLifecycle();
+        lifecycle.start();
+
+        final ExecutorService readers = Executors.newFixedThreadPool(streams);
+        for (int i = 0; i < streams; i++) {
+            final String name = "camera-" + i;
+            final StreamContext stream = pipeline.attach(new StreamContext(name));
+            final StreamMetrics streamMetrics = metrics.forStream(name);
+            final var watcher = new StreamWatcher(name, mediaClients, new CompositeMkvElementVisitor(
+                    FrameVisitor.create(new CompositeFrameProcessor(new FilmFrameProcessor(stream,
+                            new NthFrameSampler(nthFrame), lifecycle, pipeline, streamMetrics)),
+                            Optional.of(new FragmentMetadataVisitor.BasicMkvTagProcessor())),
+                    LagVisitor.create(streamMetrics), FragmentEndVisitor.create(stream.getFragments())),
+                    null, reconnectSettings);
+            readers.execute(() -> read(watcher));
+        }
+
+        final double expectedFps = (double) streams * fps / nthFrame;
+        log.info("Soak: {} streams of {}x{} at {} fps, every {}th frame stored: {} frames/s expected for {} s.",
+                streams, width, height, fps, nthFrame, expectedFps, seconds);
+        final long warmUpSeconds = Math.min(seconds / 4, 2 * fragmentMillis / 1000 + reportSeconds);
+        TimeUnit.SECONDS.sleep(warmUpSeconds);
+        final long framesAfterWarmUp = frames.get();
+        final long heapAfterWarmUp = heapAfterGc();
+        final long startNanos = System.nanoTime();
+        long lastFrames = framesAfterWarmUp;
+        for (long elapsed = 0; elapsed < seconds - warmUpSeconds; elapsed += reportSeconds) {
+            TimeUnit.SECONDS.sleep(Math.min(reportSeconds, seconds - warmUpSeconds - elapsed));
+            final long stored = frames.get();
+            final var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            log.info("Soak: {} frames/s, latency p50 {} ms p99 {} ms, heap {} of {} MB, {} GCs, "
+                            + "{} PUTs failed, {} fragments sent.",
+                    String.format("%.1f", (stored - lastFrames) / (double) reportSeconds), latency.percentile(0.5),
+                    latency.percentile(0.99), heap.getUsed() >> 20, heap.getCommitted() >> 20, gcCount(),
+                    s3.getFailed(), kinesis.getFragmentsSent());
+            lastFrames = stored;
+        }
+        final double sustainedFps = (frames.get() - framesAfterWarmUp)
+                / ((System.nanoTime() - startNanos) / 1e9);
+        final long heapGrowth = heapAfterGc() - heapAfterWarmUp;
+
+        lifecycle.drain();
+        readers.shutdownNow();
+        kinesis.stop();
+        pipeline.shutdown();
+        assertTrue(uploader.shutdown(10, TimeUnit.SECONDS));
+        s3.stop();
+        readers.awaitTermination(10, TimeUnit.SECONDS);
+
+        final long p99 = latency.percentile(0.99);
+        log.info("Soak done: {} frames/s sustained of {} expected, latency p50 {} ms p99 {} ms, heap grew {} KB "
+                        + "after GC, {} uploaded, {} dropped by backpressure.",
+                String.format("%.1f", sustainedFps), expectedFps, latency.percentile(0.5), p99, heapGrowth >> 10,
+                registry.get("film.watcher.frames.uploaded").counter().count(), droppedByBackpressure(registry));
+        assertTrue(sustainedFps >= 0.9 * expectedFps, "Sustained " + sustainedFps + " frames/s");
+        assertTrue(p99 >= 0 && p99 <= maxP99Millis, "p99 latency " + p99 + " ms");
+        assertTrue(heapGrowth < maxHeapGrowthMegabytes << 20, "Heap grew " + (heapGrowth >> 20) + " MB");
+    }
+
+    private static void read(StreamWatcher watcher) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                watcher.watch();
+            } catch (MkvElementVisitException | RuntimeException ex) {
+                if (Thread.currentThread().isInterrupted()) {
+
+                    return;
+                }
+                log.warn("Session of {} failed.", watcher.getName(), ex);
+            } catch (FilmWatcherInitException ex) {
+                log.error("Stream {} can't be watched.", watcher.getName(), ex);
+
+                return;
+            }
+        }
+    }
+
+    private static double droppedByBackpressure(SimpleMeterRegistry registry) {
+        double dropped = 0;
+        for (String stage : new String[] {"decode", "encode", "upload"}) {
+            dropped += registry.get("film.watcher.frames.dropped").tag("stage", stage)
+                    .tag("reason", "backpressure").functionCounter().count();
+        }
+
+        return dropped;
+    }
+}
@@ -0,0 +1,203 @@
+package den.tal.stream.watch.source;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadata;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.MkvTrackMetadata;
+import com.amazonaws.services.kinesisvideo.AmazonKinesisVideoClientBuilder;
+import com.amazonaws.services.kinesisvideo.model.Fragment;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import den.tal.stream.KinesisVideoMediaClients;
+import den.tal.stream.watch.WatcherLifecycle;
+import den.tal.stream.watch.dedup.DedupSettings;
+import den.tal.stream.watch.encode.EncodeSettings;
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import den.tal.stream.watch.metrics.FrameMetrics;
+import den.tal.stream.watch.pipeline.FramePipeline;
+import den.tal.stream.watch.pipeline.PipelineSettings;
+import den.tal.stream.watch.pipeline.StreamContext;
+import den.tal.stream.watch.processors.FilmFrameProcessor;
+import den.tal.stream.watch.sampling.NthFrameSampler;
+import den.tal.stream.watch.soak.FakeKinesisVideo;
+import den.tal.stream.watch.upload.S3Uploader;
+import den.tal.stream.watch.upload.UploadSettings;
+import den.tal.stream.watch.visitors.CompositeFrameProcessor;
+import den.tal.stream.watch.visitors.FragmentEndVisitor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BackfillSourceTest {
+
+    private static final int FPS = 10;
+    private static final long FRAGMENT_MILLIS = 2000;
+    private static final int FRAMES_PER_FRAGMENT = (int) (FRAGMENT_MILLIS * FPS / 1000);
+    private static final long RECORDED_MILLIS = TimeUnit.MINUTES.toMillis(20);
+
+    private static Fragment fragment(long number, long timestampMillis, long lengthMillis) {
+
+        return new Fragment().withFragmentNumber(String.valueOf(number))
+                .withProducerTimestamp(new Date(timestampMillis)).withFragmentLengthInMilliseconds(lengthMillis);
+    }
+
+    private static BackfillSettings settings(Instant from, Instant to, int rangeFragments, int parallelism) {
+        final var settings = new BackfillSettings();
+        ReflectionTestUtils.setField(settings, "from", from.toString());
+        ReflectionTestUtils.setField(settings, "to", to.toString());
+        ReflectionTestUtils.setField(settings, "timestamp", "producer");
+        ReflectionTestUtils.setField(settings, "rangeFragments", rangeFragments);
+        ReflectionTestUtils.setField(settings, "maxGapMillis", 1000L);
+        ReflectionTestUtils.setField(settings, "parallelism", parallelism);
+
+        return settings;
+    }
+
+    @Test
+    public void splitsIntoContiguousRangesInTimestampOrder() {
+        final List<Fragment> fragments = new ArrayList<>(List.of(
+                fragment(1, 0, 2000), fragment(2, 2000, 2000), fragment(3, 4000, 2000), fragment(4, 6000, 2000),
+                fragment(5, 8000, 2000),
+                // The producer was off for ten seconds.
+                fragment(6, 20_000, 2000), fragment(7, 22_500, 2000)));
+        Collections.shuffle(fragments);
+
+        assertEquals(List.of(List.of("1", "2", "3"), List.of("4", "5"), List.of("6", "7")),
+                BackfillSource.split(fragments, 3, 1000, Fragment::getProducerTimestamp));
+        assertTrue(BackfillSource.split(List.of(), 3, 1000, Fragment::getProducerTimestamp).isEmpty());
+    }
+
+    @Test
+    public void rejectsMissingOrEmptyRange() {
+        final var settings = settings(Instant.EPOCH, Instant.EPOCH, 10, 1);
+        assertThrows(FilmWatcherInitException.class, settings::toFragmentSelector);
+        ReflectionTestUtils.setField(settings, "from", "yesterday");
+        assertThrows(FilmWatcherInitException.class, settings::toFragmentSelector);
+        ReflectionTestUtils.setField(settings, "from", "");
+        assertThrows(FilmWatcherInitException.class, settings::toFragmentSelector);
+    }
+
+    @Test
+    public void readsPastRangeInParallelThroughThePipeline() throws Exception {
+        final var kinesis = new FakeKinesisVideo(160, 120, FPS, FRAGMENT_MILLIS, 1, RECORDED_MILLIS);
+        try {
+            final var credentials = new AWSStaticCredentialsProvider(new BasicAWSCredentials("key", "secret"));
+            final var mediaClients = new KinesisVideoMediaClients(AmazonKinesisVideoClientBuilder.standard()
+                    .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(kinesis.getEndpoint(),
+                            "eu-central-1"))
+                    .withCredentials(credentials).build(), credentials, "eu-central-1");
+
+            final var pipelineSettings = new PipelineSettings();
+            ReflectionTestUtils.setField(pipelineSettings, "backpressure", "block");
+            ReflectionTestUtils.setField(pipelineSettings, "decodeThreads", 4);
+            ReflectionTestUtils.setField(pipelineSettings, "decodeQueue", 4);
+            ReflectionTestUtils.setField(pipelineSettings, "encodeThreads", 2);
+            ReflectionTestUtils.setField(pipelineSettings, "encodeQueue", 4);
+            ReflectionTestUtils.setField(pipelineSettings, "uploadThreads", 1);
+            ReflectionTestUtils.setField(pipelineSettings, "uploadQueue", 16);
+            ReflectionTestUtils.setField(pipelineSettings, "drainTimeoutSeconds", 10);
+            final var encodeSettings = new EncodeSettings();
+            ReflectionTestUtils.setField(encodeSettings, "quality", 0.8f);
+            ReflectionTestUtils.setField(encodeSettings, "bufferPoolSize", 8);
+            final var uploadSettings = new UploadSettings();
+            ReflectionTestUtils.setField(uploadSettings, "keyRoot", "frames");
+            ReflectionTestUtils.setField(uploadSettings, "maxInFlight", 8);
+
+            final Set<String> keys = ConcurrentHashMap.newKeySet();
+            final var metrics = new FrameMetrics(new SimpleMeterRegistry());
+            final var uploader = new S3Uploader(new AbstractAmazonS3() {
+                @Override
+                public PutObjectResult putObject(PutObjectRequest request) {
+                    keys.add(request.getKey());
+
+                    return new PutObjectResult();
+                }
+            }, "bucket", uploadSettings, metrics);
+            final var pipeline = new FramePipeline(pipelineSettings, new DedupSettings(), encodeSettings,
+                    uploadSettings, uploader, null, metrics);
+            final var lifecycle = new WatcherLifecycle();
+            lifecycle.start();
+
+            // Fragments read by every range, in the order they were read.
+            final List<List<Long>> ranges = Collections.synchronizedList(new ArrayList<>());
+            final Set<String> lanes = ConcurrentHashMap.newKeySet();
+            final Instant from = Instant.ofEpochMilli(kinesis.getStartMillis() + 60_000);
+            final Instant to = Instant.ofEpochMilli(kinesis.getStartMillis() + RECORDED_MILLIS - 60_000);
+            final var source = new BackfillSource("camera", mediaClients, settings(from, to, 50, 4), lane -> {
+                lanes.add(lane);
+                final List<Long> read = Collections.synchronizedList(new ArrayList<>());
+                ranges.add(read);
+                final StreamContext stream = pipeline.attach(new StreamContext("camera", lane, null));
+                final var recorder = new FrameVisitor.FrameProcessor() {
+                    @Override
+                    public void process(Frame frame, MkvTrackMetadata trackMetadata,
+                                        Optional<FragmentMetadata> fragmentMetadata,
+                                        Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor,
+                                        Optional<BigInteger> timescale, Optional<BigInteger> fragmentTimecode) {
+
+                        final long number = fragmentMetadata.orElseThrow().getFragmentNumber().longValue();
+                        if (read.isEmpty() || read.get(read.size() - 1) != number) {
+                            read.add(number);
+                        }
+                    }
+                };
+
+                return new CompositeMkvElementVisitor(FrameVisitor.create(new CompositeFrameProcessor(recorder,
+                        new FilmFrameProcessor(stream, new NthFrameSampler(FRAMES_PER_FRAGMENT), lifecycle,
+                                pipeline, metrics.forStream("camera"))),
+                        Optional.of(new FragmentMetadataVisitor.BasicMkvTagProcessor())),
+                        FragmentEndVisitor.create(stream.getFragments()));
+            });
+
+            final long start = System.nanoTime();
+            source.watch();
+            pipeline.shutdown();
+            assertTrue(uploader.shutdown(10, TimeUnit.SECONDS));
+            final long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            final long first = SyntheticMkv.FIRST_FRAGMENT + 60_000 / FRAGMENT_MILLIS;
+            final long last = SyntheticMkv.FIRST_FRAGMENT + (RECORDED_MILLIS - 60_000) / FRAGMENT_MILLIS;
+            final List<Long> expected = LongStream.rangeClosed(first, last).boxed().collect(Collectors.toList());
+            // 541 fragments in ranges of 50, each read in order, by four readers on lanes of their own.
+            assertEquals(11, ranges.size());
+            assertEquals(4, lanes.size());
+            for (List<Long> range : ranges) {
+                assertEquals(LongStream.rangeClosed(range.get(0), range.get(range.size() - 1)).boxed()
+                        .collect(Collectors.toList()), range);
+            }
+            assertEquals(expected, ranges.stream().flatMap(List::stream).sorted().collect(Collectors.toList()));
+
+            // One frame of every fragment reached the bucket.
+            assertEquals(expected.size(), keys.size());
+            assertEquals(expected.stream().map(String::valueOf).collect(Collectors.toSet()),
+                    keys.stream().map(key -> key.split("/")[6]).collect(Collectors.toSet()));
+            // Keys carry the stream name, not the name of the reader's lane.
+            assertEquals(Set.of("camera"), keys.stream().map(key -> key.split("/")[5]).collect(Collectors.toSet()));
+            // 18 minutes of footage, far faster than real time.
+            assertTrue(tookMillis < TimeUnit.MINUTES.toMillis(1), "took " + tookMillis + " ms");
+        } finally {
+            kinesis.stop();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package den.tal.stream.watch.source;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedFileByteSourceTest {
+
+    @TempDir
+    Path directory;
+
+    private FileChannel open(byte[] content) throws IOException {
+        final Path file = Files.write(directory.resolve("data.bin"), content);
+
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    private static byte[] content(int size) {
+        final byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31);
+        }
+
+        return content;
+    }
+
+    @Test
+    public void readsAcrossWindows() throws IOException {
+        final byte[] content = content(100);
+        try (FileChannel channel = open(content)) {
+            final var source = new MappedFileByteSource(channel, 16);
+            final var read = ByteBuffer.allocate(100);
+            assertEquals(content[0] & 0xFF, source.readByte());
+            read.put(content[0]);
+            while (!source.eof()) {
+                assertEquals(100 - read.position(), source.available());
+                assertTrue(source.readBytes(read, 7) > 0);
+            }
+
+            assertArrayEquals(content, read.array());
+            assertEquals(-1, source.readByte());
+            assertEquals(-1, source.readBytes(ByteBuffer.allocate(1), 1));
+        }
+    }
+
+    @Test
+    public void readBytesStopsAtDestinationCapacity() throws IOException {
+        try (FileChannel channel = open(content(64))) {
+            final var source = new MappedFileByteSource(channel);
+
+            assertEquals(10, source.readBytes(ByteBuffer.allocate(10), 32));
+            assertEquals(54, source.available());
+        }
+    }
+
+    @Test
+    public void emptyFileIsEof() throws IOException {
+        try (FileChannel channel = open(new byte[0])) {
+            final var source = new MappedFileByteSource(channel);
+
+            assertTrue(source.eof());
+            assertEquals(-1, source.readByte());
+        }
+    }
+}
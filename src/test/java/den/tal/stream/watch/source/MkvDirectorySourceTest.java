@@ -0,0 +1,82 @@
+package den.tal.stream.watch.source;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadata;
+import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.H264FrameDecoder;
+import com.amazonaws.kinesisvideo.parser.utilities.MkvTrackMetadata;
+import den.tal.stream.watch.exceptions.FilmWatcherInitException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MkvDirectorySourceTest {
+
+    @TempDir
+    Path directory;
+
+    private final Map<String, AtomicInteger> decoded = new ConcurrentHashMap<>();
+
+    private MkvDirectorySource source(int parallelism) {
+
+        return new MkvDirectorySource(directory, parallelism, fileName -> {
+            final var decoder = new H264FrameDecoder();
+            final var counter = decoded.computeIfAbsent(fileName, key -> new AtomicInteger());
+
+            return FrameVisitor.create(new FrameVisitor.FrameProcessor() {
+                @Override
+                public void process(Frame frame, MkvTrackMetadata trackMetadata,
+                                    Optional<FragmentMetadata> fragmentMetadata) {
+
+                    assertEquals(160, decoder.decodeH264Frame(frame, trackMetadata).getWidth());
+                    counter.incrementAndGet();
+                }
+            });
+        });
+    }
+
+    @Test
+    public void readsEveryMkvFileThroughItsOwnChain() throws FilmWatcherInitException, IOException {
+        SyntheticMkv.write(directory.resolve("a.mkv"), 160, 120, 2, 5);
+        SyntheticMkv.write(directory.resolve("b.MKV"), 160, 120, 3, 5);
+        SyntheticMkv.write(directory.resolve("c.mkv"), 160, 120, 1, 5);
+        Files.write(directory.resolve("notes.txt"), new byte[] {1, 2, 3});
+
+        final var source = source(2);
+        source.watch();
+
+        assertFalse(source.isLive());
+        assertEquals(3, decoded.size());
+        assertEquals(10, decoded.get("a.mkv").get());
+        assertEquals(15, decoded.get("b.MKV").get());
+        assertEquals(5, decoded.get("c.mkv").get());
+    }
+
+    @Test
+    public void brokenFileDoesNotStopTheOthers() throws FilmWatcherInitException, IOException {
+        final byte[] mkv = SyntheticMkv.create(160, 120, 1, 5);
+        Files.write(directory.resolve("broken.mkv"), Arrays.copyOf(mkv, mkv.length / 2));
+        SyntheticMkv.write(directory.resolve("good.mkv"), 160, 120, 1, 5);
+
+        source(1).watch();
+
+        assertEquals(5, decoded.get("good.mkv").get());
+    }
+
+    @Test
+    public void missingDirectoryFailsWatch() {
+        final var source = new MkvDirectorySource(directory.resolve("missing"), 1, fileName -> null);
+
+        assertThrows(FilmWatcherInitException.class, source::watch);
+    }
+}
@@ -0,0 +1,238 @@
+package den.tal.stream.watch.source;
+
+import com.amazonaws.kinesisvideo.parser.examples.lambda.EncodedFrame;
+import com.amazonaws.kinesisvideo.parser.utilities.H264FrameEncoder;
+import org.jcodec.codecs.h264.H264Utils;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes H.264 MKV media shaped like GetMedia output: one EBML header and segment per fragment, each with
+ * tracks, the fragment tags and one cluster. Frames show a moving square, so they are easy to decode
+ * and never identical.
+ */
+public final class SyntheticMkv {
+
+    private static final int EBML = 0x1A45DFA3;
+    private static final int SEGMENT = 0x18538067;
+    private static final int INFO = 0x1549A966;
+    private static final int TRACKS = 0x1654AE6B;
+    private static final int CLUSTER = 0x1F43B675;
+    private static final int TAGS = 0x1254C367;
+
+    public static final long FIRST_FRAGMENT = 91343852333181432L;
+    public static final long START_MILLIS = 1_600_000_000_000L;
+    public static final long FRAME_MILLIS = 40;
+
+    /**
+     * Encoded frames of one fragment, ready to be written with any fragment number and timecode.
+     */
+    public static final class Gop {
+
+        private final int width;
+        private final int height;
+        private final byte[] codecPrivate;
+        private final List<byte[]> frames;
+        private final List<Boolean> keyFrames;
+
+        private Gop(int width, int height, byte[] codecPrivate, List<byte[]> frames, List<Boolean> keyFrames) {
+            this.width = width;
+            this.height = height;
+            this.codecPrivate = codecPrivate;
+            this.frames = frames;
+            this.keyFrames = keyFrames;
+        }
+
+        public int size() {
+
+            return frames.size();
+        }
+    }
+
+    private SyntheticMkv() {
+    }
+
+    /**
+     * @param fragments       segments to write
+     * @param framesPerFragment frames per segment; the first of each is a key frame
+     */
+    public static byte[] create(int width, int height, int fragments, int framesPerFragment) {
+
+        return create(width, height, fragments, framesPerFragment, null);
+    }
+
+    /**
+     * @param continuationToken added to the last fragment, as GetMedia does when it ends a session; may be null
+     */
+    public static byte[] create(int width, int height, int fragments, int framesPerFragment,
+                                String continuationToken) {
+
+        final var out = new ByteArrayOutputStream();
+        for (int fragment = 0; fragment < fragments; fragment++) {
+            final int firstFrame = fragment * framesPerFragment;
+            // GetMedia tags each fragment with the lag after its cluster; the last fragment is live.
+            write(out, fragment(encode(width, height, firstFrame, framesPerFragment), FIRST_FRAGMENT + fragment,
+                    START_MILLIS + firstFrame * FRAME_MILLIS, FRAME_MILLIS,
+                    (fragments - 1 - fragment) * framesPerFragment * FRAME_MILLIS,
+                    fragment == fragments - 1 ? continuationToken : null));
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the frames of one fragment; the first is a key frame.
+     *
+     * @param firstFrame number of the first frame in the stream, it places the square
+     */
+    public static Gop encode(int width, int height, int firstFrame, int frames) {
+        final var encoder = new H264FrameEncoder(width, height, 500_000);
+        final var image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        final List<byte[]> data = new ArrayList<>();
+        final List<Boolean> keyFrames = new ArrayList<>();
+        byte[] codecPrivate = null;
+        for (int i = 0; i < frames; i++) {
+            draw(image, firstFrame + i);
+            encoder.setFrameNumber(i);
+            final EncodedFrame frame = encoder.encodeFrame(image);
+            if (null == codecPrivate) {
+                codecPrivate = encoder.getCodecPrivateData();
+            }
+            // The encoder writes Annex B start codes; MKV carries length-prefixed NAL units.
+            data.add(bytes(H264Utils.encodeMOVPacket(frame.getByteBuffer())));
+            keyFrames.add(frame.isKeyFrame());
+        }
+
+        return new Gop(width, height, codecPrivate, data, keyFrames);
+    }
+
+    /**
+     * One fragment shaped like GetMedia output: an EBML header and a segment with tracks, the fragment tags,
+     * one cluster and the lag tag.
+     *
+     * @param clusterTimecode   producer time of the first frame in ms
+     * @param continuationToken added after the lag, as GetMedia does when it ends a session; may be null
+     */
+    public static byte[] fragment(Gop gop, long fragmentNumber, long clusterTimecode, long frameMillis,
+                                  long millisBehindNow, String continuationToken) {
+
+        final var blocks = new ByteArrayOutputStream();
+        for (int i = 0; i < gop.size(); i++) {
+            write(blocks, element(0xA3, simpleBlock((int) (i * frameMillis), gop.keyFrames.get(i),
+                    gop.frames.get(i))));
+        }
+        final var segment = new ByteArrayOutputStream();
+        write(segment, element(INFO, uint(0x2AD7B1, 1_000_000)));
+        write(segment, element(TRACKS, element(0xAE, concat(uint(0xD7, 1), uint(0x73C5, 1), uint(0x83, 1),
+                string(0x86, "V_MPEG4/ISO/AVC"), element(0x63A2, gop.codecPrivate),
+                element(0xE0, concat(uint(0xB0, gop.width), uint(0xBA, gop.height)))))));
+        write(segment, element(TAGS, concat(
+                tag("AWS_KINESISVIDEO_FRAGMENT_NUMBER", String.valueOf(fragmentNumber)),
+                tag("AWS_KINESISVIDEO_SERVER_TIMESTAMP", String.format("%.3f", clusterTimecode / 1000.0)),
+                tag("AWS_KINESISVIDEO_PRODUCER_TIMESTAMP", String.format("%.3f", clusterTimecode / 1000.0)))));
+        write(segment, element(CLUSTER, concat(uint(0xE7, clusterTimecode), blocks.toByteArray())));
+        final byte[] lag = tag("AWS_KINESISVIDEO_MILLIS_BEHIND_NOW", String.valueOf(millisBehindNow));
+        write(segment, element(TAGS, null != continuationToken
+                ? concat(lag, tag("AWS_KINESISVIDEO_CONTINUATION_TOKEN", continuationToken))
+                : lag));
+
+        final var out = new ByteArrayOutputStream();
+        write(out, element(EBML, concat(uint(0x4286, 1), uint(0x42F7, 1), uint(0x42F2, 4), uint(0x42F3, 8),
+                string(0x4282, "matroska"), uint(0x4287, 2), uint(0x4285, 2))));
+        write(out, element(SEGMENT, segment.toByteArray()));
+
+        return out.toByteArray();
+    }
+
+    public static Path write(Path file, int width, int height, int fragments, int framesPerFragment)
+            throws IOException {
+
+        return Files.write(file, create(width, height, fragments, framesPerFragment));
+    }
+
+    private static void draw(BufferedImage image, int frameNumber) {
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.DARK_GRAY);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.setColor(Color.YELLOW);
+        final int side = image.getHeight() / 4;
+        graphics.fillRect((frameNumber * 8) % (image.getWidth() - side), image.getHeight() / 3, side, side);
+        graphics.dispose();
+    }
+
+    private static byte[] tag(String name, String value) {
+
+        return element(0x7373, element(0x67C8, concat(string(0x45A3, name), string(0x4487, value))));
+    }
+
+    private static byte[] simpleBlock(int relativeTimecode, boolean keyFrame, byte[] data) {
+        final var block = ByteBuffer.allocate(4 + data.length);
+        block.put((byte) 0x81).putShort((short) relativeTimecode).put((byte) (keyFrame ? 0x80 : 0)).put(data);
+
+        return block.array();
+    }
+
+    private static byte[] uint(int id, long value) {
+
+        return element(id, ByteBuffer.allocate(8).putLong(value).array());
+    }
+
+    private static byte[] string(int id, String value) {
+
+        return element(id, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] element(int id, byte[] data) {
+        final var out = new ByteArrayOutputStream();
+        int idLength = 4;
+        while (idLength > 1 && 0 == (id >>> ((idLength - 1) * 8))) {
+            idLength--;
+        }
+        for (int i = idLength - 1; i >= 0; i--) {
+            out.write(id >>> (i * 8));
+        }
+        out.write(0x01);
+        for (int i = 6; i >= 0; i--) {
+            out.write((int) ((long) data.length >>> (i * 8)));
+        }
+        out.write(data, 0, data.length);
+
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        final var out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+
+        return bytes;
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] bytes) {
+        try {
+            out.write(bytes);
+        } catch (IOException ioex) {
+
+            throw new UncheckedIOException(ioex);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package den.tal.stream.watch.spool;
+
+import den.tal.stream.watch.upload.UploadRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameSpoolTest {
+
+    private static final int FRAME_BYTES = 1000;
+
+    @TempDir
+    Path dir;
+
+    private static UploadRequest request(int i) {
+        final byte[] data = new byte[FRAME_BYTES + 10];
+        data[0] = (byte) i;
+
+        return new UploadRequest("frames/" + i + ".jpg", data, FRAME_BYTES, "image/jpeg", Map.of("location", "x"));
+    }
+
+    @Test
+    public void replaysRecordsInOrderAcrossSegments() throws Exception {
+        try (FrameSpool spool = FrameSpool.open(dir, 2500, 100_000)) {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(spool.append(request(i)));
+            }
+            int next = 0;
+            Path segment;
+            while (null != (segment = spool.next(10, TimeUnit.MILLISECONDS))) {
+                for (UploadRequest record : FrameSpool.read(segment)) {
+                    assertEquals("frames/" + next + ".jpg", record.getKey());
+                    assertEquals(FRAME_BYTES, record.getLength());
+                    assertEquals(next, record.getData()[0]);
+                    assertEquals(Map.of("location", "x"), record.getUserMetadata());
+                    next++;
+                }
+                spool.remove(segment);
+            }
+
+            assertEquals(5, next);
+            assertEquals(0, spool.getBytes());
+        }
+    }
+
+    @Test
+    public void rejectsFramesBeyondTheBudget() throws IOException {
+        try (FrameSpool spool = FrameSpool.open(dir, 100_000, 2500)) {
+            assertTrue(spool.append(request(0)));
+            assertTrue(spool.append(request(1)));
+            assertFalse(spool.append(request(2)));
+            assertTrue(spool.getBytes() <= 2500);
+        }
+    }
+
+    @Test
+    public void truncatesTornRecordOnRecovery() throws Exception {
+        try (FrameSpool spool = FrameSpool.open(dir, 100_000, 100_000)) {
+            spool.append(request(0));
+            spool.append(request(1));
+        }
+        final Path segment;
+        try (var files = Files.list(dir)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        final long intact = Files.size(segment);
+        // A crash in the middle of the third record.
+        Files.write(segment, new byte[] {0, 0, 3, (byte) 0xF0, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (FrameSpool spool = FrameSpool.open(dir, 100_000, 100_000)) {
+            assertEquals(intact, Files.size(segment));
+            assertEquals(intact, spool.getBytes());
+            final List<UploadRequest> records = FrameSpool.read(spool.next(10, TimeUnit.MILLISECONDS));
+            assertEquals(2, records.size());
+            assertEquals("frames/1.jpg", records.get(1).getKey());
+
+            // New records go to a new segment after the recovered one.
+            assertTrue(spool.append(request(2)));
+            spool.remove(segment);
+            assertEquals("frames/2.jpg", FrameSpool.read(spool.next(10, TimeUnit.MILLISECONDS)).get(0).getKey());
+        }
+    }
+
+    @Test
+    public void closedSpoolRejectsFrames() throws Exception {
+        final FrameSpool spool = FrameSpool.open(dir, 100_000, 100_000);
+        spool.close();
+
+        assertFalse(spool.append(request(0)));
+        assertNull(spool.next(1, TimeUnit.SECONDS));
+    }
+}
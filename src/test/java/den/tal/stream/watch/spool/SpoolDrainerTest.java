@@ -0,0 +1,93 @@
+package den.tal.stream.watch.spool;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import den.tal.stream.watch.metrics.FrameMetrics;
+import den.tal.stream.watch.upload.S3Uploader;
+import den.tal.stream.watch.upload.UploadRequest;
+import den.tal.stream.watch.upload.UploadSettings;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpoolDrainerTest {
+
+    @TempDir
+    Path dir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Set<String> stored = ConcurrentHashMap.newKeySet();
+    private volatile boolean s3Down = true;
+    private S3Uploader uploader;
+    private SpoolDrainer drainer;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        if (null != drainer) {
+            drainer.stop(5, TimeUnit.SECONDS);
+        }
+        if (null != uploader) {
+            uploader.shutdown(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void replaysSpooledFramesOnceS3Recovers() throws Exception {
+        final var settings = new UploadSettings();
+        ReflectionTestUtils.setField(settings, "maxInFlight", 2);
+        final var metrics = new FrameMetrics(registry);
+        uploader = new S3Uploader(new AbstractAmazonS3() {
+            @Override
+            public PutObjectResult putObject(PutObjectRequest request) {
+                if (s3Down) {
+                    final var ex = new AmazonServiceException("unavailable");
+                    ex.setStatusCode(503);
+
+                    throw ex;
+                }
+                stored.add(request.getKey());
+
+                return new PutObjectResult();
+            }
+        }, "bucket", settings, metrics);
+
+        final UploadRequest first = new UploadRequest("a.jpg", new byte[] {1}, 1, "image/jpeg", Map.of());
+        assertThrows(ExecutionException.class, () -> uploader.upload(first).get());
+        assertTrue(uploader.isFailing());
+
+        try (FrameSpool spool = FrameSpool.open(dir, 100_000, 100_000)) {
+            for (int i = 0; i < 5; i++) {
+                spool.append(new UploadRequest(i + ".jpg", new byte[] {(byte) i}, 1, "image/jpeg", Map.of()));
+            }
+            drainer = new SpoolDrainer(spool, uploader, 20, metrics);
+            drainer.start();
+            TimeUnit.MILLISECONDS.sleep(100);
+            assertTrue(stored.isEmpty());
+            assertEquals(0, registry.get("film.watcher.frames.replayed").counter().count());
+
+            s3Down = false;
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (spool.getBytes() > 0 && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+
+            assertEquals(0, spool.getBytes());
+            assertEquals(Set.of("0.jpg", "1.jpg", "2.jpg", "3.jpg", "4.jpg"), stored);
+            assertEquals(5, registry.get("film.watcher.frames.replayed").counter().count());
+            assertFalse(uploader.isFailing());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package den.tal.stream.watch.startup;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.kinesisvideo.AbstractAmazonKinesisVideo;
+import com.amazonaws.services.kinesisvideo.model.GetDataEndpointRequest;
+import com.amazonaws.services.kinesisvideo.model.GetDataEndpointResult;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.HeadBucketRequest;
+import com.amazonaws.services.s3.model.HeadBucketResult;
+import den.tal.stream.KinesisVideoMediaClients;
+import den.tal.stream.watch.encode.EncodeSettings;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StartupWarmUpTest {
+
+    private static EncodeSettings encodeSettings() {
+        final var settings = new EncodeSettings();
+        ReflectionTestUtils.setField(settings, "quality", 0.8f);
+        ReflectionTestUtils.setField(settings, "maxWidth", 64);
+
+        return settings;
+    }
+
+    @Test
+    public void decodesAndEncodesTheBundledSample() throws Exception {
+        assertEquals(2, StartupWarmUp.runCodecs(encodeSettings()));
+    }
+
+    @Test
+    public void readersUseTheEndpointsLookedUpAhead() throws Exception {
+        final var lookUps = new AtomicInteger();
+        final var clients = new KinesisVideoMediaClients(new AbstractAmazonKinesisVideo() {
+            @Override
+            public GetDataEndpointResult getDataEndpoint(GetDataEndpointRequest request) {
+                lookUps.incrementAndGet();
+
+                return new GetDataEndpointResult().withDataEndpoint("https://" + request.getStreamName() + ".local");
+            }
+        }, new AWSStaticCredentialsProvider(new BasicAWSCredentials("key", "secret")), "eu-central-1");
+        final var heads = new AtomicInteger();
+        final var s3 = new AbstractAmazonS3() {
+            @Override
+            public HeadBucketResult headBucket(HeadBucketRequest request) {
+                heads.incrementAndGet();
+
+                throw new IllegalStateException("Access denied");
+            }
+        };
+
+        final var warmUp = new StartupWarmUp(clients, List.of("north", "south"), s3, "bucket", encodeSettings());
+        assertTrue(warmUp.await(30, TimeUnit.SECONDS));
+        assertEquals(2, lookUps.get());
+        assertEquals(1, heads.get());
+
+        final var north = clients.forStream("north");
+        assertNotSame(north, clients.forStream("south"));
+        assertEquals(2, lookUps.get());
+        // The endpoint may have moved since.
+        assertSame(north, clients.forStream("north"));
+        assertEquals(3, lookUps.get());
+    }
+}
@@ -0,0 +1,186 @@
+package den.tal.stream.watch.upload;
+
+import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
+import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
+import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
+import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import den.tal.stream.watch.WatcherLifecycle;
+import den.tal.stream.watch.dedup.DedupSettings;
+import den.tal.stream.watch.encode.EncodeSettings;
+import den.tal.stream.watch.metrics.FrameMetrics;
+import den.tal.stream.watch.pipeline.FramePipeline;
+import den.tal.stream.watch.pipeline.PipelineSettings;
+import den.tal.stream.watch.pipeline.StreamContext;
+import den.tal.stream.watch.processors.FilmFrameProcessor;
+import den.tal.stream.watch.sampling.NthFrameSampler;
+import den.tal.stream.watch.source.SyntheticMkv;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FramePackerTest {
+
+    private final List<FramePacker.Pack<String>> flushed = new CopyOnWriteArrayList<>();
+
+    private static byte[] jpeg(int length, int fill) {
+        final byte[] data = new byte[length];
+        Arrays.fill(data, (byte) fill);
+
+        return data;
+    }
+
+    @Test
+    public void flushesByBytesAndByStreamTime() throws Exception {
+        final var packer = new FramePacker<String>(100, 1000, flushed::add);
+        packer.add("north", jpeg(40, 1), 40, 0, 0, null, "n0");
+        packer.add("south", jpeg(40, 2), 40, 0, 0, null, "s0");
+        packer.add("north", jpeg(40, 3), 40, 40, 1, null, "n1");
+        assertTrue(flushed.isEmpty());
+
+        // 120 bytes would not fit.
+        packer.add("north", jpeg(40, 4), 40, 80, 2, null, "n2");
+        assertEquals(1, flushed.size());
+        assertEquals("north", flushed.get(0).getStreamName());
+        assertEquals(List.of("n0", "n1"), flushed.get(0).getFrames());
+        assertEquals(80, flushed.get(0).getLength());
+
+        // A second of stream time since the first frame of the pack.
+        packer.add("south", jpeg(10, 5), 10, 1000, 25, null, "s1");
+        assertEquals(2, flushed.size());
+        assertEquals(List.of("s0"), flushed.get(1).getFrames());
+
+        packer.close();
+        assertEquals(4, flushed.size());
+    }
+
+    @Test
+    public void flushesPacksLeftOpenTooLong() throws Exception {
+        final var packer = new FramePacker<String>(1000, 50, flushed::add);
+        packer.add("north", jpeg(10, 1), 10, 0, 0, null, "n0");
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flushed.isEmpty() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(1, flushed.size());
+        packer.close();
+        assertEquals(1, flushed.size());
+    }
+
+    @Test
+    public void indexPointsAtEveryFrame() throws Exception {
+        final var packer = new FramePacker<String>(1000, 1000, flushed::add);
+        packer.add("north", jpeg(3, 7), 3, 1000, 10, "52.52,13.40", "a");
+        packer.add("north", jpeg(5, 8), 5, 1040, 11, null, "b");
+        packer.close();
+
+        final FramePacker.Pack<String> pack = flushed.get(0);
+        final UploadRequest request = pack.toRequest("p.pack", "p.pack.idx");
+        final UploadRequest index = pack.toIndexRequest("p.pack.idx", "p.pack");
+        assertEquals(FramePacker.PACK_CONTENT_TYPE, request.getContentType());
+        assertEquals(Map.of("stream", "north", "frames", "2", "first_timecode_ms", "1000", "index", "p.pack.idx"),
+                request.getUserMetadata());
+
+        assertEquals(FramePacker.INDEX_HEADER + "0\t3\t1000\t10\t52.52,13.40\n3\t5\t1040\t11\t\n",
+                new String(index.getData(), 0, index.getLength(), StandardCharsets.UTF_8));
+
+        assertArrayEquals(jpeg(5, 8), Arrays.copyOfRange(request.getData(), 3, 8));
+    }
+
+    @Test
+    public void pipelinePutsOnePackAndItsIndexPerWindow() throws Exception {
+        final int fragments = 3;
+        final int framesPerFragment = 10;
+        final int nthFrame = 5;
+        final Map<String, byte[]> bucket = new ConcurrentHashMap<>();
+
+        final var pipelineSettings = new PipelineSettings();
+        ReflectionTestUtils.setField(pipelineSettings, "backpressure", "block");
+        ReflectionTestUtils.setField(pipelineSettings, "decodeThreads", 1);
+        ReflectionTestUtils.setField(pipelineSettings, "decodeQueue", 4);
+        ReflectionTestUtils.setField(pipelineSettings, "encodeThreads", 1);
+        ReflectionTestUtils.setField(pipelineSettings, "encodeQueue", 4);
+        ReflectionTestUtils.setField(pipelineSettings, "uploadThreads", 1);
+        ReflectionTestUtils.setField(pipelineSettings, "uploadQueue", 4);
+        ReflectionTestUtils.setField(pipelineSettings, "drainTimeoutSeconds", 5);
+        final var encodeSettings = new EncodeSettings();
+        ReflectionTestUtils.setField(encodeSettings, "quality", 0.8f);
+        ReflectionTestUtils.setField(encodeSettings, "bufferPoolSize", 4);
+        final var uploadSettings = new UploadSettings();
+        ReflectionTestUtils.setField(uploadSettings, "maxInFlight", 2);
+        ReflectionTestUtils.setField(uploadSettings, "packing", true);
+        ReflectionTestUtils.setField(uploadSettings, "packMaxBytes", 1 << 20);
+        ReflectionTestUtils.setField(uploadSettings, "packMaxMillis", 60_000L);
+
+        final var registry = new SimpleMeterRegistry();
+        final var metrics = new FrameMetrics(registry);
+        final var uploader = new S3Uploader(new AbstractAmazonS3() {
+            @Override
+            public PutObjectResult putObject(PutObjectRequest request) {
+                try {
+                    bucket.put(request.getKey(), request.getInputStream().readAllBytes());
+                } catch (IOException ioex) {
+
+                    throw new UncheckedIOException(ioex);
+                }
+
+                return new PutObjectResult();
+            }
+        }, "bucket", uploadSettings, metrics);
+        final var pipeline = new FramePipeline(pipelineSettings, new DedupSettings(), encodeSettings, uploadSettings,
+                uploader, null, metrics);
+
+        final var lifecycle = new WatcherLifecycle();
+        lifecycle.start();
+        final var stream = new StreamContext("camera");
+        StreamingMkvReader.createDefault(new InputStreamParserByteSource(new ByteArrayInputStream(
+                SyntheticMkv.create(64, 48, fragments, framesPerFragment)))).apply(FrameVisitor.create(
+                        new FilmFrameProcessor(stream, new NthFrameSampler(nthFrame), lifecycle, pipeline,
+                                metrics.forStream("camera")),
+                        Optional.of(new FragmentMetadataVisitor.BasicMkvTagProcessor())));
+
+        pipeline.shutdown();
+        assertTrue(uploader.shutdown(5, TimeUnit.SECONDS));
+
+        assertEquals(2, bucket.size());
+        final String packKey = bucket.keySet().stream().filter(key -> key.endsWith(".pack")).findFirst().get();
+        final byte[] pack = bucket.get(packKey);
+        final String[] lines = new String(bucket.get(packKey + ".idx"), StandardCharsets.UTF_8).split("\n");
+        final int sampled = fragments * framesPerFragment / nthFrame;
+        assertEquals(1 + sampled, lines.length);
+        int end = 0;
+        for (String line : Arrays.asList(lines).subList(1, lines.length)) {
+            final String[] fields = line.split("\t", -1);
+            final int offset = Integer.parseInt(fields[0]);
+            final int length = Integer.parseInt(fields[1]);
+            assertEquals(end, offset);
+            // Every range is a whole JPEG: SOI ... EOI.
+            assertEquals((byte) 0xFF, pack[offset]);
+            assertEquals((byte) 0xD8, pack[offset + 1]);
+            assertEquals((byte) 0xFF, pack[offset + length - 2]);
+            assertEquals((byte) 0xD9, pack[offset + length - 1]);
+            end = offset + length;
+        }
+        assertEquals(pack.length, end);
+        assertEquals(sampled, registry.get("film.watcher.frames.uploaded").counter().count());
+        // One PUT for the pack and one for its index.
+        assertEquals(2, registry.get("film.watcher.stage.latency").tag("stage", "s3").timer().count());
+    }
+}
@@ -0,0 +1,134 @@
+package den.tal.stream.watch.upload;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import den.tal.stream.watch.metrics.FrameMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class S3UploaderTest {
+
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private S3Uploader uploader;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        if (null != uploader) {
+            uploader.shutdown(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static UploadSettings settings(int maxRetries, long baseMillis, long maxMillis) {
+        final var settings = new UploadSettings();
+        ReflectionTestUtils.setField(settings, "maxInFlight", 2);
+        ReflectionTestUtils.setField(settings, "maxRetries", maxRetries);
+        ReflectionTestUtils.setField(settings, "baseBackoffMillis", baseMillis);
+        ReflectionTestUtils.setField(settings, "maxBackoffMillis", maxMillis);
+
+        return settings;
+    }
+
+    private static AmazonServiceException serviceException(int status, String code) {
+        final var ex = new AmazonServiceException("test");
+        ex.setStatusCode(status);
+        ex.setErrorCode(code);
+
+        return ex;
+    }
+
+    /**
+     * Fails the first {@code failures} PUTs with the given exception, then succeeds.
+     */
+    private S3Uploader uploader(int failures, SdkClientException failure, int maxRetries) {
+        uploader = new S3Uploader(new AbstractAmazonS3() {
+            @Override
+            public PutObjectResult putObject(PutObjectRequest request) {
+                if (attempts.incrementAndGet() <= failures) {
+
+                    throw failure;
+                }
+
+                return new PutObjectResult();
+            }
+        }, "bucket", settings(maxRetries, 1, 2), new FrameMetrics(registry));
+
+        return uploader;
+    }
+
+    private static UploadRequest request() {
+
+        return new UploadRequest("key.jpg", new byte[] {1, 2, 3, 0}, 3, "image/jpeg", null);
+    }
+
+    @Test
+    public void throttlingAndServerErrorsAreRetryable() {
+        assertTrue(S3Uploader.isRetryable(serviceException(429, null)));
+        assertTrue(S3Uploader.isRetryable(serviceException(500, "InternalError")));
+        assertTrue(S3Uploader.isRetryable(serviceException(503, "SlowDown")));
+        assertTrue(S3Uploader.isRetryable(serviceException(400, "RequestTimeout")));
+        assertTrue(S3Uploader.isRetryable(serviceException(400, "Throttling")));
+    }
+
+    @Test
+    public void clientErrorsAreNotRetryable() {
+        assertFalse(S3Uploader.isRetryable(serviceException(403, "AccessDenied")));
+        assertFalse(S3Uploader.isRetryable(serviceException(404, "NoSuchBucket")));
+    }
+
+    @Test
+    public void clientSideExceptionDecidesItself() {
+        assertTrue(S3Uploader.isRetryable(new SdkClientException("connection reset")));
+    }
+
+    @Test
+    public void backoffStaysWithinGrowingCeiling() {
+        uploader = new S3Uploader(new AbstractAmazonS3() {}, "bucket", settings(5, 100, 1000),
+                new FrameMetrics(registry));
+        for (int i = 0; i < 200; i++) {
+            assertTrue(uploader.backoffMillis(0) <= 100);
+            assertTrue(uploader.backoffMillis(2) <= 400);
+            assertTrue(uploader.backoffMillis(10) <= 1000);
+            assertTrue(uploader.backoffMillis(100) <= 1000);
+            assertTrue(uploader.backoffMillis(3) >= 0);
+        }
+    }
+
+    @Test
+    public void retriesUntilSuccess() throws Exception {
+        uploader(2, serviceException(503, "SlowDown"), 5).upload(request()).get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, attempts.get());
+        assertEquals(3, registry.get("film.watcher.stage.latency").tag("stage", "s3").timer().count());
+    }
+
+    @Test
+    public void givesUpAfterMaxRetries() throws InterruptedException {
+        final var future = uploader(10, serviceException(500, "InternalError"), 2).upload(request());
+
+        assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertEquals(3, attempts.get());
+        assertTrue(uploader.isFailing());
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() throws InterruptedException {
+        final var future = uploader(10, serviceException(403, "AccessDenied"), 5).upload(request());
+
+        assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertEquals(1, attempts.get());
+        // One object S3 refuses says nothing about the others.
+        assertFalse(uploader.isFailing());
+    }
+}
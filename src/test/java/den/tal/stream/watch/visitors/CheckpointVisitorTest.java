@@ -0,0 +1,90 @@
+package den.tal.stream.watch.visitors;
+
+import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
+import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
+import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.amazonaws.services.kinesisvideo.model.StartSelectorType;
+import den.tal.stream.watch.checkpoint.Checkpoint;
+import den.tal.stream.watch.checkpoint.CheckpointStore;
+import den.tal.stream.watch.checkpoint.FragmentTracker;
+import den.tal.stream.watch.source.SyntheticMkv;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CheckpointVisitorTest {
+
+    private final List<Checkpoint> saved = new ArrayList<>();
+
+    private final CheckpointStore store = new CheckpointStore() {
+        @Override
+        public Optional<Checkpoint> load(String streamName) {
+
+            return Optional.empty();
+        }
+
+        @Override
+        public void save(String streamName, Checkpoint checkpoint) {
+            saved.add(checkpoint);
+        }
+    };
+
+    private static void read(CompositeMkvElementVisitor visitor, byte[] session) throws Exception {
+        StreamingMkvReader.createDefault(new InputStreamParserByteSource(new ByteArrayInputStream(session)))
+                .apply(visitor);
+    }
+
+    /**
+     * Fragments {@code first..first + count - 1}; the last one carries the token, if any.
+     */
+    private static byte[] session(long first, int count, String continuationToken) {
+        final var gop = SyntheticMkv.encode(64, 48, 0, 2);
+        final var out = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            final byte[] fragment = SyntheticMkv.fragment(gop, first + i, SyntheticMkv.START_MILLIS + i * 80,
+                    SyntheticMkv.FRAME_MILLIS, 0, i == count - 1 ? continuationToken : null);
+            out.write(fragment, 0, fragment.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    @Test
+    public void tokenOfAnEarlierSessionIsNotCarriedOver() throws Exception {
+        final var fragments = new FragmentTracker();
+        final var visitor = CheckpointVisitor.create("camera", fragments, store, 1);
+
+        read(visitor, session(1, 2, "token-1"));
+        assertEquals("token-1", saved.get(saved.size() - 1).getContinuationToken());
+        assertEquals(StartSelectorType.CONTINUATION_TOKEN.toString(),
+                visitor.nextStartSelector().getStartSelectorType());
+
+        // The next session sends no token of its own: resume after its last fragment, not after the first session.
+        read(visitor, session(3, 2, null));
+        assertEquals(4, saved.size());
+        assertEquals("2", saved.get(1).getFragmentNumber());
+        for (Checkpoint checkpoint : saved.subList(2, 4)) {
+            assertNull(checkpoint.getContinuationToken());
+        }
+        assertEquals(StartSelectorType.FRAGMENT_NUMBER.toString(), visitor.nextStartSelector().getStartSelectorType());
+        assertEquals("4", visitor.nextStartSelector().getAfterFragmentNumber());
+    }
+
+    @Test
+    public void fragmentEndVisitorAttachesTheTokenOnlyOnce() throws Exception {
+        final var fragments = new FragmentTracker();
+        final var visitor = FragmentEndVisitor.create(fragments);
+
+        read(visitor, session(1, 2, "token-1"));
+        assertEquals("token-1", fragments.getCommitted().get().getContinuationToken());
+        read(visitor, session(3, 1, null));
+        assertEquals("3", fragments.getCommitted().get().getFragmentNumber());
+        assertNull(fragments.getCommitted().get().getContinuationToken());
+    }
+}